@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.res.CompatibilityInfo;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.os.Binder;
+import android.os.IBinder;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.view.Display;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures the cost of getting Resources from the {@link ResourcesManager} as an application
+ * starting a number of activities would, once the underlying ResourcesImpl exists.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ResourcesManagerPerfTest {
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "1activity", 1 },
+            { "10activities", 10 },
+            { "100activities", 100 },
+        });
+    }
+
+    private final int mActivityCount;
+
+    private ResourcesManager mResourcesManager;
+    private String mResDir;
+    private ClassLoader mClassLoader;
+
+    public ResourcesManagerPerfTest(String key, int activityCount) {
+        mActivityCount = activityCount;
+    }
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    @Before
+    public void setUp() {
+        // Use a manager of our own so that the state of the application does not interfere.
+        mResourcesManager = new ResourcesManager();
+        mResDir = InstrumentationRegistry.getContext().getApplicationInfo().sourceDir;
+        mClassLoader = getClass().getClassLoader();
+
+        // Create the ResourcesImpl once, as only the lookups are of interest.
+        getSharedResources();
+    }
+
+    private Resources getSharedResources() {
+        return mResourcesManager.getResources(null, mResDir, null, null, null,
+                Display.DEFAULT_DISPLAY, null, CompatibilityInfo.DEFAULT_COMPATIBILITY_INFO,
+                mClassLoader);
+    }
+
+    private Resources createActivityResources(IBinder token) {
+        return mResourcesManager.createBaseActivityResources(token, mResDir, null, null, null,
+                Display.DEFAULT_DISPLAY, null, CompatibilityInfo.DEFAULT_COMPATIBILITY_INFO,
+                mClassLoader);
+    }
+
+    @Test
+    public void testCreateActivities() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final IBinder[] tokens = new IBinder[mActivityCount];
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            for (int i = 0; i < mActivityCount; i++) {
+                tokens[i] = new Binder();
+            }
+            state.resumeTiming();
+
+            // An application context and its activities look up their Resources one after the
+            // other while starting.
+            for (int i = 0; i < mActivityCount; i++) {
+                getSharedResources();
+                createActivityResources(tokens[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testCreateActivities_withOverrideConfig() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final IBinder[] tokens = new IBinder[mActivityCount];
+        final Configuration overrideConfig = new Configuration();
+        overrideConfig.orientation = Configuration.ORIENTATION_LANDSCAPE;
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            for (int i = 0; i < mActivityCount; i++) {
+                tokens[i] = new Binder();
+            }
+            state.resumeTiming();
+
+            // Activities in multi-window get an override configuration applied after creation,
+            // which rebases every Resources object associated with them.
+            for (int i = 0; i < mActivityCount; i++) {
+                createActivityResources(tokens[i]);
+                mResourcesManager.updateResourcesForActivity(tokens[i], overrideConfig,
+                        Display.DEFAULT_DISPLAY, false /* movedToDifferentDisplay */);
+            }
+        }
+    }
+
+    @Test
+    public void testGetSharedResources() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+
+        while (state.keepRunning()) {
+            for (int i = 0; i < mActivityCount; i++) {
+                getSharedResources();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.support.test.filters.LargeTest;
+
+import com.android.internal.os.ProcessCpuTracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures the cost of a sample of the processes visible from the test, as taken by the CPU
+ * tracker of the activity manager, and of the first sample taken for an ANR report.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ProcessCpuTrackerPerfTest {
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "processes", false },
+            { "threads", true },
+        });
+    }
+
+    private final boolean mIncludeThreads;
+
+    public ProcessCpuTrackerPerfTest(String key, boolean includeThreads) {
+        mIncludeThreads = includeThreads;
+    }
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    @Test
+    public void testUpdate() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final ProcessCpuTracker tracker = new ProcessCpuTracker(mIncludeThreads);
+        tracker.init();
+
+        while (state.keepRunning()) {
+            tracker.update();
+        }
+    }
+
+    @Test
+    public void testInit() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+
+        while (state.keepRunning()) {
+            // A new tracker reads the state of every process, and of each of their threads.
+            new ProcessCpuTracker(mIncludeThreads).init();
+        }
+    }
+}
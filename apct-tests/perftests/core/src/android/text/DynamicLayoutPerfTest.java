@@ -139,4 +139,26 @@ public class DynamicLayoutPerfTest {
             }
         }
     }
+
+    @Test
+    public void testReflowSplitAndJoinParagraphs() {
+        final SpannableStringBuilder text = getText();
+        final DynamicLayout layout = new DynamicLayout(text, new TextPaint(), 1000,
+                ALIGN_NORMAL, 0, 0, false);
+
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final int steps = 10;
+        while (state.keepRunning()) {
+            for (int i = 0; i < steps; i++) {
+                int offset = (text.length() * i) / steps;
+                text.insert(offset, " \n");
+                text.delete(offset, offset + 2);
+            }
+        }
+
+        final Bundle status = new Bundle();
+        status.putInt(mMetricKey + "_paragraphCacheHits", layout.getParagraphCacheHitCount());
+        status.putInt(mMetricKey + "_paragraphCacheMisses", layout.getParagraphCacheMissCount());
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
 }
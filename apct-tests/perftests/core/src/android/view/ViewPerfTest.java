@@ -22,6 +22,7 @@ import android.perftests.utils.BenchmarkState;
 import android.perftests.utils.PerfStatusReporter;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.LargeTest;
+import android.view.View.MeasureSpec;
 import android.widget.FrameLayout;
 
 import com.android.perftests.core.R;
@@ -55,4 +56,53 @@ public class ViewPerfTest {
             inflater.inflate(R.layout.twelve_key_entry, root, false);
         }
     }
+
+    @Test
+    public void testTwelveKeyLeafRemeasure() {
+        testTwelveKeyLeafRemeasure(false /* measureReuse */);
+    }
+
+    @Test
+    public void testTwelveKeyLeafRemeasure_measureReuse() {
+        testTwelveKeyLeafRemeasure(true /* measureReuse */);
+    }
+
+    /**
+     * Measures and lays out the twelve key layout after one of its keys requested layout, with
+     * specs that alternate between two widths.
+     */
+    private void testTwelveKeyLeafRemeasure(boolean measureReuse) {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final ViewGroup root = (ViewGroup) LayoutInflater.from(context).inflate(
+                R.layout.twelve_key_entry, new FrameLayout(context), false);
+        final View leaf = setMeasureReuseEnabled(root, measureReuse);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(1000, MeasureSpec.AT_MOST);
+        final int[] widthSpecs = {
+                MeasureSpec.makeMeasureSpec(1000, MeasureSpec.AT_MOST),
+                MeasureSpec.makeMeasureSpec(800, MeasureSpec.AT_MOST) };
+
+        while (state.keepRunning()) {
+            leaf.requestLayout();
+            for (int widthSpec : widthSpecs) {
+                root.measure(widthSpec, heightSpec);
+            }
+            root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+        }
+    }
+
+    /**
+     * Sets whether the groups of the given hierarchy reuse measurements, and returns its last
+     * leaf.
+     */
+    private static View setMeasureReuseEnabled(ViewGroup group, boolean enabled) {
+        group.setMeasureReuseEnabled(enabled);
+        View leaf = group;
+        for (int i = 0; i < group.getChildCount(); i++) {
+            final View child = group.getChildAt(i);
+            leaf = child instanceof ViewGroup
+                    ? setMeasureReuseEnabled((ViewGroup) child, enabled) : child;
+        }
+        return leaf;
+    }
 }
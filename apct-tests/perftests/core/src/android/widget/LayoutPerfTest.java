@@ -17,15 +17,20 @@
 package android.widget;
 
 import android.app.Activity;
+import android.os.Bundle;
 import android.os.Looper;
 import android.perftests.utils.BenchmarkState;
 import android.perftests.utils.PerfStatusReporter;
 import android.perftests.utils.StubActivity;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.annotation.UiThreadTest;
 import android.support.test.filters.LargeTest;
 import android.support.test.rule.ActivityTestRule;
+import android.view.LayoutInflater;
 import android.view.View;
+import android.view.View.MeasureSpec;
 import android.view.ViewGroup;
+import android.view.ViewRootImpl;
 
 import com.android.perftests.core.R;
 
@@ -60,11 +65,13 @@ public class LayoutPerfTest {
 
     private int[] mMeasureSpecs = {EXACTLY, AT_MOST, UNSPECIFIED};
 
+    private String mKey;
     private int mLayoutId;
     private int mViewId;
 
     public LayoutPerfTest(String key, int layoutId, int viewId) {
         // key is used in the final report automatically.
+        mKey = key;
         mLayoutId = layoutId;
         mViewId = viewId;
     }
@@ -105,4 +112,89 @@ public class LayoutPerfTest {
             }
         });
     }
+
+    @Test
+    public void testLeafRequestLayout() throws Throwable {
+        testLeafRequestLayout(false /* measureReuse */);
+    }
+
+    @Test
+    public void testLeafRequestLayout_measureReuse() throws Throwable {
+        testLeafRequestLayout(true /* measureReuse */);
+    }
+
+    /**
+     * Measures a layout pass after a single leaf of the hierarchy requested layout, with specs
+     * that alternate between two sizes, as when a parent measures its children twice.
+     */
+    private void testLeafRequestLayout(boolean measureReuse) throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            Activity activity = mActivityRule.getActivity();
+            activity.setContentView(mLayoutId);
+
+            ViewGroup viewGroup = (ViewGroup) activity.findViewById(mViewId);
+            ViewRootImpl viewRoot = viewGroup.getViewRootImpl();
+
+            List<View> allNodes = gatherViewTree(viewGroup);
+            View leaf = null;
+            for (View view : allNodes) {
+                if (view instanceof ViewGroup) {
+                    ((ViewGroup) view).setMeasureReuseEnabled(measureReuse);
+                } else {
+                    leaf = view;
+                }
+            }
+
+            final int[] sizes = {1000, 800};
+            BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            int iterations = 0;
+            int measureCount = viewRoot.getMeasureCount();
+            while (state.keepRunning()) {
+                leaf.requestLayout();
+                for (int size : sizes) {
+                    final int spec = MeasureSpec.makeMeasureSpec(size, AT_MOST);
+                    viewGroup.measure(spec, spec);
+                }
+                viewGroup.layout(0, 0, viewGroup.getMeasuredWidth(),
+                        viewGroup.getMeasuredHeight());
+                iterations++;
+            }
+            measureCount = viewRoot.getMeasureCount() - measureCount;
+
+            final Bundle status = new Bundle();
+            status.putFloat(mKey + (measureReuse ? "_measureReuse" : "") + "_measuredViews",
+                    iterations > 0 ? (float) measureCount / iterations : 0);
+            InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+        });
+    }
+
+    @Test
+    public void testInflateCold() throws Throwable {
+        testInflate(false /* warm */);
+    }
+
+    @Test
+    public void testInflateWarm() throws Throwable {
+        testInflate(true /* warm */);
+    }
+
+    private void testInflate(boolean warm) throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            final Activity activity = mActivityRule.getActivity();
+            final LayoutInflater inflater = LayoutInflater.from(activity);
+            final ViewGroup root = new FrameLayout(activity);
+            BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+
+            // Record the inflation plan of the layout before timing warm inflations.
+            inflater.inflate(mLayoutId, root, false);
+            while (state.keepRunning()) {
+                if (!warm) {
+                    state.pauseTiming();
+                    inflater.clearInflationPlans();
+                    state.resumeTiming();
+                }
+                inflater.inflate(mLayoutId, root, false);
+            }
+        });
+    }
 }
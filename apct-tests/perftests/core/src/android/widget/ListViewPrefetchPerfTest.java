@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.StubActivity;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the frames of a ListView scrolling through rows of several types, with
+ * and without item prefetch. Prefetching happens between frames, so it is not part of the cost.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class ListViewPrefetchPerfTest {
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "noPrefetch", false },
+            { "prefetch", true },
+        });
+    }
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int ITEM_COUNT = 1000;
+    private static final int VIEW_TYPE_COUNT = 4;
+    // Distance scrolled on each frame, as during a fast fling.
+    private static final int SCROLL_DISTANCE_PER_FRAME = 150;
+    private static final long FRAME_INTERVAL_NS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    private final String mMetricKey;
+    private final boolean mPrefetch;
+
+    public ListViewPrefetchPerfTest(String metricKey, boolean prefetch) {
+        mMetricKey = metricKey;
+        mPrefetch = prefetch;
+    }
+
+    @Rule
+    public ActivityTestRule<StubActivity> mActivityRule = new ActivityTestRule(StubActivity.class);
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    /**
+     * An adapter whose rows have nested views, the number of which depends on the row type.
+     */
+    private static class RowAdapter extends BaseAdapter {
+        private final Context mContext;
+
+        RowAdapter(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public int getCount() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return VIEW_TYPE_COUNT;
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return position % VIEW_TYPE_COUNT;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            LinearLayout row = (LinearLayout) convertView;
+            if (row == null) {
+                row = new LinearLayout(mContext);
+                row.setOrientation(LinearLayout.VERTICAL);
+                for (int i = 0; i <= getItemViewType(position); i++) {
+                    row.addView(new TextView(mContext));
+                }
+            }
+            for (int i = 0; i < row.getChildCount(); i++) {
+                ((TextView) row.getChildAt(i)).setText("Item " + position + " line " + i);
+            }
+            return row;
+        }
+    }
+
+    private ListView setupListView() {
+        final Activity activity = mActivityRule.getActivity();
+        final ListView listView = new ListView(activity);
+        listView.setItemPrefetchEnabled(mPrefetch);
+        listView.setAdapter(new RowAdapter(activity));
+        activity.setContentView(listView);
+        measureAndLayout(listView);
+        return listView;
+    }
+
+    private static void measureAndLayout(ListView listView) {
+        listView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        listView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void testScroll() throws Throwable {
+        mActivityRule.runOnUiThread(() -> {
+            final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+            final ListView listView = setupListView();
+
+            while (state.keepRunning()) {
+                listView.scrollListBy(SCROLL_DISTANCE_PER_FRAME);
+
+                state.pauseTiming();
+                if (mPrefetch) {
+                    // Use the idle time until the next frame, as the UI thread would.
+                    listView.prefetchItems(System.nanoTime() + FRAME_INTERVAL_NS / 2);
+                }
+                if (!listView.canScrollList(1)) {
+                    listView.setSelection(0);
+                    measureAndLayout(listView);
+                }
+                state.resumeTiming();
+            }
+
+            final Bundle status = new Bundle();
+            status.putInt(mMetricKey + "_prefetchedItems", listView.getPrefetchedItemCount());
+            status.putInt(mMetricKey + "_prefetchedItemsUsed",
+                    listView.getPrefetchedItemUsedCount());
+            InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+        });
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+import android.perftests.utils.StubActivity;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.text.PrecomputedText;
+import android.view.View.MeasureSpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Compares the cost of binding long text to a TextView, i.e. setting it and measuring and laying
+ * out the view, with and without text precomputed off the UI thread.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class TextViewPrecomputedTextPerfTest {
+    @Parameters(name = "{0}")
+    public static Collection cases() {
+        return Arrays.asList(new Object[][] {
+            { "10words", 10 },
+            { "100words", 100 },
+            { "1000words", 1000 },
+        });
+    }
+
+    private static final int WIDTH = 720;
+    private static final String ALPHABETS = "abcdefghijklmnopqrstuvwxyz";
+
+    private final int mWordCount;
+
+    public TextViewPrecomputedTextPerfTest(String key, int wordCount) {
+        mWordCount = wordCount;
+    }
+
+    @Rule
+    public ActivityTestRule<StubActivity> mActivityRule = new ActivityTestRule(StubActivity.class);
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private String createText(Random random) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mWordCount; i++) {
+            final int wordLength = 1 + random.nextInt(10);
+            for (int j = 0; j < wordLength; j++) {
+                builder.append(ALPHABETS.charAt(random.nextInt(ALPHABETS.length())));
+            }
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+
+    private static void measureAndLayout(TextView textView) {
+        textView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+        textView.layout(0, 0, textView.getMeasuredWidth(), textView.getMeasuredHeight());
+    }
+
+    @Test
+    public void testBind() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final TextView textView = new TextView(mActivityRule.getActivity());
+        final Random random = new Random(0);
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // Use new text every time, as a list would bind a new item.
+            final String text = createText(random);
+            state.resumeTiming();
+
+            textView.setText(text);
+            measureAndLayout(textView);
+        }
+    }
+
+    @Test
+    public void testBind_precomputed() {
+        final BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        final TextView textView = new TextView(mActivityRule.getActivity());
+        final PrecomputedText.Params params = textView.getPrecomputedTextParams(
+                WIDTH - textView.getCompoundPaddingLeft() - textView.getCompoundPaddingRight());
+        final Random random = new Random(0);
+
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            // Precomputing would happen on a background thread, so it is not part of the cost.
+            final PrecomputedText text = PrecomputedText.create(createText(random), params);
+            state.resumeTiming();
+
+            textView.setPrecomputedText(text);
+            measureAndLayout(textView);
+        }
+    }
+}
@@ -46,6 +46,7 @@ import android.content.res.CompatibilityInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.Resources.Theme;
+import android.content.res.ResourcesImpl;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDebug;
 import android.database.sqlite.SQLiteDebug.DbStats;
@@ -1204,6 +1205,15 @@ public final class ActivityThread {
                     "OpenSSL Sockets:", openSslSocketCount);
             printRow(pw, ONE_COUNT_COLUMN, "WebViews:", webviewInstanceCount);
 
+            final ResourcesImpl.CacheStats resourceCacheStats =
+                    mResourcesManager.getCacheStats();
+            pw.println(" ");
+            pw.println(" Resource Caches");
+            printRow(pw, TWO_COUNT_COLUMNS, "Hits:", resourceCacheStats.hitCount,
+                    "Misses:", resourceCacheStats.missCount);
+            printRow(pw, TWO_COUNT_COLUMNS, "Entries:", resourceCacheStats.entryCount,
+                    "Preloaded:", ResourcesImpl.getPreloadedResourceCount());
+
             // SQLite mem info
             pw.println(" ");
             pw.println(" SQL");
@@ -5327,6 +5337,7 @@ public final class ActivityThread {
         }
 
         WindowManagerGlobal.getInstance().trimMemory(level);
+        mResourcesManager.trimMemory(level);
     }
 
     private void setupGraphicsSupport(Context context) {
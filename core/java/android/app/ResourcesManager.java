@@ -42,10 +42,13 @@ import android.view.DisplayAdjustments;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Objects;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 /** @hide */
@@ -84,10 +87,51 @@ public class ResourcesManager {
     private final ArrayMap<ResourcesKey, WeakReference<ResourcesImpl>> mResourceImpls =
             new ArrayMap<>();
 
+    /**
+     * The reverse of {@link #mResourceImpls}, so that the key of a ResourcesImpl can be found
+     * without scanning all of them. Entries go away along with their ResourcesImpl.
+     */
+    private final WeakHashMap<ResourcesImpl, ResourcesKey> mResourceImplKeys =
+            new WeakHashMap<>();
+
     /**
      * A list of Resource references that can be reused.
      */
     private final ArrayList<WeakReference<Resources>> mResourceReferences = new ArrayList<>();
+    private final ReferenceQueue<Resources> mResourcesReferencesQueue = new ReferenceQueue<>();
+
+    /**
+     * Resources not tied to an Activity, indexed by the key and class loader they were
+     * requested with. This is read without holding the lock, so that looking up Resources that
+     * already exist does not contend with the creation of new ones. It is only written to with
+     * the lock held, and entries are checked against the state of their Resources on each read.
+     */
+    private final ConcurrentHashMap<Pair<ResourcesKey, ClassLoader>, SharedResources>
+            mSharedResources = new ConcurrentHashMap<>();
+
+    /**
+     * An entry of {@link #mSharedResources}: the Resources, and the ResourcesImpl it had when it
+     * was handed out for the key.
+     */
+    private static class SharedResources {
+        final WeakReference<Resources> resourcesRef;
+        final WeakReference<ResourcesImpl> implRef;
+
+        SharedResources(WeakReference<Resources> resourcesRef, ResourcesImpl impl) {
+            this.resourcesRef = resourcesRef;
+            this.implRef = new WeakReference<>(impl);
+        }
+
+        @Nullable Resources get() {
+            final Resources resources = resourcesRef.get();
+            final ResourcesImpl impl = implRef.get();
+            if (resources != null && impl != null && resources.getImpl() == impl
+                    && impl.getAssets().isUpToDate()) {
+                return resources;
+            }
+            return null;
+        }
+    }
 
     /**
      * Resources and base configuration override associated with an Activity.
@@ -95,6 +139,7 @@ public class ResourcesManager {
     private static class ActivityResources {
         public final Configuration overrideConfig = new Configuration();
         public final ArrayList<WeakReference<Resources>> activityResources = new ArrayList<>();
+        final ReferenceQueue<Resources> activityResourcesQueue = new ReferenceQueue<>();
     }
 
     /**
@@ -256,8 +301,71 @@ public class ResourcesManager {
         final ResourcesImpl res = mResourceImpls.remove(removedKey).get();
 
         if (res != null) {
+            mResourceImplKeys.remove(res);
             res.flushLayoutCache();
         }
+        mSharedResources.clear();
+    }
+
+    private void putResourcesImplLocked(@NonNull ResourcesKey key, @NonNull ResourcesImpl impl) {
+        mResourceImpls.put(key, new WeakReference<>(impl));
+        mResourceImplKeys.put(impl, key);
+    }
+
+    /**
+     * Removes the cleared references from the list, only if the garbage collector reported some
+     * in the queue since the last call. This keeps the cost of pruning proportional to the
+     * number of collected Resources, instead of paying for a scan on every lookup.
+     *
+     * @return true if references were removed
+     */
+    private static boolean cleanupReferences(ArrayList<WeakReference<Resources>> references,
+            ReferenceQueue<Resources> referenceQueue) {
+        Reference<? extends Resources> enqueuedRef = referenceQueue.poll();
+        if (enqueuedRef == null) {
+            return false;
+        }
+        // Drain the queue, the scan below removes all the cleared references at once.
+        while (enqueuedRef != null) {
+            enqueuedRef = referenceQueue.poll();
+        }
+        ArrayUtils.unstableRemoveIf(references, sEmptyReferencePredicate);
+        return true;
+    }
+
+    /**
+     * Releases what the resource caches of all the ResourcesImpl objects no longer need.
+     *
+     * @param level the level of the trim request, see
+     *              {@link android.content.ComponentCallbacks2}
+     */
+    public void trimMemory(int level) {
+        synchronized (this) {
+            for (int i = mResourceImpls.size() - 1; i >= 0; i--) {
+                final ResourcesImpl impl = mResourceImpls.valueAt(i).get();
+                if (impl != null) {
+                    impl.trimMemory(level);
+                } else {
+                    mResourceImpls.removeAt(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the statistics of the resource caches of all the ResourcesImpl objects.
+     */
+    public @NonNull ResourcesImpl.CacheStats getCacheStats() {
+        final ResourcesImpl.CacheStats stats = new ResourcesImpl.CacheStats();
+        synchronized (this) {
+            for (int i = 0; i < mResourceImpls.size(); i++) {
+                final ResourcesImpl impl = mResourceImpls.valueAt(i).get();
+                if (impl != null) {
+                    impl.addCacheStats(stats);
+                }
+            }
+        }
+        return stats;
     }
 
     /**
@@ -377,7 +485,7 @@ public class ResourcesManager {
         if (impl == null) {
             impl = createResourcesImpl(key);
             if (impl != null) {
-                mResourceImpls.put(key, new WeakReference<>(impl));
+                putResourcesImplLocked(key, impl);
             }
         }
         return impl;
@@ -389,15 +497,7 @@ public class ResourcesManager {
      */
     private @Nullable ResourcesKey findKeyForResourceImplLocked(
             @NonNull ResourcesImpl resourceImpl) {
-        final int refCount = mResourceImpls.size();
-        for (int i = 0; i < refCount; i++) {
-            WeakReference<ResourcesImpl> weakImplRef = mResourceImpls.valueAt(i);
-            ResourcesImpl impl = weakImplRef != null ? weakImplRef.get() : null;
-            if (impl != null && resourceImpl == impl) {
-                return mResourceImpls.keyAt(i);
-            }
-        }
-        return null;
+        return mResourceImplKeys.get(resourceImpl);
     }
 
     /**
@@ -463,7 +563,8 @@ public class ResourcesManager {
         Resources resources = compatInfo.needsCompatResources() ? new CompatResources(classLoader)
                 : new Resources(classLoader);
         resources.setImpl(impl);
-        activityResources.activityResources.add(new WeakReference<>(resources));
+        activityResources.activityResources.add(
+                new WeakReference<>(resources, activityResources.activityResourcesQueue));
         if (DEBUG) {
             Slog.d(TAG, "- creating new ref=" + resources);
             Slog.d(TAG, "- setting ref=" + resources + " with impl=" + impl);
@@ -475,8 +576,9 @@ public class ResourcesManager {
      * Gets an existing Resources object if the class loader and ResourcesImpl are the same,
      * otherwise creates a new Resources object.
      */
-    private @NonNull Resources getOrCreateResourcesLocked(@NonNull ClassLoader classLoader,
-            @NonNull ResourcesImpl impl, @NonNull CompatibilityInfo compatInfo) {
+    private @NonNull Resources getOrCreateResourcesLocked(@NonNull ResourcesKey key,
+            @NonNull ClassLoader classLoader, @NonNull ResourcesImpl impl,
+            @NonNull CompatibilityInfo compatInfo) {
         // Find an existing Resources that has this ResourcesImpl set.
         final int refCount = mResourceReferences.size();
         for (int i = 0; i < refCount; i++) {
@@ -488,6 +590,8 @@ public class ResourcesManager {
                 if (DEBUG) {
                     Slog.d(TAG, "- using existing ref=" + resources);
                 }
+                mSharedResources.put(Pair.create(key, classLoader),
+                        new SharedResources(weakResourceRef, impl));
                 return resources;
             }
         }
@@ -496,7 +600,11 @@ public class ResourcesManager {
         Resources resources = compatInfo.needsCompatResources() ? new CompatResources(classLoader)
                 : new Resources(classLoader);
         resources.setImpl(impl);
-        mResourceReferences.add(new WeakReference<>(resources));
+        final WeakReference<Resources> weakResourceRef =
+                new WeakReference<>(resources, mResourcesReferencesQueue);
+        mResourceReferences.add(weakResourceRef);
+        mSharedResources.put(Pair.create(key, classLoader),
+                new SharedResources(weakResourceRef, impl));
         if (DEBUG) {
             Slog.d(TAG, "- creating new ref=" + resources);
             Slog.d(TAG, "- setting ref=" + resources + " with impl=" + impl);
@@ -581,6 +689,19 @@ public class ResourcesManager {
      */
     private @Nullable Resources getOrCreateResources(@Nullable IBinder activityToken,
             @NonNull ResourcesKey key, @NonNull ClassLoader classLoader) {
+        if (activityToken == null) {
+            // Fast path: these Resources were already handed out, and are still up to date.
+            final SharedResources sharedResources =
+                    mSharedResources.get(Pair.create(key, classLoader));
+            final Resources resources = sharedResources != null ? sharedResources.get() : null;
+            if (resources != null) {
+                if (DEBUG) {
+                    Slog.d(TAG, "- using shared ref=" + resources);
+                }
+                return resources;
+            }
+        }
+
         synchronized (this) {
             if (DEBUG) {
                 Throwable here = new Throwable();
@@ -593,8 +714,8 @@ public class ResourcesManager {
                         getOrCreateActivityResourcesStructLocked(activityToken);
 
                 // Clean up any dead references so they don't pile up.
-                ArrayUtils.unstableRemoveIf(activityResources.activityResources,
-                        sEmptyReferencePredicate);
+                cleanupReferences(activityResources.activityResources,
+                        activityResources.activityResourcesQueue);
 
                 // Rebase the key's override config on top of the Activity's base override.
                 if (key.hasOverrideConfiguration()
@@ -617,7 +738,10 @@ public class ResourcesManager {
 
             } else {
                 // Clean up any dead references so they don't pile up.
-                ArrayUtils.unstableRemoveIf(mResourceReferences, sEmptyReferencePredicate);
+                if (cleanupReferences(mResourceReferences, mResourcesReferencesQueue)) {
+                    mSharedResources.values().removeIf(
+                            sharedResources -> sharedResources.resourcesRef.get() == null);
+                }
 
                 // Not tied to an Activity, find a shared Resources that has the right ResourcesImpl
                 ResourcesImpl resourcesImpl = findResourcesImplForKeyLocked(key);
@@ -625,7 +749,8 @@ public class ResourcesManager {
                     if (DEBUG) {
                         Slog.d(TAG, "- using existing impl=" + resourcesImpl);
                     }
-                    return getOrCreateResourcesLocked(classLoader, resourcesImpl, key.mCompatInfo);
+                    return getOrCreateResourcesLocked(key, classLoader, resourcesImpl,
+                            key.mCompatInfo);
                 }
 
                 // We will create the ResourcesImpl object outside of holding this lock.
@@ -649,7 +774,7 @@ public class ResourcesManager {
                 resourcesImpl = existingResourcesImpl;
             } else {
                 // Add this ResourcesImpl to the cache.
-                mResourceImpls.put(key, new WeakReference<>(resourcesImpl));
+                putResourcesImplLocked(key, resourcesImpl);
             }
 
             final Resources resources;
@@ -657,7 +782,8 @@ public class ResourcesManager {
                 resources = getOrCreateResourcesForActivityLocked(activityToken, classLoader,
                         resourcesImpl, key.mCompatInfo);
             } else {
-                resources = getOrCreateResourcesLocked(classLoader, resourcesImpl, key.mCompatInfo);
+                resources = getOrCreateResourcesLocked(key, classLoader, resourcesImpl,
+                        key.mCompatInfo);
             }
             return resources;
         }
@@ -818,7 +944,7 @@ public class ResourcesManager {
                     if (resourcesImpl == null) {
                         resourcesImpl = createResourcesImpl(newKey);
                         if (resourcesImpl != null) {
-                            mResourceImpls.put(newKey, new WeakReference<>(resourcesImpl));
+                            putResourcesImplLocked(newKey, resourcesImpl);
                         }
                     }
 
@@ -1000,6 +1126,9 @@ public class ResourcesManager {
             return;
         }
 
+        // The shared Resources are about to be pointed to other ResourcesImpl objects.
+        mSharedResources.clear();
+
         // Update any references to ResourcesImpl that require reloading.
         final int resourcesCount = mResourceReferences.size();
         for (int i = 0; i < resourcesCount; i++) {
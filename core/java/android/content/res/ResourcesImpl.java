@@ -338,6 +338,32 @@ public class ResourcesImpl {
         return mAnimatorCache;
     }
 
+    /**
+     * Releases the cache entries that no longer hold anything, called when the process is
+     * asked to trim its memory usage.
+     *
+     * @param level the level of the trim request, see
+     *              {@link android.content.ComponentCallbacks2}
+     */
+    public void trimMemory(int level) {
+        mDrawableCache.onTrimMemory(level);
+        mColorDrawableCache.onTrimMemory(level);
+        mComplexColorCache.onTrimMemory(level);
+        mAnimatorCache.onTrimMemory(level);
+        mStateListAnimatorCache.onTrimMemory(level);
+    }
+
+    /**
+     * Adds the statistics of the resource caches of this object to the given ones.
+     */
+    public void addCacheStats(@NonNull CacheStats stats) {
+        stats.add(mDrawableCache);
+        stats.add(mColorDrawableCache);
+        stats.add(mComplexColorCache);
+        stats.add(mAnimatorCache);
+        stats.add(mStateListAnimatorCache);
+    }
+
     ConfigurationBoundResourceCache<StateListAnimator> getStateListAnimatorCache() {
         return mStateListAnimatorCache;
     }
@@ -1234,6 +1260,34 @@ public class ResourcesImpl {
         return impl;
     }
 
+    /**
+     * Statistics of the resource caches of one or more ResourcesImpl objects, as reported in
+     * the meminfo dump of the process.
+     */
+    public static class CacheStats {
+        /** Number of lookups that found a cached resource. */
+        public long hitCount;
+        /** Number of lookups that had to load the resource, or use a preloaded one. */
+        public long missCount;
+        /** Number of entries held by the caches. */
+        public long entryCount;
+
+        void add(@NonNull ThemedResourceCache<?> cache) {
+            hitCount += cache.getHitCount();
+            missCount += cache.getMissCount();
+            entryCount += cache.getEntryCount();
+        }
+    }
+
+    /**
+     * Returns the number of entries in the tables of resources preloaded by the zygote. The
+     * preloaded resources are shared by all the processes it forks.
+     */
+    public static int getPreloadedResourceCount() {
+        return sPreloadedDrawables[0].size() + sPreloadedDrawables[1].size()
+                + sPreloadedColorDrawables.size() + sPreloadedComplexColors.size();
+    }
+
     public class ThemeImpl {
         /**
          * Unique key for the series of styles applied to this theme.
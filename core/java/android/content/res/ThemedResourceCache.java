@@ -28,14 +28,27 @@ import java.lang.ref.WeakReference;
 
 /**
  * Data structure used for caching data against themes.
+ * <p>
+ * Entries are weakly referenced, so the cache never keeps data alive by itself. The tables
+ * holding the references are bounded: once they grow past a threshold, the entries whose data
+ * was collected are pruned, and the threshold is set to twice the number of remaining entries.
  *
  * @param <T> type of data to cache
  */
 abstract class ThemedResourceCache<T> {
+    // Number of entries below which the cache does not bother pruning collected entries.
+    private static final int MIN_PRUNE_THRESHOLD = 64;
+
     private ArrayMap<ThemeKey, LongSparseArray<WeakReference<T>>> mThemedEntries;
     private LongSparseArray<WeakReference<T>> mUnthemedEntries;
     private LongSparseArray<WeakReference<T>> mNullThemedEntries;
 
+    private int mEntryCount;
+    private int mPruneThreshold = MIN_PRUNE_THRESHOLD;
+
+    private int mHitCount;
+    private int mMissCount;
+
     /**
      * Adds a new theme-dependent entry to the cache.
      *
@@ -71,7 +84,14 @@ abstract class ThemedResourceCache<T> {
                 entries = getThemedLocked(theme, true);
             }
             if (entries != null) {
+                final int previousSize = entries.size();
                 entries.put(key, new WeakReference<>(entry));
+                mEntryCount += entries.size() - previousSize;
+            }
+
+            if (mEntryCount > mPruneThreshold) {
+                prune(0);
+                mPruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, mEntryCount * 2);
             }
         }
     }
@@ -90,24 +110,29 @@ abstract class ThemedResourceCache<T> {
         // hit first. Since most of the framework drawables are themed, that's
         // probably going to be the themed cache.
         synchronized (this) {
+            T entry = null;
             final LongSparseArray<WeakReference<T>> themedEntries = getThemedLocked(theme, false);
-            if (themedEntries != null) {
-                final WeakReference<T> themedEntry = themedEntries.get(key);
-                if (themedEntry != null) {
-                    return themedEntry.get();
+            final WeakReference<T> themedEntry = themedEntries != null
+                    ? themedEntries.get(key) : null;
+            if (themedEntry != null) {
+                entry = themedEntry.get();
+            } else {
+                final LongSparseArray<WeakReference<T>> unthemedEntries =
+                        getUnthemedLocked(false);
+                final WeakReference<T> unthemedEntry = unthemedEntries != null
+                        ? unthemedEntries.get(key) : null;
+                if (unthemedEntry != null) {
+                    entry = unthemedEntry.get();
                 }
             }
 
-            final LongSparseArray<WeakReference<T>> unthemedEntries = getUnthemedLocked(false);
-            if (unthemedEntries != null) {
-                final WeakReference<T> unthemedEntry = unthemedEntries.get(key);
-                if (unthemedEntry != null) {
-                    return unthemedEntry.get();
-                }
+            if (entry != null) {
+                mHitCount++;
+            } else {
+                mMissCount++;
             }
+            return entry;
         }
-
-        return null;
     }
 
     /**
@@ -120,6 +145,50 @@ abstract class ThemedResourceCache<T> {
         prune(configChanges);
     }
 
+    /**
+     * Prunes the entries whose data was collected, and the tables of themes that no longer
+     * have any entry, when the process is asked to release memory.
+     * <p>
+     * Entries whose data is still alive are kept: their data is retained by whoever uses it
+     * anyway, and dropping them would only lead to inflating a second copy.
+     *
+     * @param level the level of the trim request, see {@link android.content.ComponentCallbacks2}
+     */
+    public void onTrimMemory(int level) {
+        synchronized (this) {
+            prune(0);
+            mPruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, mEntryCount * 2);
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found live data in the cache.
+     */
+    public int getHitCount() {
+        synchronized (this) {
+            return mHitCount;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that did not find live data in the cache.
+     */
+    public int getMissCount() {
+        synchronized (this) {
+            return mMissCount;
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache, including the ones whose data was collected
+     * but that were not pruned yet.
+     */
+    public int getEntryCount() {
+        synchronized (this) {
+            return mEntryCount;
+        }
+    }
+
     /**
      * Returns whether a cached entry has been invalidated by a configuration
      * change.
@@ -206,11 +275,28 @@ abstract class ThemedResourceCache<T> {
             pruneEntriesLocked(mNullThemedEntries, configChanges);
             pruneEntriesLocked(mUnthemedEntries, configChanges);
 
+            mEntryCount = countEntriesLocked();
             return mThemedEntries == null && mNullThemedEntries == null
                     && mUnthemedEntries == null;
         }
     }
 
+    private int countEntriesLocked() {
+        int count = 0;
+        if (mThemedEntries != null) {
+            for (int i = mThemedEntries.size() - 1; i >= 0; i--) {
+                count += mThemedEntries.valueAt(i).size();
+            }
+        }
+        if (mNullThemedEntries != null) {
+            count += mNullThemedEntries.size();
+        }
+        if (mUnthemedEntries != null) {
+            count += mUnthemedEntries.size();
+        }
+        return count;
+    }
+
     private boolean pruneEntriesLocked(@Nullable LongSparseArray<WeakReference<T>> entries,
             @Config int configChanges) {
         if (entries == null) {
@@ -41,6 +41,8 @@ public class DynamicLayout extends Layout
 {
     private static final int PRIORITY = 128;
     private static final int BLOCK_MINIMUM_CHARACTER_LENGTH = 400;
+    // Texts shorter than this are cheap enough to measure that they do not use a paragraph cache.
+    private static final int PARAGRAPH_CACHE_MINIMUM_TEXT_LENGTH = 1000;
 
     /**
      * Make a layout for the specified text that will be updated as
@@ -294,6 +296,14 @@ public class DynamicLayout extends Layout
             b = StaticLayout.Builder.obtain(text, where, where + after, getPaint(), getWidth());
         }
 
+        if (mParagraphCache == null && len >= PARAGRAPH_CACHE_MINIMUM_TEXT_LENGTH) {
+            mParagraphCache = new MeasuredParagraphCache();
+        }
+        if (mParagraphCache != null) {
+            mParagraphCache.validate(getPaint(), getTextDirectionHeuristic(), mBreakStrategy,
+                    mHyphenationFrequency, mJustificationMode);
+        }
+
         b.setText(text, where, where + after)
                 .setPaint(getPaint())
                 .setWidth(getWidth())
@@ -303,7 +313,8 @@ public class DynamicLayout extends Layout
                 .setEllipsize(mEllipsizeAt)
                 .setBreakStrategy(mBreakStrategy)
                 .setHyphenationFrequency(mHyphenationFrequency)
-                .setJustificationMode(mJustificationMode);
+                .setJustificationMode(mJustificationMode)
+                .setParagraphCache(mParagraphCache);
         reflowed.generate(b, false, true);
         int n = reflowed.getLineCount();
         // If the new layout has a blank line at the end, but it is not
@@ -627,6 +638,26 @@ public class DynamicLayout extends Layout
         }
     }
 
+    /**
+     * Returns the number of paragraphs whose measurement was reused from the paragraph cache
+     * instead of being computed again during a reflow.
+     * @hide
+     */
+    @VisibleForTesting
+    public int getParagraphCacheHitCount() {
+        return mParagraphCache == null ? 0 : mParagraphCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of paragraphs that were looked up in the paragraph cache during a
+     * reflow but had to be measured.
+     * @hide
+     */
+    @VisibleForTesting
+    public int getParagraphCacheMissCount() {
+        return mParagraphCache == null ? 0 : mParagraphCache.getMissCount();
+    }
+
     /**
      * @hide
      */
@@ -840,6 +871,9 @@ public class DynamicLayout extends Layout
 
     private Rect mTempRect = new Rect();
 
+    // Measurements of the paragraphs laid out so far, created once the text gets long enough.
+    private MeasuredParagraphCache mParagraphCache;
+
     private static StaticLayout sStaticLayout = null;
     private static StaticLayout.Builder sBuilder = null;
 
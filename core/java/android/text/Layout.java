@@ -238,6 +238,10 @@ public abstract class Layout {
         mJustificationMode = justificationMode;
     }
 
+    /* package */ @JustificationMode int getJustificationMode() {
+        return mJustificationMode;
+    }
+
     /**
      * Replace constructor properties of this Layout with new ones.  Be careful.
      */
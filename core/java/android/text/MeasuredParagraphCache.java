@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.text.style.MetricAffectingSpan;
+import android.text.style.ReplacementSpan;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Content-addressed cache of the measurement and line breaking results of single paragraphs.
+ *
+ * Entries are keyed by the characters of the paragraph, the metric affecting spans covering it
+ * and the widths available to it. Everything else that influences measurement (the base paint,
+ * text direction, break strategy...) is captured once per cache by {@link #validate}, which
+ * drops all entries whenever one of those inputs changes.
+ *
+ * This is used by {@link DynamicLayout} so that a reflow does not need to measure and break
+ * again the paragraphs whose content came back to an already laid out state, e.g. when a
+ * paragraph is split and joined again, or an edit is undone.
+ *
+ * Not thread safe: the owner is expected to only use it from one thread at a time.
+ *
+ * @hide
+ */
+class MeasuredParagraphCache {
+    // Bound on the total number of characters held by the cache.
+    private static final int MAX_CACHED_CHARS = 16 * 1024;
+
+    private final LruCache<Key, Entry> mEntries = new LruCache<Key, Entry>(MAX_CACHED_CHARS) {
+        @Override
+        protected int sizeOf(Key key, Entry entry) {
+            // Paragraphs may be empty, but still cost something.
+            return Math.max(1, key.mChars.length);
+        }
+    };
+
+    private final TextPaint mPaint = new TextPaint();
+    private TextDirectionHeuristic mTextDir;
+    private int mBreakStrategy;
+    private int mHyphenationFrequency;
+    private int mJustificationMode;
+    private boolean mValid;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Checks that the entries of the cache were computed with the given layout parameters, and
+     * discards them if they were not.
+     */
+    void validate(TextPaint paint, TextDirectionHeuristic textDir, int breakStrategy,
+            int hyphenationFrequency, int justificationMode) {
+        if (mValid
+                && mTextDir == textDir
+                && mBreakStrategy == breakStrategy
+                && mHyphenationFrequency == hyphenationFrequency
+                && mJustificationMode == justificationMode
+                && mPaint.hasEqualAttributes(paint)) {
+            return;
+        }
+        mEntries.evictAll();
+        mPaint.set(paint);
+        mTextDir = textDir;
+        mBreakStrategy = breakStrategy;
+        mHyphenationFrequency = hyphenationFrequency;
+        mJustificationMode = justificationMode;
+        mValid = true;
+    }
+
+    /**
+     * Builds the key for the paragraph [start, end) of the text, or returns null if the paragraph
+     * cannot be cached. Paragraphs containing a {@link ReplacementSpan} are never cached since
+     * the size of a replacement may change without any notification.
+     */
+    static Key createKey(CharSequence text, int start, int end, char[] chars,
+            int firstWidth, int firstWidthLineCount, int restWidth, int[] tabStops) {
+        MetricAffectingSpan[] spans = null;
+        int[] ranges = null;
+        if (text instanceof Spanned) {
+            final Spanned spanned = (Spanned) text;
+            spans = spanned.getSpans(start, end, MetricAffectingSpan.class);
+            spans = TextUtils.removeEmptySpans(spans, spanned, MetricAffectingSpan.class);
+            if (spans.length == 0) {
+                spans = null;
+            } else {
+                ranges = new int[spans.length * 2];
+                for (int i = 0; i < spans.length; i++) {
+                    if (spans[i] instanceof ReplacementSpan) {
+                        return null;
+                    }
+                    ranges[2 * i] = Math.max(spanned.getSpanStart(spans[i]), start) - start;
+                    ranges[2 * i + 1] = Math.min(spanned.getSpanEnd(spans[i]), end) - start;
+                }
+            }
+        }
+        return new Key(Arrays.copyOf(chars, end - start), spans, ranges,
+                firstWidth, firstWidthLineCount, restWidth, tabStops);
+    }
+
+    Entry get(Key key) {
+        final Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return entry;
+    }
+
+    void put(Key key, Entry entry) {
+        mEntries.put(key, entry);
+    }
+
+    int getHitCount() {
+        return mHitCount;
+    }
+
+    int getMissCount() {
+        return mMissCount;
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    static final class Key {
+        final char[] mChars;
+        final Object[] mSpans;
+        final int[] mSpanRanges;
+        final int mFirstWidth;
+        final int mFirstWidthLineCount;
+        final int mRestWidth;
+        final int[] mTabStops;
+        private final int mHashCode;
+
+        Key(char[] chars, Object[] spans, int[] spanRanges, int firstWidth,
+                int firstWidthLineCount, int restWidth, int[] tabStops) {
+            mChars = chars;
+            mSpans = spans;
+            mSpanRanges = spanRanges;
+            mFirstWidth = firstWidth;
+            mFirstWidthLineCount = firstWidthLineCount;
+            mRestWidth = restWidth;
+            mTabStops = tabStops;
+
+            int hash = Arrays.hashCode(chars);
+            hash = 31 * hash + Arrays.hashCode(spanRanges);
+            hash = 31 * hash + firstWidth;
+            hash = 31 * hash + firstWidthLineCount;
+            hash = 31 * hash + restWidth;
+            hash = 31 * hash + Arrays.hashCode(tabStops);
+            mHashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            if (mHashCode != other.mHashCode
+                    || mFirstWidth != other.mFirstWidth
+                    || mFirstWidthLineCount != other.mFirstWidthLineCount
+                    || mRestWidth != other.mRestWidth
+                    || !Arrays.equals(mSpanRanges, other.mSpanRanges)
+                    || !Arrays.equals(mTabStops, other.mTabStops)
+                    || !Arrays.equals(mChars, other.mChars)) {
+                return false;
+            }
+            // Spans are compared by identity: a span object is assumed not to change the way it
+            // affects measurement while it is attached to the text.
+            if (mSpans == other.mSpans) return true;
+            if (mSpans == null || other.mSpans == null
+                    || mSpans.length != other.mSpans.length) {
+                return false;
+            }
+            for (int i = 0; i < mSpans.length; i++) {
+                if (mSpans[i] != other.mSpans[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Measurement and line breaking results of a paragraph. All offsets are relative to the
+     * start of the paragraph.
+     */
+    static final class Entry {
+        final int[] mSpanEnds;
+        // top, bottom, ascent and descent of each style run, in the order used by StaticLayout
+        final int[] mFontMetrics;
+        final int mBreakCount;
+        final int[] mBreaks;
+        final float[] mLineWidths;
+        final int[] mFlags;
+
+        Entry(int paraStart, int[] spanEnds, int spanCount, int[] fontMetrics, int breakCount,
+                int[] breaks, float[] lineWidths, int[] flags) {
+            mSpanEnds = new int[spanCount];
+            for (int i = 0; i < spanCount; i++) {
+                mSpanEnds[i] = spanEnds[i] - paraStart;
+            }
+            mFontMetrics = Arrays.copyOf(fontMetrics, spanCount * 4);
+            mBreakCount = breakCount;
+            mBreaks = Arrays.copyOf(breaks, breakCount);
+            mLineWidths = Arrays.copyOf(lineWidths, breakCount);
+            mFlags = Arrays.copyOf(flags, breakCount);
+        }
+    }
+}
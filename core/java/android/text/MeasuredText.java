@@ -20,7 +20,9 @@ import android.graphics.Paint;
 import android.text.style.MetricAffectingSpan;
 import android.text.style.ReplacementSpan;
 import android.util.Log;
+import android.util.Pools;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 
 /**
@@ -45,19 +47,15 @@ class MeasuredText {
         mWorkPaint = new TextPaint();
     }
 
-    private static final Object[] sLock = new Object[0];
-    private static final MeasuredText[] sCached = new MeasuredText[3];
+    // StaticLayout and TextUtils may hold a couple of instances at once on the same thread.
+    private static final int MAX_POOL_SIZE_PER_THREAD = 4;
+    private static final Pools.ThreadLocalPool<MeasuredText> sPool =
+            new Pools.ThreadLocalPool<MeasuredText>(MAX_POOL_SIZE_PER_THREAD);
 
     static MeasuredText obtain() {
-        MeasuredText mt;
-        synchronized (sLock) {
-            for (int i = sCached.length; --i >= 0;) {
-                if (sCached[i] != null) {
-                    mt = sCached[i];
-                    sCached[i] = null;
-                    return mt;
-                }
-            }
+        MeasuredText mt = sPool.acquire();
+        if (mt != null) {
+            return mt;
         }
         mt = new MeasuredText();
         if (localLOGV) {
@@ -68,18 +66,19 @@ class MeasuredText {
 
     static MeasuredText recycle(MeasuredText mt) {
         mt.finish();
-        synchronized(sLock) {
-            for (int i = 0; i < sCached.length; ++i) {
-                if (sCached[i] == null) {
-                    sCached[i] = mt;
-                    mt.mText = null;
-                    break;
-                }
-            }
-        }
+        sPool.release(mt);
         return null;
     }
 
+    /**
+     * Returns the number of MeasuredTexts allocated on the calling thread because its pool was
+     * empty.
+     */
+    @VisibleForTesting
+    static int getAllocationCount() {
+        return sPool.getMissCount();
+    }
+
     void finish() {
         mText = null;
         mBuilder = null;
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.annotation.IntRange;
+import android.annotation.NonNull;
+
+import com.android.internal.util.Preconditions;
+
+/**
+ * Text whose measurement and line breaking have been computed ahead of time.
+ *
+ * <p>Measuring and breaking long text into lines is expensive and is by default done by
+ * {@link android.widget.TextView} on the UI thread, the first time the view is measured. A
+ * PrecomputedText can be created on any thread, typically a background thread while preparing
+ * the data of a list item, and then be handed to
+ * {@link android.widget.TextView#setPrecomputedText(PrecomputedText)}. As long as the TextView
+ * is configured with the same {@link Params} and is laid out with the same width, it will reuse
+ * the precomputed lines instead of computing them again.</p>
+ *
+ * <p>PrecomputedText is immutable. {@link #create} is thread safe as long as the text and
+ * the paint given to it are not modified concurrently.</p>
+ *
+ * <pre>
+ * final PrecomputedText.Params params = textView.getPrecomputedTextParams(width);
+ * executor.execute(() -> {
+ *     final PrecomputedText text = PrecomputedText.create(longText, params);
+ *     textView.post(() -> textView.setPrecomputedText(text));
+ * });
+ * </pre>
+ */
+public final class PrecomputedText {
+    /**
+     * The parameters used for measuring and breaking the text into lines.
+     */
+    public static final class Params {
+        private final TextPaint mPaint;
+        private final int mWidth;
+        private final Layout.Alignment mAlignment;
+        private final TextDirectionHeuristic mTextDir;
+        private final float mSpacingAdd;
+        private final float mSpacingMult;
+        private final boolean mIncludePad;
+        private final int mBreakStrategy;
+        private final int mHyphenationFrequency;
+        private final int mJustificationMode;
+
+        private Params(Builder b) {
+            // Copy the paint, it must not change while the text is being computed nor after.
+            mPaint = new TextPaint(b.mPaint);
+            mWidth = b.mWidth;
+            mAlignment = b.mAlignment;
+            mTextDir = b.mTextDir;
+            mSpacingAdd = b.mSpacingAdd;
+            mSpacingMult = b.mSpacingMult;
+            mIncludePad = b.mIncludePad;
+            mBreakStrategy = b.mBreakStrategy;
+            mHyphenationFrequency = b.mHyphenationFrequency;
+            mJustificationMode = b.mJustificationMode;
+        }
+
+        /**
+         * Returns the width in pixels the text is broken into lines for.
+         */
+        public @IntRange(from = 0) int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * Returns the alignment of the lines.
+         */
+        public @NonNull Layout.Alignment getAlignment() {
+            return mAlignment;
+        }
+
+        /**
+         * Returns the text direction heuristic.
+         */
+        public @NonNull TextDirectionHeuristic getTextDirection() {
+            return mTextDir;
+        }
+
+        /**
+         * Returns the break strategy.
+         */
+        public @Layout.BreakStrategy int getBreakStrategy() {
+            return mBreakStrategy;
+        }
+
+        /**
+         * Returns the hyphenation frequency.
+         */
+        public @Layout.HyphenationFrequency int getHyphenationFrequency() {
+            return mHyphenationFrequency;
+        }
+
+        /**
+         * Returns whether the layout of the text would be the same with the given arguments.
+         *
+         * @hide
+         */
+        public boolean isCompatibleWith(@NonNull TextPaint paint, int width,
+                @NonNull Layout.Alignment alignment, @NonNull TextDirectionHeuristic textDir,
+                float spacingAdd, float spacingMult, boolean includePad, int breakStrategy,
+                int hyphenationFrequency, int justificationMode) {
+            return mWidth == width
+                    && mAlignment == alignment
+                    && mTextDir == textDir
+                    && mSpacingAdd == spacingAdd
+                    && mSpacingMult == spacingMult
+                    && mIncludePad == includePad
+                    && mBreakStrategy == breakStrategy
+                    && mHyphenationFrequency == hyphenationFrequency
+                    && mJustificationMode == justificationMode
+                    && mPaint.hasEqualAttributes(paint);
+        }
+
+        /**
+         * Builder for {@link Params}. Parameters not explicitly set get the same default values
+         * as {@link StaticLayout.Builder}.
+         */
+        public static final class Builder {
+            private final TextPaint mPaint;
+            private final int mWidth;
+            private Layout.Alignment mAlignment = Layout.Alignment.ALIGN_NORMAL;
+            private TextDirectionHeuristic mTextDir = TextDirectionHeuristics.FIRSTSTRONG_LTR;
+            private float mSpacingAdd = 0.0f;
+            private float mSpacingMult = 1.0f;
+            private boolean mIncludePad = true;
+            private int mBreakStrategy = Layout.BREAK_STRATEGY_SIMPLE;
+            private int mHyphenationFrequency = Layout.HYPHENATION_FREQUENCY_NONE;
+            private int mJustificationMode = Layout.JUSTIFICATION_MODE_NONE;
+
+            /**
+             * @param paint The base paint used for layout. It is copied by {@link #build}.
+             * @param width The width in pixels
+             */
+            public Builder(@NonNull TextPaint paint, @IntRange(from = 0) int width) {
+                mPaint = Preconditions.checkNotNull(paint);
+                mWidth = Preconditions.checkArgumentNonnegative(width);
+            }
+
+            /**
+             * @see StaticLayout.Builder#setAlignment
+             */
+            public Builder setAlignment(@NonNull Layout.Alignment alignment) {
+                mAlignment = Preconditions.checkNotNull(alignment);
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setTextDirection
+             */
+            public Builder setTextDirection(@NonNull TextDirectionHeuristic textDir) {
+                mTextDir = Preconditions.checkNotNull(textDir);
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setLineSpacing
+             */
+            public Builder setLineSpacing(float spacingAdd, float spacingMult) {
+                mSpacingAdd = spacingAdd;
+                mSpacingMult = spacingMult;
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setIncludePad
+             */
+            public Builder setIncludePad(boolean includePad) {
+                mIncludePad = includePad;
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setBreakStrategy
+             */
+            public Builder setBreakStrategy(@Layout.BreakStrategy int breakStrategy) {
+                mBreakStrategy = breakStrategy;
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setHyphenationFrequency
+             */
+            public Builder setHyphenationFrequency(
+                    @Layout.HyphenationFrequency int hyphenationFrequency) {
+                mHyphenationFrequency = hyphenationFrequency;
+                return this;
+            }
+
+            /**
+             * @see StaticLayout.Builder#setJustificationMode
+             */
+            public Builder setJustificationMode(@Layout.JustificationMode int justificationMode) {
+                mJustificationMode = justificationMode;
+                return this;
+            }
+
+            /**
+             * Build the {@link Params}.
+             */
+            public @NonNull Params build() {
+                return new Params(this);
+            }
+        }
+    }
+
+    private final CharSequence mText;
+    private final Params mParams;
+    private final StaticLayout mLayout;
+
+    private PrecomputedText(CharSequence text, Params params, StaticLayout layout) {
+        mText = text;
+        mParams = params;
+        mLayout = layout;
+    }
+
+    /**
+     * Measures and breaks the given text into lines. This can be called on any thread.
+     *
+     * <p>If the text is {@link Spanned}, its spans are copied, and must not be changed in a way
+     * that affects their metrics afterwards.</p>
+     *
+     * @param text The text to be measured
+     * @param params The parameters to use for measuring and breaking the text
+     * @return the precomputed text
+     */
+    public static @NonNull PrecomputedText create(@NonNull CharSequence text,
+            @NonNull Params params) {
+        // Make an immutable copy; this is also what TextView stores for static text.
+        final CharSequence copy = TextUtils.stringOrSpannedString(Preconditions.checkNotNull(text));
+        final StaticLayout layout = StaticLayout.Builder.obtain(copy, 0, copy.length(),
+                params.mPaint, params.mWidth)
+                .setAlignment(params.mAlignment)
+                .setTextDirection(params.mTextDir)
+                .setLineSpacing(params.mSpacingAdd, params.mSpacingMult)
+                .setIncludePad(params.mIncludePad)
+                .setBreakStrategy(params.mBreakStrategy)
+                .setHyphenationFrequency(params.mHyphenationFrequency)
+                .setJustificationMode(params.mJustificationMode)
+                .build();
+        return new PrecomputedText(copy, params, layout);
+    }
+
+    /**
+     * Returns the immutable text that was measured.
+     */
+    public @NonNull CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * Returns the parameters the text was measured with.
+     */
+    public @NonNull Params getParams() {
+        return mParams;
+    }
+
+    /**
+     * Returns the number of lines the text was broken into.
+     */
+    public @IntRange(from = 0) int getLineCount() {
+        return mLayout.getLineCount();
+    }
+
+    /**
+     * Returns the height in pixels of the text once broken into lines.
+     */
+    public @IntRange(from = 0) int getHeight() {
+        return mLayout.getHeight();
+    }
+
+    /**
+     * Returns a layout with the precomputed lines that measures and draws with the given paint,
+     * which must have the same attributes as the one used for precomputing, see
+     * {@link Params#isCompatibleWith}. The returned layout is owned by the caller.
+     *
+     * @hide
+     */
+    public @NonNull StaticLayout createLayout(@NonNull TextPaint paint) {
+        return new StaticLayout(mLayout, paint);
+    }
+}
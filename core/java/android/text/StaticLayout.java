@@ -104,6 +104,7 @@ public class StaticLayout extends Layout {
         private static void recycle(Builder b) {
             b.mPaint = null;
             b.mText = null;
+            b.mParagraphCache = null;
             MeasuredText.recycle(b.mMeasuredText);
             b.mMeasuredText = null;
             b.mLeftIndents = null;
@@ -119,6 +120,7 @@ public class StaticLayout extends Layout {
             mPaint = null;
             mLeftIndents = null;
             mRightIndents = null;
+            mParagraphCache = null;
             mMeasuredText.finish();
         }
 
@@ -334,6 +336,20 @@ public class StaticLayout extends Layout {
             return this;
         }
 
+        /**
+         * Set a cache of paragraph measurements to consult before measuring and breaking each
+         * paragraph, and to fill with the results otherwise. Internal for reuse cases only.
+         *
+         * @param cache the cache, or null to always measure
+         * @return this builder, useful for chaining
+         *
+         * @hide
+         */
+        /* package */ Builder setParagraphCache(@Nullable MeasuredParagraphCache cache) {
+            mParagraphCache = cache;
+            return this;
+        }
+
         private long[] getHyphenators(LocaleList locales) {
             final int length = locales.size();
             final long[] result = new long[length];
@@ -436,6 +452,8 @@ public class StaticLayout extends Layout {
         // This will go away and be subsumed by native builder code
         MeasuredText mMeasuredText;
 
+        MeasuredParagraphCache mParagraphCache;
+
         LocaleList mLocales;
 
         private static final SynchronizedPool<Builder> sPool = new SynchronizedPool<Builder>(3);
@@ -588,6 +606,32 @@ public class StaticLayout extends Layout {
         generate(b, b.mIncludePad, b.mIncludePad);
     }
 
+    /**
+     * Creates a copy of the given layout that measures and draws with another paint. The paint
+     * is expected to have the same attributes as the one the source layout was built with, so
+     * the line breaks do not need to be computed again.
+     */
+    /* package */ StaticLayout(StaticLayout source, TextPaint paint) {
+        super(source.getText(), paint, source.getWidth(), source.getAlignment(),
+                source.getTextDirectionHeuristic(), source.getSpacingMultiplier(),
+                source.getSpacingAdd());
+        setJustificationMode(source.getJustificationMode());
+
+        mLineCount = source.mLineCount;
+        mTopPadding = source.mTopPadding;
+        mBottomPadding = source.mBottomPadding;
+        mColumns = source.mColumns;
+        mEllipsizedWidth = source.mEllipsizedWidth;
+        mEllipsized = source.mEllipsized;
+        mMaxLineHeight = source.mMaxLineHeight;
+        mMaximumVisibleLineCount = source.mMaximumVisibleLineCount;
+        mLeftIndents = source.mLeftIndents;
+        mRightIndents = source.mRightIndents;
+        // Directions are immutable and can be shared.
+        mLines = Arrays.copyOf(source.mLines, source.mLines.length);
+        mLineDirections = Arrays.copyOf(source.mLineDirections, source.mLineDirections.length);
+    }
+
     /* package */ void generate(Builder b, boolean includepad, boolean trackpad) {
         CharSequence source = b.mText;
         int bufStart = b.mStart;
@@ -619,6 +663,12 @@ public class StaticLayout extends Layout {
 
         MeasuredText measured = b.mMeasuredText;
 
+        // The paragraph cache does not record the per-character widths needed for ellipsizing,
+        // and indents depend on the line count reached before each paragraph.
+        final MeasuredParagraphCache paragraphCache =
+                (ellipsize == null && mLeftIndents == null && mRightIndents == null)
+                        ? b.mParagraphCache : null;
+
         Spanned spanned = null;
         if (source instanceof Spanned)
             spanned = (Spanned) source;
@@ -703,76 +753,119 @@ public class StaticLayout extends Layout {
                 }
             }
 
-            nSetupParagraph(b.mNativePtr, chs, paraEnd - paraStart,
-                    firstWidth, firstWidthLineCount, restWidth,
-                    variableTabStops, TAB_INCREMENT, b.mBreakStrategy, b.mHyphenationFrequency,
-                    // TODO: Support more justification mode, e.g. letter spacing, stretching.
-                    b.mJustificationMode != Layout.JUSTIFICATION_MODE_NONE);
-            if (mLeftIndents != null || mRightIndents != null) {
-                // TODO(raph) performance: it would be better to do this once per layout rather
-                // than once per paragraph, but that would require a change to the native
-                // interface.
-                int leftLen = mLeftIndents == null ? 0 : mLeftIndents.length;
-                int rightLen = mRightIndents == null ? 0 : mRightIndents.length;
-                int indentsLen = Math.max(1, Math.max(leftLen, rightLen) - mLineCount);
-                int[] indents = new int[indentsLen];
-                for (int i = 0; i < indentsLen; i++) {
-                    int leftMargin = mLeftIndents == null ? 0 :
-                            mLeftIndents[Math.min(i + mLineCount, leftLen - 1)];
-                    int rightMargin = mRightIndents == null ? 0 :
-                            mRightIndents[Math.min(i + mLineCount, rightLen - 1)];
-                    indents[i] = leftMargin + rightMargin;
-                }
-                nSetIndents(b.mNativePtr, indents);
-            }
-
             // measurement has to be done before performing line breaking
             // but we don't want to recompute fontmetrics or span ranges the
             // second time, so we cache those and then use those stored values
             int fmCacheCount = 0;
             int spanEndCacheCount = 0;
-            for (int spanStart = paraStart, spanEnd; spanStart < paraEnd; spanStart = spanEnd) {
-                if (fmCacheCount * 4 >= fmCache.length) {
-                    int[] grow = new int[fmCacheCount * 4 * 2];
-                    System.arraycopy(fmCache, 0, grow, 0, fmCacheCount * 4);
-                    fmCache = grow;
+            int breakCount;
+
+            MeasuredParagraphCache.Key cacheKey = null;
+            MeasuredParagraphCache.Entry cached = null;
+            if (paragraphCache != null) {
+                cacheKey = MeasuredParagraphCache.createKey(source, paraStart, paraEnd, chs,
+                        firstWidth, firstWidthLineCount, restWidth, variableTabStops);
+                if (cacheKey != null) {
+                    cached = paragraphCache.get(cacheKey);
                 }
+            }
 
-                if (spanEndCacheCount >= spanEndCache.length) {
-                    int[] grow = new int[spanEndCacheCount * 2];
-                    System.arraycopy(spanEndCache, 0, grow, 0, spanEndCacheCount);
-                    spanEndCache = grow;
+            if (cached != null) {
+                fmCacheCount = spanEndCacheCount = cached.mSpanEnds.length;
+                if (fmCacheCount * 4 > fmCache.length) {
+                    fmCache = new int[fmCacheCount * 4];
+                }
+                if (spanEndCacheCount > spanEndCache.length) {
+                    spanEndCache = new int[spanEndCacheCount];
+                }
+                System.arraycopy(cached.mFontMetrics, 0, fmCache, 0, fmCacheCount * 4);
+                for (int i = 0; i < spanEndCacheCount; i++) {
+                    spanEndCache[i] = paraStart + cached.mSpanEnds[i];
                 }
 
-                if (spanned == null) {
-                    spanEnd = paraEnd;
-                    int spanLen = spanEnd - spanStart;
-                    measured.addStyleRun(paint, spanLen, fm);
-                } else {
-                    spanEnd = spanned.nextSpanTransition(spanStart, paraEnd,
-                            MetricAffectingSpan.class);
-                    int spanLen = spanEnd - spanStart;
-                    MetricAffectingSpan[] spans =
-                            spanned.getSpans(spanStart, spanEnd, MetricAffectingSpan.class);
-                    spans = TextUtils.removeEmptySpans(spans, spanned, MetricAffectingSpan.class);
-                    measured.addStyleRun(paint, spans, spanLen, fm);
+                breakCount = cached.mBreakCount;
+                if (breakCount > lineBreaks.breaks.length) {
+                    lineBreaks.breaks = new int[breakCount];
+                    lineBreaks.widths = new float[breakCount];
+                    lineBreaks.flags = new int[breakCount];
+                }
+                System.arraycopy(cached.mBreaks, 0, lineBreaks.breaks, 0, breakCount);
+                System.arraycopy(cached.mLineWidths, 0, lineBreaks.widths, 0, breakCount);
+                System.arraycopy(cached.mFlags, 0, lineBreaks.flags, 0, breakCount);
+            } else {
+                nSetupParagraph(b.mNativePtr, chs, paraEnd - paraStart,
+                        firstWidth, firstWidthLineCount, restWidth,
+                        variableTabStops, TAB_INCREMENT, b.mBreakStrategy, b.mHyphenationFrequency,
+                        // TODO: Support more justification mode, e.g. letter spacing, stretching.
+                        b.mJustificationMode != Layout.JUSTIFICATION_MODE_NONE);
+                if (mLeftIndents != null || mRightIndents != null) {
+                    // TODO(raph) performance: it would be better to do this once per layout rather
+                    // than once per paragraph, but that would require a change to the native
+                    // interface.
+                    int leftLen = mLeftIndents == null ? 0 : mLeftIndents.length;
+                    int rightLen = mRightIndents == null ? 0 : mRightIndents.length;
+                    int indentsLen = Math.max(1, Math.max(leftLen, rightLen) - mLineCount);
+                    int[] indents = new int[indentsLen];
+                    for (int i = 0; i < indentsLen; i++) {
+                        int leftMargin = mLeftIndents == null ? 0 :
+                                mLeftIndents[Math.min(i + mLineCount, leftLen - 1)];
+                        int rightMargin = mRightIndents == null ? 0 :
+                                mRightIndents[Math.min(i + mLineCount, rightLen - 1)];
+                        indents[i] = leftMargin + rightMargin;
+                    }
+                    nSetIndents(b.mNativePtr, indents);
                 }
 
-                // the order of storage here (top, bottom, ascent, descent) has to match the code below
-                // where these values are retrieved
-                fmCache[fmCacheCount * 4 + 0] = fm.top;
-                fmCache[fmCacheCount * 4 + 1] = fm.bottom;
-                fmCache[fmCacheCount * 4 + 2] = fm.ascent;
-                fmCache[fmCacheCount * 4 + 3] = fm.descent;
-                fmCacheCount++;
+                for (int spanStart = paraStart, spanEnd; spanStart < paraEnd; spanStart = spanEnd) {
+                    if (fmCacheCount * 4 >= fmCache.length) {
+                        int[] grow = new int[fmCacheCount * 4 * 2];
+                        System.arraycopy(fmCache, 0, grow, 0, fmCacheCount * 4);
+                        fmCache = grow;
+                    }
 
-                spanEndCache[spanEndCacheCount] = spanEnd;
-                spanEndCacheCount++;
-            }
+                    if (spanEndCacheCount >= spanEndCache.length) {
+                        int[] grow = new int[spanEndCacheCount * 2];
+                        System.arraycopy(spanEndCache, 0, grow, 0, spanEndCacheCount);
+                        spanEndCache = grow;
+                    }
 
-            nGetWidths(b.mNativePtr, widths);
-            int breakCount = nComputeLineBreaks(b.mNativePtr, lineBreaks, lineBreaks.breaks,
-                    lineBreaks.widths, lineBreaks.flags, lineBreaks.breaks.length);
+                    if (spanned == null) {
+                        spanEnd = paraEnd;
+                        int spanLen = spanEnd - spanStart;
+                        measured.addStyleRun(paint, spanLen, fm);
+                    } else {
+                        spanEnd = spanned.nextSpanTransition(spanStart, paraEnd,
+                                MetricAffectingSpan.class);
+                        int spanLen = spanEnd - spanStart;
+                        MetricAffectingSpan[] spans =
+                                spanned.getSpans(spanStart, spanEnd, MetricAffectingSpan.class);
+                        spans = TextUtils.removeEmptySpans(spans, spanned,
+                                MetricAffectingSpan.class);
+                        measured.addStyleRun(paint, spans, spanLen, fm);
+                    }
+
+                    // the order of storage here (top, bottom, ascent, descent) has to match the
+                    // code below where these values are retrieved
+                    fmCache[fmCacheCount * 4 + 0] = fm.top;
+                    fmCache[fmCacheCount * 4 + 1] = fm.bottom;
+                    fmCache[fmCacheCount * 4 + 2] = fm.ascent;
+                    fmCache[fmCacheCount * 4 + 3] = fm.descent;
+                    fmCacheCount++;
+
+                    spanEndCache[spanEndCacheCount] = spanEnd;
+                    spanEndCacheCount++;
+                }
+
+                nGetWidths(b.mNativePtr, widths);
+                breakCount = nComputeLineBreaks(b.mNativePtr, lineBreaks, lineBreaks.breaks,
+                        lineBreaks.widths, lineBreaks.flags, lineBreaks.breaks.length);
+
+                if (cacheKey != null) {
+                    paragraphCache.put(cacheKey, new MeasuredParagraphCache.Entry(paraStart,
+                            spanEndCache, spanEndCacheCount, fmCache, breakCount,
+                            lineBreaks.breaks, lineBreaks.widths, lineBreaks.flags));
+                }
+            }
 
             int[] breaks = lineBreaks.breaks;
             float[] lineWidths = lineBreaks.widths;
@@ -27,7 +27,9 @@ import android.text.style.CharacterStyle;
 import android.text.style.MetricAffectingSpan;
 import android.text.style.ReplacementSpan;
 import android.util.Log;
+import android.util.Pools;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.ArrayUtils;
 
 import java.util.ArrayList;
@@ -75,23 +77,20 @@ class TextLine {
     private final DecorationInfo mDecorationInfo = new DecorationInfo();
     private final ArrayList<DecorationInfo> mDecorations = new ArrayList();
 
-    private static final TextLine[] sCached = new TextLine[3];
+    // Layout code may use a few lines at once, e.g. when measuring while drawing.
+    private static final int MAX_POOL_SIZE_PER_THREAD = 4;
+    private static final Pools.ThreadLocalPool<TextLine> sPool =
+            new Pools.ThreadLocalPool<TextLine>(MAX_POOL_SIZE_PER_THREAD);
 
     /**
-     * Returns a new TextLine from the shared pool.
+     * Returns a new TextLine from the pool of the calling thread.
      *
      * @return an uninitialized TextLine
      */
     static TextLine obtain() {
-        TextLine tl;
-        synchronized (sCached) {
-            for (int i = sCached.length; --i >= 0;) {
-                if (sCached[i] != null) {
-                    tl = sCached[i];
-                    sCached[i] = null;
-                    return tl;
-                }
-            }
+        TextLine tl = sPool.acquire();
+        if (tl != null) {
+            return tl;
         }
         tl = new TextLine();
         if (DEBUG) {
@@ -101,7 +100,7 @@ class TextLine {
     }
 
     /**
-     * Puts a TextLine back into the shared pool. Do not use this TextLine once
+     * Puts a TextLine back into the pool of the calling thread. Do not use this TextLine once
      * it has been returned.
      * @param tl the textLine
      * @return null, as a convenience from clearing references to the provided
@@ -119,17 +118,18 @@ class TextLine {
         tl.mCharacterStyleSpanSet.recycle();
         tl.mReplacementSpanSpanSet.recycle();
 
-        synchronized(sCached) {
-            for (int i = 0; i < sCached.length; ++i) {
-                if (sCached[i] == null) {
-                    sCached[i] = tl;
-                    break;
-                }
-            }
-        }
+        sPool.release(tl);
         return null;
     }
 
+    /**
+     * Returns the number of TextLines allocated on the calling thread because its pool was empty.
+     */
+    @VisibleForTesting
+    static int getAllocationCount() {
+        return sPool.getMissCount();
+    }
+
     /**
      * Initializes a TextLine and prepares it for use.
      *
@@ -162,4 +162,87 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Pool of objects keeping a separate, non-synchronized pool per thread. Instances are only
+     * handed out again on the thread that released them, so acquiring and releasing never
+     * contend with other threads.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ThreadLocalPool<T> implements Pool<T> {
+        private final ThreadLocal<CountingPool<T>> mPools;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size of each thread.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ThreadLocalPool(final int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPools = new ThreadLocal<CountingPool<T>>() {
+                @Override
+                protected CountingPool<T> initialValue() {
+                    return new CountingPool<T>(maxPoolSize);
+                }
+            };
+        }
+
+        @Override
+        public T acquire() {
+            return mPools.get().acquire();
+        }
+
+        @Override
+        public boolean release(T instance) {
+            return mPools.get().release(instance);
+        }
+
+        /**
+         * @return The number of times {@link #acquire()} found the pool of the calling thread
+         * empty, i.e. the number of instances the caller had to allocate on this thread.
+         */
+        public int getMissCount() {
+            return mPools.get().mMissCount;
+        }
+
+        /**
+         * @return The number of instances {@link #release(Object)} dropped on the calling thread
+         * because its pool was full.
+         */
+        public int getDropCount() {
+            return mPools.get().mDropCount;
+        }
+    }
+
+    private static class CountingPool<T> extends SimplePool<T> {
+        int mMissCount;
+        int mDropCount;
+
+        CountingPool(int maxPoolSize) {
+            super(maxPoolSize);
+        }
+
+        @Override
+        public T acquire() {
+            final T instance = super.acquire();
+            if (instance == null) {
+                mMissCount++;
+            }
+            return instance;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final boolean released = super.release(instance);
+            if (!released) {
+                mDropCount++;
+            }
+            return released;
+        }
+    }
 }
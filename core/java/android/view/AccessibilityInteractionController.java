@@ -40,6 +40,7 @@ import android.view.View.AttachInfo;
 import android.view.accessibility.AccessibilityInteractionClient;
 import android.view.accessibility.AccessibilityManager;
 import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeInfoBatch;
 import android.view.accessibility.AccessibilityNodeProvider;
 import android.view.accessibility.AccessibilityRequestPreparer;
 import android.view.accessibility.IAccessibilityInteractionConnectionCallback;
@@ -866,7 +867,8 @@ final class AccessibilityInteractionController {
             mViewRootImpl.mAttachInfo.mAccessibilityFetchFlags = 0;
             applyAppScaleAndMagnificationSpecIfNeeded(infos, spec);
             adjustIsVisibleToUserIfNeeded(infos, interactiveRegion);
-            callback.setFindAccessibilityNodeInfosResult(infos, interactionId);
+            callback.setFindAccessibilityNodeInfosResult(
+                    AccessibilityNodeInfoBatch.from(infos), interactionId);
             if (infos != null) {
                 infos.clear();
             }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import android.annotation.LayoutRes;
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Inflates layouts on background threads, and hands the inflated views over on the main
+ * thread. Use it to inflate the parts of a screen that are not needed for its first frame, or
+ * to inflate in advance views that will be needed later.
+ *
+ * <p>The views are inflated detached. When a parent is given, it is only used to generate the
+ * {@link ViewGroup.LayoutParams} of the root of the layout, the view has to be added to the
+ * parent by the {@link OnInflateFinishedListener}.</p>
+ *
+ * <p>Not all views can be created off the main thread, e.g. views that create a
+ * {@link Handler} when constructed need a {@link Looper}. A layout that fails to inflate on a
+ * background thread with an exception is inflated again on the main thread. Layouts with
+ * {@code <fragment>} tags are always inflated on the main thread. Layouts that fail with an
+ * {@link Error}, e.g. because the class of a view failed to initialize, are not inflated again
+ * and the failure is reported to {@link OnInflateFinishedListener#onInflateFailed}. Factories
+ * set on the {@link LayoutInflater} of the context with {@link LayoutInflater#setFactory2} are
+ * called on background threads.</p>
+ */
+public final class AsyncLayoutInflater {
+    private static final String TAG = "AsyncLayoutInflater";
+
+    /**
+     * Callback for the views inflated by {@link AsyncLayoutInflater#inflate}.
+     */
+    public interface OnInflateFinishedListener {
+        /**
+         * Called on the main thread once a layout is inflated.
+         *
+         * @param view The root of the inflated layout.
+         * @param resid The layout resource that was inflated.
+         * @param parent The parent given to {@link AsyncLayoutInflater#inflate}, if any.
+         */
+        void onInflateFinished(@NonNull View view, @LayoutRes int resid,
+                @Nullable ViewGroup parent);
+
+        /**
+         * Called on the main thread if a layout could not be inflated. The default
+         * implementation throws an {@link InflateException}, as inflating the layout on the
+         * main thread would have.
+         *
+         * @param resid The layout resource that failed to inflate.
+         * @param parent The parent given to {@link AsyncLayoutInflater#inflate}, if any.
+         * @param error The cause of the failure.
+         */
+        default void onInflateFailed(@LayoutRes int resid, @Nullable ViewGroup parent,
+                @NonNull Throwable error) {
+            throw new InflateException("Failed to inflate resource 0x"
+                    + Integer.toHexString(resid), error);
+        }
+    }
+
+    private static final Object sPoolLock = new Object();
+    @GuardedBy("sPoolLock")
+    private static ForkJoinPool sPool;
+
+    // Inflations done on the main thread since the process started, for tests.
+    private static volatile int sMainThreadInflationCount;
+
+    private final LayoutInflater mInflater;
+    private final Handler mHandler;
+
+    /**
+     * Creates an inflater for the views of the given context.
+     *
+     * @param context The context to inflate views in, usually an activity.
+     */
+    public AsyncLayoutInflater(@NonNull Context context) {
+        mInflater = LayoutInflater.from(context);
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Inflates a layout on a background thread. The listener is called on the main thread
+     * with the inflated view.
+     *
+     * @param resid The layout resource to inflate.
+     * @param parent Optional view to generate the layout params of the root view with. The
+     *        inflated view is not attached to it.
+     * @param listener Listener called on the main thread with the inflated view.
+     */
+    public void inflate(@LayoutRes int resid, @Nullable ViewGroup parent,
+            @NonNull OnInflateFinishedListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener == null");
+        }
+        getPool().execute(new InflateRequest(resid, parent, listener));
+    }
+
+    private static ForkJoinPool getPool() {
+        synchronized (sPoolLock) {
+            if (sPool == null) {
+                // Leave a core to the main and render threads. Inflation requests are
+                // independent from each other, hence the FIFO (async) mode.
+                final int parallelism = Math.max(1,
+                        Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+                sPool = new ForkJoinPool(parallelism, pool -> {
+                    final ForkJoinWorkerThread thread =
+                            ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(TAG + "-" + thread.getPoolIndex());
+                    return thread;
+                }, null, true /* asyncMode */);
+            }
+            return sPool;
+        }
+    }
+
+    /**
+     * Returns the number of layouts that could not be inflated on a background thread, and
+     * were inflated on the main thread instead.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public static int getMainThreadInflationCount() {
+        return sMainThreadInflationCount;
+    }
+
+    private class InflateRequest implements Runnable {
+        private final int mResId;
+        private final ViewGroup mParent;
+        private final OnInflateFinishedListener mListener;
+        private View mView;
+        // Error that failed the inflation on the background thread, not worth retrying.
+        private Throwable mError;
+
+        InflateRequest(int resid, ViewGroup parent, OnInflateFinishedListener listener) {
+            mResId = resid;
+            mParent = parent;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                // Hand over the view inflated on the background thread, or inflate it now if
+                // that failed.
+                if (mView == null && mError == null) {
+                    sMainThreadInflationCount++;
+                    try {
+                        mView = mInflater.inflate(mResId, mParent, false);
+                    } catch (RuntimeException e) {
+                        mError = e;
+                    }
+                }
+                if (mView != null) {
+                    mListener.onInflateFinished(mView, mResId, mParent);
+                } else {
+                    mListener.onInflateFailed(mResId, mParent, mError);
+                }
+                return;
+            }
+
+            try {
+                mView = mInflater.cloneForBackgroundThread().inflate(mResId, mParent, false);
+            } catch (RuntimeException e) {
+                // Probably a view that needs to be created on a Looper thread.
+                Log.w(TAG, "Failed to inflate resource 0x" + Integer.toHexString(mResId)
+                        + " in the background, retrying on the main thread", e);
+            } catch (Throwable t) {
+                // E.g. the class of a view failed to initialize, it would fail again.
+                Log.e(TAG, "Failed to inflate resource 0x" + Integer.toHexString(mResId), t);
+                mError = t;
+            }
+            mHandler.post(this);
+        }
+    }
+}
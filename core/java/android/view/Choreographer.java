@@ -158,6 +158,10 @@ public final class Choreographer {
 
     private final CallbackQueue[] mCallbackQueues;
 
+    // Durations of the callbacks of each type, and of the whole frames.
+    private final LatencyHistogram[] mCallbackLatency;
+    private final LatencyHistogram mFrameLatency = new LatencyHistogram();
+
     private boolean mFrameScheduled;
     private boolean mCallbacksRunning;
     private long mLastFrameTimeNanos;
@@ -229,8 +233,10 @@ public final class Choreographer {
         mFrameIntervalNanos = (long)(1000000000 / getRefreshRate());
 
         mCallbackQueues = new CallbackQueue[CALLBACK_LAST + 1];
+        mCallbackLatency = new LatencyHistogram[CALLBACK_LAST + 1];
         for (int i = 0; i <= CALLBACK_LAST; i++) {
             mCallbackQueues[i] = new CallbackQueue();
+            mCallbackLatency[i] = new LatencyHistogram();
         }
     }
 
@@ -353,6 +359,42 @@ public final class Choreographer {
                 writer.println(TimeUtils.formatUptime(mLastFrameTimeNanos / 1000000));
     }
 
+    /**
+     * Returns the histogram of the durations of the callbacks of the given type on each frame.
+     *
+     * @param callbackType The callback type.
+     * @hide
+     */
+    public LatencyHistogram getCallbackLatencyHistogram(int callbackType) {
+        if (callbackType < 0 || callbackType > CALLBACK_LAST) {
+            throw new IllegalArgumentException("callbackType is invalid");
+        }
+        return mCallbackLatency[callbackType];
+    }
+
+    /**
+     * Returns the histogram of the durations of the frames, from the start of the input
+     * callbacks to the end of the commit callbacks.
+     *
+     * @hide
+     */
+    public LatencyHistogram getFrameLatencyHistogram() {
+        return mFrameLatency;
+    }
+
+    void dumpLatency(String prefix, PrintWriter writer, boolean reset) {
+        mFrameLatency.dump(writer, prefix, "frame");
+        for (int i = 0; i <= CALLBACK_LAST; i++) {
+            mCallbackLatency[i].dump(writer, prefix, CALLBACK_TRACE_TITLES[i]);
+        }
+        if (reset) {
+            mFrameLatency.reset();
+            for (int i = 0; i <= CALLBACK_LAST; i++) {
+                mCallbackLatency[i].reset();
+            }
+        }
+    }
+
     /**
      * Posts a callback to run on the next frame.
      * <p>
@@ -599,6 +641,7 @@ public final class Choreographer {
 
     void doFrame(long frameTimeNanos, int frame) {
         final long startNanos;
+        final long endNanos;
         synchronized (mLock) {
             if (!mFrameScheduled) {
                 return; // no work to do
@@ -648,23 +691,31 @@ public final class Choreographer {
             Trace.traceBegin(Trace.TRACE_TAG_VIEW, "Choreographer#doFrame");
             AnimationUtils.lockAnimationClock(frameTimeNanos / TimeUtils.NANOS_PER_MS);
 
-            mFrameInfo.markInputHandlingStart();
+            final long inputStartNanos = mFrameInfo.markInputHandlingStart();
             doCallbacks(Choreographer.CALLBACK_INPUT, frameTimeNanos);
 
-            mFrameInfo.markAnimationsStart();
+            final long animationStartNanos = mFrameInfo.markAnimationsStart();
             doCallbacks(Choreographer.CALLBACK_ANIMATION, frameTimeNanos);
 
-            mFrameInfo.markPerformTraversalsStart();
+            final long traversalStartNanos = mFrameInfo.markPerformTraversalsStart();
             doCallbacks(Choreographer.CALLBACK_TRAVERSAL, frameTimeNanos);
 
+            final long commitStartNanos = System.nanoTime();
             doCallbacks(Choreographer.CALLBACK_COMMIT, frameTimeNanos);
+            endNanos = System.nanoTime();
+
+            mCallbackLatency[CALLBACK_INPUT].record(animationStartNanos - inputStartNanos);
+            mCallbackLatency[CALLBACK_ANIMATION].record(
+                    traversalStartNanos - animationStartNanos);
+            mCallbackLatency[CALLBACK_TRAVERSAL].record(commitStartNanos - traversalStartNanos);
+            mCallbackLatency[CALLBACK_COMMIT].record(endNanos - commitStartNanos);
+            mFrameLatency.record(endNanos - startNanos);
         } finally {
             AnimationUtils.unlockAnimationClock();
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
         }
 
         if (DEBUG_FRAMES) {
-            final long endNanos = System.nanoTime();
             Log.d(TAG, "Frame " + frame + ": Finished, took "
                     + (endNanos - startNanos) * 0.000001f + " ms, latency "
                     + (startNanos - frameTimeNanos) * 0.000001f + " ms.");
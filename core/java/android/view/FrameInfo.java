@@ -95,16 +95,16 @@ final class FrameInfo {
         }
     }
 
-    public void markInputHandlingStart() {
-        mFrameInfo[HANDLE_INPUT_START] = System.nanoTime();
+    public long markInputHandlingStart() {
+        return mFrameInfo[HANDLE_INPUT_START] = System.nanoTime();
     }
 
-    public void markAnimationsStart() {
-        mFrameInfo[ANIMATION_START] = System.nanoTime();
+    public long markAnimationsStart() {
+        return mFrameInfo[ANIMATION_START] = System.nanoTime();
     }
 
-    public void markPerformTraversalsStart() {
-        mFrameInfo[PERFORM_TRAVERSALS_START] = System.nanoTime();
+    public long markPerformTraversalsStart() {
+        return mFrameInfo[PERFORM_TRAVERSALS_START] = System.nanoTime();
     }
 
     public void markDrawStart() {
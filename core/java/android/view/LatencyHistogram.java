@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import java.io.PrintWriter;
+
+/**
+ * Histogram of the durations of a phase of the frames, e.g. the animation callbacks of the
+ * {@link Choreographer} or the measure pass of a {@link ViewRootImpl}.
+ *
+ * Durations are counted in buckets of 1ms up to 32ms, then of 4ms up to 160ms, and longer
+ * durations share the last bucket. Recording does not allocate nor lock: a histogram is only
+ * recorded into by the thread of its frames, and readers on other threads may observe
+ * counts that are one frame apart from each other, which does not matter to percentiles.
+ *
+ * @hide
+ */
+public final class LatencyHistogram {
+    private static final long NANOS_PER_MS = 1000000;
+
+    private static final int FINE_BUCKET_COUNT = 32;
+    private static final int COARSE_BUCKET_WIDTH_MS = 4;
+    private static final int COARSE_BUCKET_COUNT = 32;
+
+    /** Number of buckets of the histogram. */
+    public static final int BUCKET_COUNT = FINE_BUCKET_COUNT + COARSE_BUCKET_COUNT + 1;
+
+    private final int[] mBuckets = new int[BUCKET_COUNT];
+    private long mMaxNanos;
+
+    /**
+     * Records the duration of one occurrence of the phase.
+     */
+    public void record(long durationNanos) {
+        mBuckets[getBucket(durationNanos)]++;
+        if (durationNanos > mMaxNanos) {
+            mMaxNanos = durationNanos;
+        }
+    }
+
+    /**
+     * Clears the recorded durations.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = 0;
+        }
+        mMaxNanos = 0;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public int getCount() {
+        int count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mBuckets[i];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the longest recorded duration, in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return mMaxNanos;
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the durations of the given percentile of
+     * the recorded occurrences, or 0 if none was recorded. Durations in the last bucket are
+     * bounded by the longest recorded duration.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     */
+    public int getPercentileMillis(int percentile) {
+        final int count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        // Rank of the occurrence at the percentile, rounded up.
+        final long rank = Math.max(1, ((long) count * percentile + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                return getBucketUpperBoundMillis(i);
+            }
+        }
+        return (int) ((mMaxNanos + NANOS_PER_MS - 1) / NANOS_PER_MS);
+    }
+
+    /**
+     * Prints the count and the main percentiles of the histogram on one line.
+     */
+    public void dump(PrintWriter pw, String prefix, String name) {
+        pw.print(prefix);
+        pw.print(name);
+        pw.print(": count=");
+        pw.print(getCount());
+        pw.print(" 50th=");
+        pw.print(getPercentileMillis(50));
+        pw.print("ms 90th=");
+        pw.print(getPercentileMillis(90));
+        pw.print("ms 95th=");
+        pw.print(getPercentileMillis(95));
+        pw.print("ms 99th=");
+        pw.print(getPercentileMillis(99));
+        pw.print("ms max=");
+        pw.print(mMaxNanos / (float) NANOS_PER_MS);
+        pw.println("ms");
+    }
+
+    static int getBucket(long durationNanos) {
+        final long millis = Math.max(0, durationNanos) / NANOS_PER_MS;
+        if (millis < FINE_BUCKET_COUNT) {
+            return (int) millis;
+        }
+        final long coarse = (millis - FINE_BUCKET_COUNT) / COARSE_BUCKET_WIDTH_MS;
+        if (coarse < COARSE_BUCKET_COUNT) {
+            return FINE_BUCKET_COUNT + (int) coarse;
+        }
+        return BUCKET_COUNT - 1;
+    }
+
+    static int getBucketUpperBoundMillis(int bucket) {
+        if (bucket < FINE_BUCKET_COUNT) {
+            return bucket + 1;
+        }
+        return FINE_BUCKET_COUNT + (bucket - FINE_BUCKET_COUNT + 1) * COARSE_BUCKET_WIDTH_MS;
+    }
+}
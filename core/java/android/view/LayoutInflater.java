@@ -29,18 +29,22 @@ import android.os.Message;
 import android.os.Trace;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.util.Xml;
 import android.widget.FrameLayout;
 
 import com.android.internal.R;
+import com.android.internal.annotations.VisibleForTesting;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Instantiates a layout XML file into its corresponding {@link android.view.View}
@@ -90,11 +94,26 @@ public abstract class LayoutInflater {
     static final Class<?>[] mConstructorSignature = new Class[] {
             Context.class, AttributeSet.class};
 
-    private static final HashMap<String, Constructor<? extends View>> sConstructorMap =
-            new HashMap<String, Constructor<? extends View>>();
+    // Concurrent since views may be inflated off the UI thread, see AsyncLayoutInflater.
+    private static final ConcurrentHashMap<String, Constructor<? extends View>> sConstructorMap =
+            new ConcurrentHashMap<String, Constructor<? extends View>>();
 
     private HashMap<String, Boolean> mFilterMap;
 
+    /**
+     * Inflation plans recorded by the first inflation of each layout resource, by resource ID.
+     * Shared with the clones of this inflater that load classes the same way.
+     */
+    private final SparseArray<InflationPlan> mInflationPlans;
+
+    // Layout resource whose parser is about to be given to inflate(), to look up its plan.
+    private int mPendingPlanResource;
+    // Plan replayed or recorded by the current call to inflate(), and the index of its next tag.
+    private InflationPlan mActivePlan;
+    private int mActivePlanIndex;
+    // Constructor used by the last call to createView().
+    private Constructor<? extends View> mLastConstructor;
+
     private TypedValue mTempValue;
 
     private static final String TAG_MERGE = "merge";
@@ -203,6 +222,7 @@ public abstract class LayoutInflater {
      */
     protected LayoutInflater(Context context) {
         mContext = context;
+        mInflationPlans = new SparseArray<>();
     }
 
     /**
@@ -219,6 +239,13 @@ public abstract class LayoutInflater {
         mFactory2 = original.mFactory2;
         mPrivateFactory = original.mPrivateFactory;
         setFilter(original.mFilter);
+        // Tags resolve to the same classes if the inflater and the class loader are the same.
+        if (original.getClass() == getClass()
+                && original.mContext.getClassLoader() == newContext.getClassLoader()) {
+            mInflationPlans = original.mInflationPlans;
+        } else {
+            mInflationPlans = new SparseArray<>();
+        }
     }
 
     /**
@@ -420,7 +447,10 @@ public abstract class LayoutInflater {
 
         final XmlResourceParser parser = res.getLayout(resource);
         try {
-            return inflate(parser, root, attachToRoot);
+            synchronized (mConstructorArgs) {
+                mPendingPlanResource = resource;
+                return inflate(parser, root, attachToRoot);
+            }
         } finally {
             parser.close();
         }
@@ -458,6 +488,16 @@ public abstract class LayoutInflater {
             mConstructorArgs[0] = inflaterContext;
             View result = root;
 
+            // Views may inflate other layouts while being constructed, keep track of the plan of
+            // the enclosing inflation.
+            final InflationPlan lastPlan = mActivePlan;
+            final int lastPlanIndex = mActivePlanIndex;
+            final int planResource = mPendingPlanResource;
+            mPendingPlanResource = 0;
+            mActivePlan = planResource != 0 && mFilter == null
+                    ? getInflationPlan(planResource) : null;
+            mActivePlanIndex = 0;
+
             try {
                 // Look for the root node.
                 int type;
@@ -531,6 +571,13 @@ public abstract class LayoutInflater {
                     }
                 }
 
+                if (mActivePlan != null && !mActivePlan.mComplete) {
+                    mActivePlan.mComplete = true;
+                    synchronized (mInflationPlans) {
+                        mInflationPlans.put(planResource, mActivePlan);
+                    }
+                }
+
             } catch (XmlPullParserException e) {
                 final InflateException ie = new InflateException(e.getMessage(), e);
                 ie.setStackTrace(EMPTY_STACK_TRACE);
@@ -545,6 +592,9 @@ public abstract class LayoutInflater {
                 mConstructorArgs[0] = lastContext;
                 mConstructorArgs[1] = null;
 
+                mActivePlan = lastPlan;
+                mActivePlanIndex = lastPlanIndex;
+
                 Trace.traceEnd(Trace.TRACE_TAG_VIEW);
             }
 
@@ -552,6 +602,99 @@ public abstract class LayoutInflater {
         }
     }
 
+    /**
+     * The classes of the views of a layout resource, in document order, as resolved by its
+     * first inflation. Replaying a plan creates each view with the constructor resolved then,
+     * instead of resolving the tag name again through {@link #onCreateView} and the constructor
+     * cache. The XML is still parsed, since views read their attributes from it.
+     */
+    private static class InflationPlan {
+        final ArrayList<String> mNames = new ArrayList<>();
+        // Null for the views that were not created by createView(), e.g. by a factory.
+        final ArrayList<Constructor<? extends View>> mConstructors = new ArrayList<>();
+        // True once the whole layout was recorded, the plan is then only read.
+        boolean mComplete;
+    }
+
+    private InflationPlan getInflationPlan(int resource) {
+        synchronized (mInflationPlans) {
+            final InflationPlan plan = mInflationPlans.get(resource);
+            // A new plan is only shared once recorded.
+            return plan != null ? plan : new InflationPlan();
+        }
+    }
+
+    /**
+     * Returns the constructor planned for the next view of the layout being inflated, if any.
+     */
+    private Constructor<? extends View> nextPlannedConstructor(String name) {
+        final InflationPlan plan = mActivePlan;
+        if (plan == null || !plan.mComplete) {
+            return null;
+        }
+        final int index = mActivePlanIndex++;
+        if (index < plan.mNames.size() && name.equals(plan.mNames.get(index))) {
+            return plan.mConstructors.get(index);
+        }
+
+        // The layout does not match the plan, e.g. it has another variant in the current
+        // configuration. Record it again next time.
+        synchronized (mInflationPlans) {
+            final int planIndex = mInflationPlans.indexOfValue(plan);
+            if (planIndex >= 0) {
+                mInflationPlans.removeAt(planIndex);
+            }
+        }
+        mActivePlan = null;
+        return null;
+    }
+
+    private void recordPlannedConstructor(String name, View view) {
+        final InflationPlan plan = mActivePlan;
+        if (plan == null || plan.mComplete) {
+            return;
+        }
+        final Constructor<? extends View> constructor = mLastConstructor;
+        plan.mNames.add(name);
+        plan.mConstructors.add(view != null && constructor != null
+                && constructor.getDeclaringClass() == view.getClass() ? constructor : null);
+    }
+
+    /**
+     * Returns a copy of this inflater to inflate views on another thread. The private factory
+     * is not copied, since the fragments it creates belong to the UI thread.
+     */
+    LayoutInflater cloneForBackgroundThread() {
+        final LayoutInflater inflater = cloneInContext(mContext);
+        inflater.mPrivateFactory = null;
+        return inflater;
+    }
+
+    /**
+     * Forgets the inflation plans of all layouts, so that they are recorded again.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public void clearInflationPlans() {
+        synchronized (mInflationPlans) {
+            mInflationPlans.clear();
+        }
+    }
+
+    /**
+     * Returns whether the inflation plan of a layout is recorded, so that its next inflation
+     * replays it.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public boolean hasInflationPlan(@LayoutRes int resource) {
+        synchronized (mInflationPlans) {
+            return mInflationPlans.get(resource) != null;
+        }
+    }
+
     private static final ClassLoader BOOT_CLASS_LOADER = LayoutInflater.class.getClassLoader();
 
     private final boolean verifyClassLoader(Constructor<? extends View> constructor) {
@@ -636,21 +779,8 @@ public abstract class LayoutInflater {
                 }
             }
 
-            Object lastContext = mConstructorArgs[0];
-            if (mConstructorArgs[0] == null) {
-                // Fill in the context if not already within inflation.
-                mConstructorArgs[0] = mContext;
-            }
-            Object[] args = mConstructorArgs;
-            args[1] = attrs;
-
-            final View view = constructor.newInstance(args);
-            if (view instanceof ViewStub) {
-                // Use the same context when inflating ViewStub later.
-                final ViewStub viewStub = (ViewStub) view;
-                viewStub.setLayoutInflater(cloneInContext((Context) args[0]));
-            }
-            mConstructorArgs[0] = lastContext;
+            final View view = newView(constructor, attrs);
+            mLastConstructor = constructor;
             return view;
 
         } catch (NoSuchMethodException e) {
@@ -679,6 +809,26 @@ public abstract class LayoutInflater {
         }
     }
 
+    private View newView(Constructor<? extends View> constructor, AttributeSet attrs)
+            throws Exception {
+        Object lastContext = mConstructorArgs[0];
+        if (mConstructorArgs[0] == null) {
+            // Fill in the context if not already within inflation.
+            mConstructorArgs[0] = mContext;
+        }
+        Object[] args = mConstructorArgs;
+        args[1] = attrs;
+
+        final View view = constructor.newInstance(args);
+        if (view instanceof ViewStub) {
+            // Use the same context when inflating ViewStub later.
+            final ViewStub viewStub = (ViewStub) view;
+            viewStub.setLayoutInflater(cloneInContext((Context) args[0]));
+        }
+        mConstructorArgs[0] = lastContext;
+        return view;
+    }
+
     /**
      * Throw an exception because the specified class is not allowed to be inflated.
      */
@@ -761,8 +911,12 @@ public abstract class LayoutInflater {
             ta.recycle();
         }
 
+        final Constructor<? extends View> plannedConstructor = nextPlannedConstructor(name);
+        mLastConstructor = null;
+
         if (name.equals(TAG_1995)) {
             // Let's party like it's 1995!
+            recordPlannedConstructor(name, null);
             return new BlinkLayout(context, attrs);
         }
 
@@ -784,7 +938,10 @@ public abstract class LayoutInflater {
                 final Object lastContext = mConstructorArgs[0];
                 mConstructorArgs[0] = context;
                 try {
-                    if (-1 == name.indexOf('.')) {
+                    if (plannedConstructor != null) {
+                        view = newView(plannedConstructor, attrs);
+                        mLastConstructor = plannedConstructor;
+                    } else if (-1 == name.indexOf('.')) {
                         view = onCreateView(parent, name, attrs);
                     } else {
                         view = createView(name, null, attrs);
@@ -794,6 +951,7 @@ public abstract class LayoutInflater {
                 }
             }
 
+            recordPlannedConstructor(name, view);
             return view;
         } catch (InflateException e) {
             throw e;
@@ -4011,6 +4011,13 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
 
     private LongSparseLongArray mMeasureCache;
 
+    /**
+     * Measure specs, in the format of the keys of mMeasureCache, of the last call to
+     * onMeasure(). The state computed by onMeasure(), e.g. the sizes of the children, is the
+     * one of these specs.
+     */
+    private long mOnMeasureSpecKey = Long.MIN_VALUE;
+
     @ViewDebug.ExportedProperty(deepExport = true, prefix = "bg_")
     private Drawable mBackground;
     private TintInfo mBackgroundTint;
@@ -19644,6 +19651,11 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
     public void layout(int l, int t, int r, int b) {
         if ((mPrivateFlags3 & PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT) != 0) {
             onMeasure(mOldWidthMeasureSpec, mOldHeightMeasureSpec);
+            mOnMeasureSpecKey = (long) mOldWidthMeasureSpec << 32
+                    | (long) mOldHeightMeasureSpec & 0xffffffffL;
+            if (mAttachInfo != null) {
+                mAttachInfo.mMeasureCount++;
+            }
             mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
         }
 
@@ -22069,12 +22081,26 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
             if (cacheIndex < 0 || sIgnoreMeasureCache) {
                 // measure ourselves, this should set the measured dimension flag back
                 onMeasure(widthMeasureSpec, heightMeasureSpec);
+                mOnMeasureSpecKey = key;
+                if (mAttachInfo != null) {
+                    mAttachInfo.mMeasureCount++;
+                }
                 mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
             } else {
                 long value = mMeasureCache.valueAt(cacheIndex);
                 // Casting a long to int drops the high 32 bits, no mask needed
                 setMeasuredDimensionRaw((int) (value >> 32), (int) value);
-                mPrivateFlags3 |= PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                if (mAttachInfo != null) {
+                    mAttachInfo.mMeasureCacheHitCount++;
+                }
+                // The state computed by onMeasure() is still the one of these specs if they
+                // were the last ones it was called with, skip measuring again before layout.
+                if (key == mOnMeasureSpecKey && mParent instanceof ViewGroup
+                        && ((ViewGroup) mParent).isMeasureReuseEnabled()) {
+                    mPrivateFlags3 &= ~PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                } else {
+                    mPrivateFlags3 |= PFLAG3_MEASURE_NEEDED_BEFORE_LAYOUT;
+                }
             }
 
             // flag not set, setMeasuredDimension() was not invoked, we raise
@@ -25559,6 +25585,13 @@ public class View implements Drawable.Callback, KeyEvent.Callback,
          */
         View mViewRequestingLayout;
 
+        /**
+         * Number of calls to onMeasure() and of measurements served by the measure cache
+         * instead, in the windows of this AttachInfo. Debug counters.
+         */
+        int mMeasureCount;
+        int mMeasureCacheHitCount;
+
         /**
          * Used to track views that need (at least) a partial relayout at their current size
          * during the next traversal.
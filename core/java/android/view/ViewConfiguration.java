@@ -480,13 +480,16 @@ public class ViewConfiguration {
         final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
         final int density = (int) (100.0f * metrics.density);
 
-        ViewConfiguration configuration = sConfigurations.get(density);
-        if (configuration == null) {
-            configuration = new ViewConfiguration(context);
-            sConfigurations.put(density, configuration);
-        }
+        // Views may be created off the UI thread, see AsyncLayoutInflater.
+        synchronized (sConfigurations) {
+            ViewConfiguration configuration = sConfigurations.get(density);
+            if (configuration == null) {
+                configuration = new ViewConfiguration(context);
+                sConfigurations.put(density, configuration);
+            }
 
-        return configuration;
+            return configuration;
+        }
     }
 
     /**
@@ -482,6 +482,10 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
     // suppressLayout()
     boolean mSuppressLayout = false;
 
+    // Whether the children may reuse their cached measurements without measuring again before
+    // layout, controlled by calls to setMeasureReuseEnabled()
+    private boolean mMeasureReuseEnabled;
+
     // Whether any layout calls have actually been suppressed while mSuppressLayout
     // has been true. This tracks whether we need to issue a requestLayout() when
     // layout is later re-enabled.
@@ -6879,6 +6883,36 @@ public abstract class ViewGroup extends View implements ViewParent, ViewManager
         return mSuppressLayout;
     }
 
+    /**
+     * Sets whether the children of this container skip measuring again before layout when
+     * their measurement comes from their measure cache.
+     *
+     * <p>A child whose measure specs changed since its last measure pass is measured from its
+     * cache if it did not request layout since it was measured with these specs. It is then
+     * normally measured again during layout, since the state computed by its
+     * {@link View#onMeasure(int, int)}, e.g. the sizes of its own children, may be the one of
+     * other specs. When enabled, this is skipped if the specs are the last ones the child was
+     * measured with. Only enable this if the children of this container request layout
+     * whenever the result of their measurement may change, as they are expected to.</p>
+     *
+     * @param enabled true to reuse the measurements of the children
+     *
+     * @hide
+     */
+    public void setMeasureReuseEnabled(boolean enabled) {
+        mMeasureReuseEnabled = enabled;
+    }
+
+    /**
+     * Returns whether the children of this container reuse their cached measurements, see
+     * {@link #setMeasureReuseEnabled(boolean)}.
+     *
+     * @hide
+     */
+    public boolean isMeasureReuseEnabled() {
+        return mMeasureReuseEnabled;
+    }
+
     @Override
     public boolean gatherTransparentRegion(Region region) {
         // If no transparent regions requested, we are always opaque.
@@ -316,6 +316,18 @@ public final class ViewRootImpl implements ViewParent,
     FallbackEventHandler mFallbackEventHandler;
     Choreographer mChoreographer;
 
+    // Durations of the measure, layout and draw passes of the traversals. The measure passes
+    // of a traversal are added up in mTraversalMeasureNanos.
+    private final LatencyHistogram mMeasureLatency = new LatencyHistogram();
+    private final LatencyHistogram mLayoutLatency = new LatencyHistogram();
+    private final LatencyHistogram mDrawLatency = new LatencyHistogram();
+    private long mTraversalMeasureNanos;
+
+    // Number of views measured, and of views measured from their measure cache instead, by
+    // the last traversal.
+    private int mLastTraversalMeasureCount;
+    private int mLastTraversalMeasureCacheHitCount;
+
     final Rect mTempRect; // used in the transaction to not thrash the heap.
     final Rect mVisRect; // used to retrieve visible rect of focused view.
 
@@ -1389,7 +1401,16 @@ public final class ViewRootImpl implements ViewParent,
                 Debug.startMethodTracing("ViewAncestor");
             }
 
+            mTraversalMeasureNanos = 0;
+            final int measureCount = mAttachInfo.mMeasureCount;
+            final int measureCacheHitCount = mAttachInfo.mMeasureCacheHitCount;
             performTraversals();
+            if (mTraversalMeasureNanos > 0) {
+                mMeasureLatency.record(mTraversalMeasureNanos);
+            }
+            mLastTraversalMeasureCount = mAttachInfo.mMeasureCount - measureCount;
+            mLastTraversalMeasureCacheHitCount =
+                    mAttachInfo.mMeasureCacheHitCount - measureCacheHitCount;
 
             if (mProfile) {
                 Debug.stopMethodTracing();
@@ -2418,9 +2439,12 @@ public final class ViewRootImpl implements ViewParent,
             return;
         }
         Trace.traceBegin(Trace.TRACE_TAG_VIEW, "measure");
+        final long startNanos = System.nanoTime();
         try {
             mView.measure(childWidthMeasureSpec, childHeightMeasureSpec);
         } finally {
+            // A traversal may measure several times, see doTraversal().
+            mTraversalMeasureNanos += System.nanoTime() - startNanos;
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
         }
     }
@@ -2492,6 +2516,7 @@ public final class ViewRootImpl implements ViewParent,
         }
 
         Trace.traceBegin(Trace.TRACE_TAG_VIEW, "layout");
+        final long startNanos = System.nanoTime();
         try {
             host.layout(0, 0, host.getMeasuredWidth(), host.getMeasuredHeight());
 
@@ -2548,6 +2573,7 @@ public final class ViewRootImpl implements ViewParent,
 
             }
         } finally {
+            mLayoutLatency.record(System.nanoTime() - startNanos);
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
         }
         mInLayout = false;
@@ -2802,9 +2828,11 @@ public final class ViewRootImpl implements ViewParent,
 
         mIsDrawing = true;
         Trace.traceBegin(Trace.TRACE_TAG_VIEW, "draw");
+        final long startNanos = System.nanoTime();
         try {
             draw(fullRedrawNeeded);
         } finally {
+            mDrawLatency.record(System.nanoTime() - startNanos);
             mIsDrawing = false;
             Trace.traceEnd(Trace.TRACE_TAG_VIEW);
         }
@@ -6271,6 +6299,74 @@ public final class ViewRootImpl implements ViewParent,
         }
     }
 
+    /**
+     * Returns the histogram of the durations of the measure passes of the traversals.
+     *
+     * @hide
+     */
+    public LatencyHistogram getMeasureLatencyHistogram() {
+        return mMeasureLatency;
+    }
+
+    /**
+     * Returns the histogram of the durations of the layout passes of the traversals.
+     *
+     * @hide
+     */
+    public LatencyHistogram getLayoutLatencyHistogram() {
+        return mLayoutLatency;
+    }
+
+    /**
+     * Returns the histogram of the durations of the draw passes of the traversals.
+     *
+     * @hide
+     */
+    public LatencyHistogram getDrawLatencyHistogram() {
+        return mDrawLatency;
+    }
+
+    /**
+     * Returns the number of calls to {@link View#onMeasure(int, int)} in this window.
+     *
+     * @hide
+     */
+    public int getMeasureCount() {
+        return mAttachInfo.mMeasureCount;
+    }
+
+    /**
+     * Returns the number of measurements of the views of this window that were served by
+     * their measure cache instead of {@link View#onMeasure(int, int)}.
+     *
+     * @hide
+     */
+    public int getMeasureCacheHitCount() {
+        return mAttachInfo.mMeasureCacheHitCount;
+    }
+
+    void dumpFrameLatency(String prefix, PrintWriter writer, boolean dumpChoreographer,
+            boolean reset) {
+        // The Choreographer is shared by the windows of a thread.
+        if (dumpChoreographer) {
+            writer.print(prefix); writer.println("Choreographer:");
+            mChoreographer.dumpLatency(prefix + "  ", writer, reset);
+        }
+        writer.print(prefix); writer.println("Traversals:");
+        final String innerPrefix = prefix + "  ";
+        mMeasureLatency.dump(writer, innerPrefix, "measure");
+        mLayoutLatency.dump(writer, innerPrefix, "layout");
+        mDrawLatency.dump(writer, innerPrefix, "draw");
+        writer.print(innerPrefix); writer.print("last traversal: measured=");
+        writer.print(mLastTraversalMeasureCount);
+        writer.print(" cacheHits="); writer.println(mLastTraversalMeasureCacheHitCount);
+        if (reset) {
+            mMeasureLatency.reset();
+            mLayoutLatency.reset();
+            mDrawLatency.reset();
+        }
+    }
+
     public void dumpGfxInfo(int[] info) {
         info[0] = info[1] = 0;
         if (mView != null) {
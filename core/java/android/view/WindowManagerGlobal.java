@@ -569,6 +569,21 @@ public final class WindowManagerGlobal {
                     }
                 }
 
+                boolean reset = false;
+                for (String arg : args) {
+                    if ("reset".equals(arg)) {
+                        reset = true;
+                    }
+                }
+                pw.println("\nFrame phase latency:");
+                final ArraySet<Choreographer> dumpedChoreographers = new ArraySet<>();
+                for (int i = 0; i < count; i++) {
+                    ViewRootImpl root = mRoots.get(i);
+                    pw.printf("\n  %s\n", getWindowName(root));
+                    root.dumpFrameLatency("    ", pw,
+                            dumpedChoreographers.add(root.mChoreographer), reset);
+                }
+
                 pw.println("\nView hierarchy:\n");
 
                 int viewsCount = 0;
@@ -597,7 +597,7 @@ public final class AccessibilityInteractionClient
     /**
      * {@inheritDoc}
      */
-    public void setFindAccessibilityNodeInfosResult(List<AccessibilityNodeInfo> infos,
+    public void setFindAccessibilityNodeInfosResult(AccessibilityNodeInfoBatch infos,
                 int interactionId) {
         synchronized (mInstanceLock) {
             if (interactionId > mInteractionId) {
@@ -3052,100 +3052,117 @@ public class AccessibilityNodeInfo implements Parcelable {
      */
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
-        // Write bit set of indices of fields with values differing from default
+        writeToParcel(parcel, DEFAULT);
+
+        // Since instances of this class are fetched via synchronous i.e. blocking
+        // calls in IPCs we always recycle as soon as the instance is marshaled.
+        recycle();
+    }
+
+    /**
+     * Writes the fields of this instance that differ from the ones of the reference.
+     */
+    private void writeToParcel(Parcel parcel, AccessibilityNodeInfo reference) {
+        // Write bit set of indices of fields with values differing from the reference
         long nonDefaultFields = 0;
         int fieldIndex = 0; // index of the current field
-        if (isSealed() != DEFAULT.isSealed()) nonDefaultFields |= bitAt(fieldIndex);
+        if (isSealed() != reference.isSealed()) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mSourceNodeId != DEFAULT.mSourceNodeId) nonDefaultFields |= bitAt(fieldIndex);
+        if (mSourceNodeId != reference.mSourceNodeId) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mWindowId != DEFAULT.mWindowId) nonDefaultFields |= bitAt(fieldIndex);
+        if (mWindowId != reference.mWindowId) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mParentNodeId != DEFAULT.mParentNodeId) nonDefaultFields |= bitAt(fieldIndex);
+        if (mParentNodeId != reference.mParentNodeId) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mLabelForId != DEFAULT.mLabelForId) nonDefaultFields |= bitAt(fieldIndex);
+        if (mLabelForId != reference.mLabelForId) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mLabeledById != DEFAULT.mLabeledById) nonDefaultFields |= bitAt(fieldIndex);
+        if (mLabeledById != reference.mLabeledById) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mTraversalBefore != DEFAULT.mTraversalBefore) nonDefaultFields |= bitAt(fieldIndex);
+        if (mTraversalBefore != reference.mTraversalBefore) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mTraversalAfter != DEFAULT.mTraversalAfter) nonDefaultFields |= bitAt(fieldIndex);
+        if (mTraversalAfter != reference.mTraversalAfter) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mConnectionId != DEFAULT.mConnectionId) nonDefaultFields |= bitAt(fieldIndex);
+        if (mConnectionId != reference.mConnectionId) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (!Objects.equals(mChildNodeIds, DEFAULT.mChildNodeIds)) {
+        if (!Objects.equals(mChildNodeIds, reference.mChildNodeIds)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mBoundsInParent, DEFAULT.mBoundsInParent)) {
+        if (!Objects.equals(mBoundsInParent, reference.mBoundsInParent)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mBoundsInScreen, DEFAULT.mBoundsInScreen)) {
+        if (!Objects.equals(mBoundsInScreen, reference.mBoundsInScreen)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mActions, DEFAULT.mActions)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!actionsEqual(mActions, reference.mActions)) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mMaxTextLength != DEFAULT.mMaxTextLength) nonDefaultFields |= bitAt(fieldIndex);
+        if (mMaxTextLength != reference.mMaxTextLength) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mMovementGranularities != DEFAULT.mMovementGranularities) {
+        if (mMovementGranularities != reference.mMovementGranularities) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (mBooleanProperties != DEFAULT.mBooleanProperties) nonDefaultFields |= bitAt(fieldIndex);
+        if (mBooleanProperties != reference.mBooleanProperties) {
+            nonDefaultFields |= bitAt(fieldIndex);
+        }
         fieldIndex++;
-        if (!Objects.equals(mPackageName, DEFAULT.mPackageName)) {
+        if (!Objects.equals(mPackageName, reference.mPackageName)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mClassName, DEFAULT.mClassName)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!Objects.equals(mClassName, reference.mClassName)) {
+            nonDefaultFields |= bitAt(fieldIndex);
+        }
         fieldIndex++;
-        if (!Objects.equals(mText, DEFAULT.mText)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!Objects.equals(mText, reference.mText)) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (!Objects.equals(mHintText, DEFAULT.mHintText)) {
+        if (!Objects.equals(mHintText, reference.mHintText)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mError, DEFAULT.mError)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!Objects.equals(mError, reference.mError)) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (!Objects.equals(mContentDescription, DEFAULT.mContentDescription)) {
+        if (!Objects.equals(mContentDescription, reference.mContentDescription)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mViewIdResourceName, DEFAULT.mViewIdResourceName)) {
+        if (!Objects.equals(mViewIdResourceName, reference.mViewIdResourceName)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (mTextSelectionStart != DEFAULT.mTextSelectionStart) {
+        if (mTextSelectionStart != reference.mTextSelectionStart) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (mTextSelectionEnd != DEFAULT.mTextSelectionEnd) {
+        if (mTextSelectionEnd != reference.mTextSelectionEnd) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (mInputType != DEFAULT.mInputType) nonDefaultFields |= bitAt(fieldIndex);
+        if (mInputType != reference.mInputType) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mLiveRegion != DEFAULT.mLiveRegion) nonDefaultFields |= bitAt(fieldIndex);
+        if (mLiveRegion != reference.mLiveRegion) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (mDrawingOrderInParent != DEFAULT.mDrawingOrderInParent) {
+        if (mDrawingOrderInParent != reference.mDrawingOrderInParent) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mExtraDataKeys, DEFAULT.mExtraDataKeys)) {
+        if (!Objects.equals(mExtraDataKeys, reference.mExtraDataKeys)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mExtras, DEFAULT.mExtras)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!Objects.equals(mExtras, reference.mExtras)) nonDefaultFields |= bitAt(fieldIndex);
         fieldIndex++;
-        if (!Objects.equals(mRangeInfo, DEFAULT.mRangeInfo)) nonDefaultFields |= bitAt(fieldIndex);
+        if (!Objects.equals(mRangeInfo, reference.mRangeInfo)) {
+            nonDefaultFields |= bitAt(fieldIndex);
+        }
         fieldIndex++;
-        if (!Objects.equals(mCollectionInfo, DEFAULT.mCollectionInfo)) {
+        if (!Objects.equals(mCollectionInfo, reference.mCollectionInfo)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         fieldIndex++;
-        if (!Objects.equals(mCollectionItemInfo, DEFAULT.mCollectionItemInfo)) {
+        if (!Objects.equals(mCollectionItemInfo, reference.mCollectionItemInfo)) {
             nonDefaultFields |= bitAt(fieldIndex);
         }
         int totalFields = fieldIndex;
@@ -3244,27 +3261,37 @@ public class AccessibilityNodeInfo implements Parcelable {
 
         if (isBitSet(nonDefaultFields, fieldIndex++)) parcel.writeBundle(mExtras);
 
+        // The following may differ from the reference by being null.
         if (isBitSet(nonDefaultFields, fieldIndex++)) {
-            parcel.writeInt(mRangeInfo.getType());
-            parcel.writeFloat(mRangeInfo.getMin());
-            parcel.writeFloat(mRangeInfo.getMax());
-            parcel.writeFloat(mRangeInfo.getCurrent());
+            parcel.writeInt(mRangeInfo != null ? 1 : 0);
+            if (mRangeInfo != null) {
+                parcel.writeInt(mRangeInfo.getType());
+                parcel.writeFloat(mRangeInfo.getMin());
+                parcel.writeFloat(mRangeInfo.getMax());
+                parcel.writeFloat(mRangeInfo.getCurrent());
+            }
         }
 
         if (isBitSet(nonDefaultFields, fieldIndex++)) {
-            parcel.writeInt(mCollectionInfo.getRowCount());
-            parcel.writeInt(mCollectionInfo.getColumnCount());
-            parcel.writeInt(mCollectionInfo.isHierarchical() ? 1 : 0);
-            parcel.writeInt(mCollectionInfo.getSelectionMode());
+            parcel.writeInt(mCollectionInfo != null ? 1 : 0);
+            if (mCollectionInfo != null) {
+                parcel.writeInt(mCollectionInfo.getRowCount());
+                parcel.writeInt(mCollectionInfo.getColumnCount());
+                parcel.writeInt(mCollectionInfo.isHierarchical() ? 1 : 0);
+                parcel.writeInt(mCollectionInfo.getSelectionMode());
+            }
         }
 
         if (isBitSet(nonDefaultFields, fieldIndex++)) {
-            parcel.writeInt(mCollectionItemInfo.getRowIndex());
-            parcel.writeInt(mCollectionItemInfo.getRowSpan());
-            parcel.writeInt(mCollectionItemInfo.getColumnIndex());
-            parcel.writeInt(mCollectionItemInfo.getColumnSpan());
-            parcel.writeInt(mCollectionItemInfo.isHeading() ? 1 : 0);
-            parcel.writeInt(mCollectionItemInfo.isSelected() ? 1 : 0);
+            parcel.writeInt(mCollectionItemInfo != null ? 1 : 0);
+            if (mCollectionItemInfo != null) {
+                parcel.writeInt(mCollectionItemInfo.getRowIndex());
+                parcel.writeInt(mCollectionItemInfo.getRowSpan());
+                parcel.writeInt(mCollectionItemInfo.getColumnIndex());
+                parcel.writeInt(mCollectionItemInfo.getColumnSpan());
+                parcel.writeInt(mCollectionItemInfo.isHeading() ? 1 : 0);
+                parcel.writeInt(mCollectionItemInfo.isSelected() ? 1 : 0);
+            }
         }
 
         if (DEBUG) {
@@ -3274,10 +3301,6 @@ public class AccessibilityNodeInfo implements Parcelable {
                         + " vs " + fieldIndex);
             }
         }
-
-        // Since instances of this class are fetched via synchronous i.e. blocking
-        // calls in IPCs we always recycle as soon as the instance is marshaled.
-        recycle();
     }
 
     /**
@@ -3357,12 +3380,48 @@ public class AccessibilityNodeInfo implements Parcelable {
      * @param parcel A parcel containing the state of a {@link AccessibilityNodeInfo}.
      */
     private void initFromParcel(Parcel parcel) {
-        // Bit mask of non-default-valued field indices
+        initFromParcel(parcel, DEFAULT);
+    }
+
+    /**
+     * Returns whether two lists of actions have the same actions with the same labels, since
+     * actions are equal if their ids are.
+     */
+    private static boolean actionsEqual(List<AccessibilityAction> actions,
+            List<AccessibilityAction> otherActions) {
+        if (actions == otherActions) {
+            return true;
+        }
+        if (actions == null || otherActions == null || actions.size() != otherActions.size()) {
+            return false;
+        }
+        final int actionCount = actions.size();
+        for (int i = 0; i < actionCount; i++) {
+            final AccessibilityAction action = actions.get(i);
+            final AccessibilityAction otherAction = otherActions.get(i);
+            if (action.getId() != otherAction.getId()
+                    || !TextUtils.equals(action.getLabel(), otherAction.getLabel())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Initializes this cleared instance from a parcel, written relative to the reference.
+     */
+    private void initFromParcel(Parcel parcel, AccessibilityNodeInfo reference) {
+        if (reference != DEFAULT) {
+            init(reference);
+            mSealed = false;
+        }
+
+        // Bit mask of indices of fields differing from the reference
         long nonDefaultFields = parcel.readLong();
         int fieldIndex = 0;
         final boolean sealed = isBitSet(nonDefaultFields, fieldIndex++)
                 ? (parcel.readInt() == 1)
-                : DEFAULT.mSealed;
+                : reference.mSealed;
         if (isBitSet(nonDefaultFields, fieldIndex++)) mSourceNodeId = parcel.readLong();
         if (isBitSet(nonDefaultFields, fieldIndex++)) mWindowId = parcel.readInt();
         if (isBitSet(nonDefaultFields, fieldIndex++)) mParentNodeId = parcel.readLong();
@@ -3401,6 +3460,7 @@ public class AccessibilityNodeInfo implements Parcelable {
         }
 
         if (isBitSet(nonDefaultFields, fieldIndex++)) {
+            if (mActions != null) mActions.clear();
             final int standardActions = parcel.readInt();
             addStandardActions(standardActions);
             final int nonStandardActionCount = parcel.readInt();
@@ -3432,42 +3492,46 @@ public class AccessibilityNodeInfo implements Parcelable {
         if (isBitSet(nonDefaultFields, fieldIndex++)) mLiveRegion = parcel.readInt();
         if (isBitSet(nonDefaultFields, fieldIndex++)) mDrawingOrderInParent = parcel.readInt();
 
-        mExtraDataKeys = isBitSet(nonDefaultFields, fieldIndex++)
-                ? parcel.createStringArrayList()
-                : null;
+        if (isBitSet(nonDefaultFields, fieldIndex++)) {
+            mExtraDataKeys = parcel.createStringArrayList();
+        }
 
-        mExtras = isBitSet(nonDefaultFields, fieldIndex++)
-                ? parcel.readBundle()
-                : null;
+        if (isBitSet(nonDefaultFields, fieldIndex++)) mExtras = parcel.readBundle();
 
-        if (mRangeInfo != null) mRangeInfo.recycle();
-        mRangeInfo = isBitSet(nonDefaultFields, fieldIndex++)
-                ? RangeInfo.obtain(
-                        parcel.readInt(),
-                        parcel.readFloat(),
-                        parcel.readFloat(),
-                        parcel.readFloat())
-                : null;
+        if (isBitSet(nonDefaultFields, fieldIndex++)) {
+            if (mRangeInfo != null) mRangeInfo.recycle();
+            mRangeInfo = parcel.readInt() == 1
+                    ? RangeInfo.obtain(
+                            parcel.readInt(),
+                            parcel.readFloat(),
+                            parcel.readFloat(),
+                            parcel.readFloat())
+                    : null;
+        }
 
-        if (mCollectionInfo != null) mCollectionInfo.recycle();
-        mCollectionInfo = isBitSet(nonDefaultFields, fieldIndex++)
-                ? CollectionInfo.obtain(
-                        parcel.readInt(),
-                        parcel.readInt(),
-                        parcel.readInt() == 1,
-                        parcel.readInt())
-                : null;
+        if (isBitSet(nonDefaultFields, fieldIndex++)) {
+            if (mCollectionInfo != null) mCollectionInfo.recycle();
+            mCollectionInfo = parcel.readInt() == 1
+                    ? CollectionInfo.obtain(
+                            parcel.readInt(),
+                            parcel.readInt(),
+                            parcel.readInt() == 1,
+                            parcel.readInt())
+                    : null;
+        }
 
-        if (mCollectionItemInfo != null) mCollectionItemInfo.recycle();
-        mCollectionItemInfo = isBitSet(nonDefaultFields, fieldIndex++)
-                ? CollectionItemInfo.obtain(
-                        parcel.readInt(),
-                        parcel.readInt(),
-                        parcel.readInt(),
-                        parcel.readInt(),
-                        parcel.readInt() == 1,
-                        parcel.readInt() == 1)
-                : null;
+        if (isBitSet(nonDefaultFields, fieldIndex++)) {
+            if (mCollectionItemInfo != null) mCollectionItemInfo.recycle();
+            mCollectionItemInfo = parcel.readInt() == 1
+                    ? CollectionItemInfo.obtain(
+                            parcel.readInt(),
+                            parcel.readInt(),
+                            parcel.readInt(),
+                            parcel.readInt(),
+                            parcel.readInt() == 1,
+                            parcel.readInt() == 1)
+                    : null;
+        }
 
         mSealed = sealed;
     }
@@ -4656,6 +4720,37 @@ public class AccessibilityNodeInfo implements Parcelable {
         }
     }
 
+    /**
+     * Writes a list of nodes, each relative to the previous one, and recycles them.
+     */
+    static void writeBatchToParcel(List<AccessibilityNodeInfo> infos, Parcel parcel) {
+        final int infoCount = infos.size();
+        parcel.writeInt(infoCount);
+        AccessibilityNodeInfo previous = DEFAULT;
+        for (int i = 0; i < infoCount; i++) {
+            final AccessibilityNodeInfo info = infos.get(i);
+            info.writeToParcel(parcel, previous);
+            // Keep the previous node until the next one is written relative to it.
+            if (previous != DEFAULT) previous.recycle();
+            previous = info;
+        }
+        if (previous != DEFAULT) previous.recycle();
+    }
+
+    /**
+     * Reads a list of nodes written by {@link #writeBatchToParcel(List, Parcel)}.
+     */
+    static void readBatchFromParcel(Parcel parcel, List<AccessibilityNodeInfo> outInfos) {
+        final int infoCount = parcel.readInt();
+        AccessibilityNodeInfo previous = DEFAULT;
+        for (int i = 0; i < infoCount; i++) {
+            final AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+            info.initFromParcel(parcel, previous);
+            outInfos.add(info);
+            previous = info;
+        }
+    }
+
     /**
      * @see android.os.Parcelable.Creator
      */
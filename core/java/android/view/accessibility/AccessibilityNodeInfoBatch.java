@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view.accessibility;
+
+import android.annotation.Nullable;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A list of {@link AccessibilityNodeInfo}s that is parceled as a whole. Each node is written
+ * relative to the previous one rather than to a default node, since the nodes prefetched from
+ * a window share most of their properties, e.g. the window, the package, the actions and often
+ * the class, so only the properties that differ from the previous node are written.
+ *
+ * <p>Like a single node, the nodes are recycled once parceled.</p>
+ *
+ * @hide
+ */
+public final class AccessibilityNodeInfoBatch extends ArrayList<AccessibilityNodeInfo>
+        implements Parcelable {
+
+    public AccessibilityNodeInfoBatch() {
+    }
+
+    public AccessibilityNodeInfoBatch(Collection<? extends AccessibilityNodeInfo> infos) {
+        super(infos);
+    }
+
+    /**
+     * Returns the given nodes as a batch, copying them into one if needed.
+     */
+    public static AccessibilityNodeInfoBatch from(@Nullable List<AccessibilityNodeInfo> infos) {
+        if (infos == null || infos instanceof AccessibilityNodeInfoBatch) {
+            return (AccessibilityNodeInfoBatch) infos;
+        }
+        return new AccessibilityNodeInfoBatch(infos);
+    }
+
+    private AccessibilityNodeInfoBatch(Parcel parcel) {
+        AccessibilityNodeInfo.readBatchFromParcel(parcel, this);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        AccessibilityNodeInfo.writeBatchToParcel(this, parcel);
+    }
+
+    public static final Parcelable.Creator<AccessibilityNodeInfoBatch> CREATOR =
+            new Parcelable.Creator<AccessibilityNodeInfoBatch>() {
+        @Override
+        public AccessibilityNodeInfoBatch createFromParcel(Parcel parcel) {
+            return new AccessibilityNodeInfoBatch(parcel);
+        }
+
+        @Override
+        public AccessibilityNodeInfoBatch[] newArray(int size) {
+            return new AccessibilityNodeInfoBatch[size];
+        }
+    };
+}
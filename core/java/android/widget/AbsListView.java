@@ -38,14 +38,17 @@ import android.text.Editable;
 import android.text.InputType;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.LongSparseArray;
 import android.util.SparseArray;
 import android.util.SparseBooleanArray;
+import android.util.SparseLongArray;
 import android.util.StateSet;
 import android.view.ActionMode;
 import android.view.ContextMenu.ContextMenuInfo;
+import android.view.Display;
 import android.view.Gravity;
 import android.view.HapticFeedbackConstants;
 import android.view.InputDevice;
@@ -82,9 +85,11 @@ import android.view.inputmethod.InputMethodManager;
 import android.widget.RemoteViews.OnClickHandler;
 
 import com.android.internal.R;
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class that can be used to implement virtualized lists of items. A list does
@@ -586,6 +591,12 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
      */
     private int mCacheColorHint;
 
+    /**
+     * Obtains the rows about to be scrolled into view during the idle time between frames,
+     * or null if item prefetch is disabled.
+     */
+    private ItemPrefetcher mItemPrefetcher;
+
     /**
      * The select child's view (from the adapter's getView) is enabled.
      */
@@ -1457,6 +1468,80 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         return mSmoothScrollbarEnabled;
     }
 
+    /**
+     * When item prefetch is enabled, the list obtains the views of the rows about to be
+     * scrolled into view from its adapter ahead of time, in the time left idle by the UI thread
+     * between frames while scrolling. This moves the cost of creating and binding views out of
+     * the frames that display them.
+     * <p>
+     * The adapter may be asked for views of positions that end up not being displayed, for
+     * instance if the scroll direction changes. These views are put in the scrap heap and
+     * reused.
+     * <p>
+     * Item prefetch is disabled by default.
+     *
+     * @param enabled Whether or not to enable item prefetch.
+     *
+     * @see #isItemPrefetchEnabled()
+     */
+    public void setItemPrefetchEnabled(boolean enabled) {
+        if (enabled == (mItemPrefetcher != null)) {
+            return;
+        }
+        if (enabled) {
+            mItemPrefetcher = new ItemPrefetcher();
+        } else {
+            mItemPrefetcher.cancel();
+            mItemPrefetcher = null;
+            mRecycler.releasePrefetchedViews(0, 0);
+        }
+    }
+
+    /**
+     * Returns whether the list obtains the rows about to be scrolled into view ahead of time.
+     *
+     * @return True if item prefetch is enabled, false otherwise.
+     *
+     * @see #setItemPrefetchEnabled(boolean)
+     */
+    @ViewDebug.ExportedProperty
+    public boolean isItemPrefetchEnabled() {
+        return mItemPrefetcher != null;
+    }
+
+    /**
+     * Obtains the rows about to be scrolled into view, as if the UI thread was idle until the
+     * given time. Item prefetch must be enabled.
+     *
+     * @param deadlineNs the time, in {@link System#nanoTime()} base, at which to stop
+     * @hide
+     */
+    @VisibleForTesting
+    public void prefetchItems(long deadlineNs) {
+        mItemPrefetcher.prefetch(deadlineNs);
+    }
+
+    /**
+     * Returns the number of views obtained ahead of time by item prefetch.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public int getPrefetchedItemCount() {
+        return mItemPrefetcher != null ? mItemPrefetcher.mPrefetchedCount : 0;
+    }
+
+    /**
+     * Returns the number of views obtained ahead of time by item prefetch that were then
+     * displayed at the position they were obtained for.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public int getPrefetchedItemUsedCount() {
+        return mItemPrefetcher != null ? mItemPrefetcher.mUsedCount : 0;
+    }
+
     /**
      * Set the listener that will receive notifications every time the list scrolls.
      *
@@ -2363,18 +2448,32 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             return transientView;
         }
 
-        final View scrapView = mRecycler.getScrapView(position);
-        final View child = mAdapter.getView(position, scrapView, this);
-        if (scrapView != null) {
-            if (child != scrapView) {
-                // Failed to re-bind the data, return scrap to the heap.
-                mRecycler.addScrapView(scrapView, position);
-            } else if (child.isTemporarilyDetached()) {
+        final View child;
+        final View prefetchedView = mRecycler.getPrefetchedView(position);
+        if (prefetchedView != null) {
+            // The view was already obtained from the adapter for this position.
+            child = prefetchedView;
+            mItemPrefetcher.mUsedCount++;
+            if (child.isTemporarilyDetached()) {
                 outMetadata[0] = true;
 
                 // Finish the temporary detach started in addScrapView().
                 child.dispatchFinishTemporaryDetach();
             }
+        } else {
+            final View scrapView = mRecycler.getScrapView(position);
+            child = mAdapter.getView(position, scrapView, this);
+            if (scrapView != null) {
+                if (child != scrapView) {
+                    // Failed to re-bind the data, return scrap to the heap.
+                    mRecycler.addScrapView(scrapView, position);
+                } else if (child.isTemporarilyDetached()) {
+                    outMetadata[0] = true;
+
+                    // Finish the temporary detach started in addScrapView().
+                    child.dispatchFinishTemporaryDetach();
+                }
+            }
         }
 
         if (mCacheColorHint != 0) {
@@ -2946,6 +3045,9 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         dismissPopup();
 
         // Detach any view left in the scrap heap
+        if (mItemPrefetcher != null) {
+            mItemPrefetcher.cancel();
+        }
         mRecycler.clear();
 
         final ViewTreeObserver treeObserver = getViewTreeObserver();
@@ -5257,6 +5359,10 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
 
         invokeOnItemScrollListener();
 
+        if (mItemPrefetcher != null) {
+            mItemPrefetcher.schedule(incrementalDeltaY);
+        }
+
         return false;
     }
 
@@ -6421,6 +6527,8 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             if (mFastScroll != null) {
                 mFastScroll.onSectionsChanged();
             }
+            // Prefetched views were bound to the old data.
+            mRecycler.releasePrefetchedViews(0, 0);
         }
 
         @Override
@@ -6429,6 +6537,140 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             if (mFastScroll != null) {
                 mFastScroll.onSectionsChanged();
             }
+            mRecycler.releasePrefetchedViews(0, 0);
+        }
+    }
+
+    /**
+     * Returns the number of items laid out on each row, which item prefetch obtains together.
+     */
+    int getPrefetchItemsPerRow() {
+        return 1;
+    }
+
+    /**
+     * Obtains the views of the rows about to be scrolled into view from the adapter, after the
+     * current frame is done and until the next one is expected, and keeps them in the
+     * {@link RecycleBin} so that {@link #obtainView} does not need to create or bind them while
+     * producing the frame that displays them. Modeled on RecyclerView's GapWorker.
+     */
+    private class ItemPrefetcher implements Runnable {
+        // Upper bound of the number of rows obtained ahead of time.
+        private static final int MAX_PREFETCH_ROWS = 2;
+
+        // Running average of the time it took to obtain a view, by view type.
+        private final SparseLongArray mAverageObtainTimeNs = new SparseLongArray();
+
+        private boolean mPosted;
+
+        // True if the content scrolls towards the end of the list.
+        private boolean mTowardsEnd;
+        // Distance in pixels scrolled during the last frame.
+        private int mScrollDistance;
+
+        int mPrefetchedCount;
+        int mUsedCount;
+
+        void schedule(int incrementalDeltaY) {
+            mTowardsEnd = incrementalDeltaY < 0;
+            mScrollDistance = Math.abs(incrementalDeltaY);
+            if (!mPosted && isAttachedToWindow()) {
+                // Posting while producing the frame runs the prefetch right after it.
+                mPosted = true;
+                post(this);
+            }
+        }
+
+        void cancel() {
+            if (mPosted) {
+                removeCallbacks(this);
+                mPosted = false;
+            }
+        }
+
+        @Override
+        public void run() {
+            mPosted = false;
+
+            // The drawing time is the vsync time of the last frame, use it to predict the next.
+            final long lastFrameNs = TimeUnit.MILLISECONDS.toNanos(getDrawingTime());
+            if (lastFrameNs == 0) {
+                return;
+            }
+            prefetch(lastFrameNs + getFrameIntervalNs());
+        }
+
+        private long getFrameIntervalNs() {
+            final Display display = getDisplay();
+            float refreshRate = display != null ? display.getRefreshRate() : 0;
+            if (refreshRate < 30) {
+                // Sanity check the refresh rate, a bogus value would throttle all work.
+                refreshRate = 60;
+            }
+            return (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+        }
+
+        void prefetch(long deadlineNs) {
+            final int childCount = getChildCount();
+            if (mAdapter == null || mDataChanged || childCount == 0) {
+                return;
+            }
+
+            Trace.traceBegin(Trace.TRACE_TAG_VIEW, "AbsListView prefetch");
+            try {
+                // Estimate how many rows the next frame will reveal at the current speed.
+                final int itemsPerRow = getPrefetchItemsPerRow();
+                final int childrenHeight =
+                        getChildAt(childCount - 1).getBottom() - getChildAt(0).getTop();
+                final int averageRowHeight = Math.max(1, childrenHeight * itemsPerRow / childCount);
+                final int rowCount = Math.min(MAX_PREFETCH_ROWS,
+                        1 + mScrollDistance / averageRowHeight);
+                final int itemCount = rowCount * itemsPerRow;
+                final int start = mTowardsEnd
+                        ? mFirstPosition + childCount : mFirstPosition - itemCount;
+                final int end = start + itemCount;
+
+                // Give back the views obtained for rows that will not be displayed after all.
+                mRecycler.releasePrefetchedViews(start, end);
+
+                final int firstItem = getHeaderViewsCount();
+                final int lastItem = mItemCount - getFooterViewsCount() - 1;
+                for (int i = 0; i < itemCount; i++) {
+                    // Closest rows first.
+                    final int position = mTowardsEnd ? start + i : end - 1 - i;
+                    if (position < firstItem || position > lastItem
+                            || mRecycler.hasPrefetchedView(position)) {
+                        continue;
+                    }
+
+                    final int viewType = mAdapter.getItemViewType(position);
+                    if (!mRecycler.shouldRecycleViewType(viewType)) {
+                        continue;
+                    }
+
+                    final long startNs = System.nanoTime();
+                    final long averageNs = mAverageObtainTimeNs.get(viewType);
+                    if (startNs + averageNs > deadlineNs) {
+                        // Not enough time left before the next frame.
+                        break;
+                    }
+
+                    final View scrapView = mRecycler.getScrapView(position);
+                    final View child = mAdapter.getView(position, scrapView, AbsListView.this);
+                    if (scrapView != null && child != scrapView) {
+                        mRecycler.addScrapView(scrapView, position);
+                    }
+                    setItemViewLayoutParams(child, position);
+                    mRecycler.addPrefetchedView(child, position);
+                    mPrefetchedCount++;
+
+                    final long durationNs = System.nanoTime() - startNs;
+                    mAverageObtainTimeNs.put(viewType, averageNs == 0
+                            ? durationNs : (averageNs / 4 * 3) + (durationNs / 4));
+                }
+            } finally {
+                Trace.traceEnd(Trace.TRACE_TAG_VIEW);
+            }
         }
     }
 
@@ -6647,6 +6889,19 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         private SparseArray<View> mTransientStateViews;
         private LongSparseArray<View> mTransientStateViewsById;
 
+        /**
+         * Views obtained from the adapter ahead of time for the rows about to be scrolled into
+         * view, by position. See {@link ItemPrefetcher}.
+         */
+        private SparseArray<View> mPrefetchedViews;
+
+        /**
+         * Views of the scrap heap that were prefetched but never attached to the list. They must
+         * not be removed with {@link #removeDetachedView(View, boolean)}, which would report the
+         * removal of a child that was never added.
+         */
+        private ArraySet<View> mUnattachedScrap;
+
         public void setViewTypeCount(int viewTypeCount) {
             if (viewTypeCount < 1) {
                 throw new IllegalArgumentException("Can't have a viewTypeCount < 1");
@@ -6659,6 +6914,9 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             mViewTypeCount = viewTypeCount;
             mCurrentScrap = scrapViews[0];
             mScrapViews = scrapViews;
+            if (mUnattachedScrap != null) {
+                mUnattachedScrap.clear();
+            }
         }
 
         public void markChildrenDirty() {
@@ -6712,6 +6970,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             }
 
             clearTransientStateViews();
+            clearPrefetchedViews();
         }
 
         /**
@@ -6803,6 +7062,105 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
             }
         }
 
+        void addPrefetchedView(View view, int position) {
+            if (mPrefetchedViews == null) {
+                mPrefetchedViews = new SparseArray<>();
+            }
+            mPrefetchedViews.put(position, view);
+        }
+
+        boolean hasPrefetchedView(int position) {
+            return mPrefetchedViews != null && mPrefetchedViews.indexOfKey(position) >= 0;
+        }
+
+        /**
+         * Returns the view obtained ahead of time for the specified position, if any and if it
+         * still matches the data of the adapter. The view is removed from the prefetched views.
+         */
+        View getPrefetchedView(int position) {
+            if (mPrefetchedViews == null) {
+                return null;
+            }
+            final int index = mPrefetchedViews.indexOfKey(position);
+            if (index < 0) {
+                return null;
+            }
+            final View view = mPrefetchedViews.valueAt(index);
+            mPrefetchedViews.removeAt(index);
+
+            final AbsListView.LayoutParams lp = (AbsListView.LayoutParams) view.getLayoutParams();
+            if (lp.viewType != mAdapter.getItemViewType(position)
+                    || (mAdapterHasStableIds && lp.itemId != mAdapter.getItemId(position))) {
+                releasePrefetchedView(view, position);
+                return null;
+            }
+            return view;
+        }
+
+        /**
+         * Puts the prefetched views whose position is outside of [start, end) in the scrap heap.
+         */
+        void releasePrefetchedViews(int start, int end) {
+            final SparseArray<View> viewsByPos = mPrefetchedViews;
+            if (viewsByPos == null) {
+                return;
+            }
+            for (int i = viewsByPos.size() - 1; i >= 0; i--) {
+                final int position = viewsByPos.keyAt(i);
+                if (position < start || position >= end) {
+                    final View view = viewsByPos.valueAt(i);
+                    viewsByPos.removeAt(i);
+                    releasePrefetchedView(view, position);
+                }
+            }
+        }
+
+        private void releasePrefetchedView(View view, int position) {
+            if (view.isTemporarilyDetached()) {
+                // Was taken from the scrap heap before being fully detached.
+                addScrapView(view, position);
+                return;
+            }
+
+            // The view is not attached, so it can go to the scrap heap without being temporarily
+            // detached. Views that cannot be reused are simply dropped.
+            final AbsListView.LayoutParams lp = (AbsListView.LayoutParams) view.getLayoutParams();
+            final int viewType = lp.viewType;
+            if (!shouldRecycleViewType(viewType) || viewType >= mViewTypeCount
+                    || view.hasTransientState()) {
+                return;
+            }
+            lp.scrappedFromPosition = position;
+            clearScrapForRebind(view);
+            if (mViewTypeCount == 1) {
+                mCurrentScrap.add(view);
+            } else {
+                mScrapViews[viewType].add(view);
+            }
+            if (mUnattachedScrap == null) {
+                mUnattachedScrap = new ArraySet<>();
+            }
+            mUnattachedScrap.add(view);
+
+            if (mRecyclerListener != null) {
+                mRecyclerListener.onMovedToScrapHeap(view);
+            }
+        }
+
+        private void clearPrefetchedViews() {
+            final SparseArray<View> viewsByPos = mPrefetchedViews;
+            if (viewsByPos != null) {
+                final int N = viewsByPos.size();
+                for (int i = 0; i < N; i++) {
+                    final View view = viewsByPos.valueAt(i);
+                    if (view.isTemporarilyDetached()) {
+                        removeDetachedView(view, false);
+                    }
+                }
+                viewsByPos.clear();
+            }
+        }
+
         /**
          * @return A view from the ScrapViews collection. These are unordered.
          */
@@ -7012,7 +7370,7 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
                 final ArrayList<View> scrapPile = scrapViews[i];
                 int size = scrapPile.size();
                 while (size > maxViews) {
-                    scrapPile.remove(--size);
+                    forgetUnattachedScrap(scrapPile.remove(--size));
                 }
             }
 
@@ -7103,15 +7461,19 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
                     if (mAdapterHasStableIds) {
                         final long id = mAdapter.getItemId(position);
                         if (id == params.itemId) {
-                            return scrapViews.remove(i);
+                            final View scrap = scrapViews.remove(i);
+                            forgetUnattachedScrap(scrap);
+                            return scrap;
                         }
                     } else if (params.scrappedFromPosition == position) {
                         final View scrap = scrapViews.remove(i);
+                        forgetUnattachedScrap(scrap);
                         clearScrapForRebind(scrap);
                         return scrap;
                     }
                 }
                 final View scrap = scrapViews.remove(size - 1);
+                forgetUnattachedScrap(scrap);
                 clearScrapForRebind(scrap);
                 return scrap;
             } else {
@@ -7122,10 +7484,22 @@ public abstract class AbsListView extends AdapterView<ListAdapter> implements Te
         private void clearScrap(final ArrayList<View> scrap) {
             final int scrapCount = scrap.size();
             for (int j = 0; j < scrapCount; j++) {
-                removeDetachedView(scrap.remove(scrapCount - 1 - j), false);
+                final View view = scrap.remove(scrapCount - 1 - j);
+                if (!forgetUnattachedScrap(view)) {
+                    removeDetachedView(view, false);
+                }
             }
         }
 
+        /**
+         * Stops tracking a view leaving the scrap heap as never attached.
+         *
+         * @return Whether the view was prefetched and never attached to the list.
+         */
+        private boolean forgetUnattachedScrap(View view) {
+            return mUnattachedScrap != null && mUnattachedScrap.remove(view);
+        }
+
         private void clearScrapForRebind(View view) {
             view.clearAccessibilityFocus();
             view.setAccessibilityDelegate(null);
@@ -2227,6 +2227,11 @@ public class GridView extends AbsListView {
         return mNumColumns;
     }
 
+    @Override
+    int getPrefetchItemsPerRow() {
+        return Math.max(1, mNumColumns);
+    }
+
     /**
      * Make sure views are touching the top or bottom edge, as appropriate for
      * our gravity
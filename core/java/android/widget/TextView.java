@@ -26,6 +26,7 @@ import android.annotation.ColorInt;
 import android.annotation.DrawableRes;
 import android.annotation.FloatRange;
 import android.annotation.IntDef;
+import android.annotation.IntRange;
 import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.annotation.Size;
@@ -76,6 +77,7 @@ import android.text.InputFilter;
 import android.text.InputType;
 import android.text.Layout;
 import android.text.ParcelableSpan;
+import android.text.PrecomputedText;
 import android.text.Selection;
 import android.text.SpanWatcher;
 import android.text.Spannable;
@@ -618,6 +620,10 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
     private CharSequence mText;
     private CharSequence mTransformed;
     private BufferType mBufferType = BufferType.NORMAL;
+    // Lines of mText computed ahead of time, see setPrecomputedText().
+    private PrecomputedText mPrecomputed;
+    // Whether the last layout made by makeSingleLayout() uses the lines of mPrecomputed.
+    private boolean mLayoutPrecomputed;
 
     private CharSequence mHint;
     private Layout mHintLayout;
@@ -5207,6 +5213,58 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         setText(text, mBufferType);
     }
 
+    /**
+     * Sets the text to be displayed from text whose lines were computed ahead of time, typically
+     * on a background thread. This behaves like {@link #setText(CharSequence)} with
+     * {@link PrecomputedText#getText()}, except that the precomputed lines are used as the layout
+     * of this TextView as long as its parameters and width match the
+     * {@link PrecomputedText.Params} of the text. Otherwise, the text is measured as usual.
+     *
+     * @param text the precomputed text to be displayed
+     *
+     * @see #getPrecomputedTextParams(int)
+     */
+    public void setPrecomputedText(@NonNull PrecomputedText text) {
+        mPrecomputed = text;
+        setText(text.getText(), mBufferType);
+    }
+
+    /**
+     * Returns the parameters to use for precomputing text for this TextView, given the width of
+     * its content area. The returned object is immutable and can be used on any thread.
+     *
+     * @param width the width in pixels available to the text, excluding padding and compound
+     * drawables
+     * @return the parameters matching the current configuration of this TextView
+     *
+     * @see PrecomputedText#create(CharSequence, PrecomputedText.Params)
+     */
+    public @NonNull PrecomputedText.Params getPrecomputedTextParams(@IntRange(from = 0) int width) {
+        // The heuristic makeNewLayout() will use, without changing the state of the view.
+        final TextDirectionHeuristic textDir =
+                mTextDir != null ? mTextDir : getTextDirectionHeuristic();
+        return new PrecomputedText.Params.Builder(mTextPaint, width)
+                .setAlignment(getLayoutAlignment())
+                .setTextDirection(textDir)
+                .setLineSpacing(mSpacingAdd, mSpacingMult)
+                .setIncludePad(mIncludePad)
+                .setBreakStrategy(mBreakStrategy)
+                .setHyphenationFrequency(mHyphenationFrequency)
+                .setJustificationMode(mJustificationMode)
+                .build();
+    }
+
+    /**
+     * Returns whether the current layout uses the lines of the text set with
+     * {@link #setPrecomputedText(PrecomputedText)}, rather than lines measured by the view.
+     *
+     * @hide
+     */
+    @VisibleForTesting
+    public boolean isLayoutPrecomputed() {
+        return mLayout != null && mLayoutPrecomputed;
+    }
+
     /**
      * Sets the text to be displayed but retains the cursor position. Same as
      * {@link #setText(CharSequence)} except that the cursor position (if any) is retained in the
@@ -5260,6 +5318,9 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
         if (text == null) {
             text = "";
         }
+        if (mPrecomputed != null && mPrecomputed.getText() != text) {
+            mPrecomputed = null;
+        }
 
         // If suggestions are not enabled, remove the suggestion spans from the text
         if (!isSuggestionsEnabled()) {
@@ -7950,6 +8011,15 @@ public class TextView extends View implements ViewTreeObserver.OnPreDrawListener
             Layout.Alignment alignment, boolean shouldEllipsize, TruncateAt effectiveEllipsize,
             boolean useSaved) {
         Layout result = null;
+        mLayoutPrecomputed = false;
+        if (mPrecomputed != null && mPrecomputed.getText() == mTransformed && !shouldEllipsize
+                && (mMaxMode != LINES || mMaximum == Integer.MAX_VALUE)
+                && mPrecomputed.getParams().isCompatibleWith(mTextPaint, wantWidth, alignment,
+                        mTextDir, mSpacingAdd, mSpacingMult, mIncludePad, mBreakStrategy,
+                        mHyphenationFrequency, mJustificationMode)) {
+            mLayoutPrecomputed = true;
+            return mPrecomputed.createLayout(mTextPaint);
+        }
         if (mText instanceof Spannable) {
             result = new DynamicLayout(mText, mTransformed, mTextPaint, wantWidth,
                     alignment, mTextDir, mSpacingMult, mSpacingAdd, mIncludePad,
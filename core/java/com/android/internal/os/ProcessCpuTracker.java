@@ -30,7 +30,6 @@ import com.android.internal.util.FastPrintWriter;
 import libcore.io.IoUtils;
 import libcore.io.Libcore;
 
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -244,13 +243,13 @@ public class ProcessCpuTracker {
         public boolean added;
         public boolean removed;
 
-        Stats(int _pid, int parentPid, boolean includeThreads) {
+        Stats(int _pid, int parentPid, int parentUid, boolean includeThreads) {
             pid = _pid;
             if (parentPid < 0) {
-                final File procDir = new File("/proc", Integer.toString(pid));
-                statFile = new File(procDir, "stat").toString();
-                cmdlineFile = new File(procDir, "cmdline").toString();
-                threadsDir = (new File(procDir, "task")).toString();
+                final String procDir = "/proc/" + pid;
+                statFile = procDir + "/stat";
+                cmdlineFile = procDir + "/cmdline";
+                threadsDir = procDir + "/task";
                 if (includeThreads) {
                     threadStats = new ArrayList<Stats>();
                     workingThreads = new ArrayList<Stats>();
@@ -258,18 +257,16 @@ public class ProcessCpuTracker {
                     threadStats = null;
                     workingThreads = null;
                 }
+                uid = FileUtils.getUid(statFile);
             } else {
-                final File procDir = new File("/proc", Integer.toString(
-                        parentPid));
-                final File taskDir = new File(
-                        new File(procDir, "task"), Integer.toString(pid));
-                statFile = new File(taskDir, "stat").toString();
+                statFile = "/proc/" + parentPid + "/task/" + pid + "/stat";
                 cmdlineFile = null;
                 threadsDir = null;
                 threadStats = null;
                 workingThreads = null;
+                // The threads of a process run as its uid, don't stat each of them.
+                uid = parentUid;
             }
-            uid = FileUtils.getUid(statFile.toString());
         }
     }
 
@@ -384,7 +381,7 @@ public class ProcessCpuTracker {
 
         final StrictMode.ThreadPolicy savedPolicy = StrictMode.allowThreadDiskReads();
         try {
-            mCurPids = collectStats("/proc", -1, mFirst, mCurPids, mProcStats);
+            mCurPids = collectStats("/proc", -1, -1, mFirst, mCurPids, mProcStats);
         } finally {
             StrictMode.setThreadPolicy(savedPolicy);
         }
@@ -410,7 +407,7 @@ public class ProcessCpuTracker {
         mFirst = false;
     }
 
-    private int[] collectStats(String statsFile, int parentPid, boolean first,
+    private int[] collectStats(String statsFile, int parentPid, int parentUid, boolean first,
             int[] curPids, ArrayList<Stats> allProcs) {
 
         int[] pids = Process.getPids(statsFile, curPids);
@@ -438,7 +435,7 @@ public class ProcessCpuTracker {
                     final long uptime = SystemClock.uptimeMillis();
 
                     final long[] procStats = mProcessStatsData;
-                    if (!Process.readProcFile(st.statFile.toString(),
+                    if (!Process.readProcFile(st.statFile,
                             PROCESS_STATS_FORMAT, null, procStats, null)) {
                         continue;
                     }
@@ -466,7 +463,7 @@ public class ProcessCpuTracker {
                     if (parentPid < 0) {
                         getName(st, st.cmdlineFile);
                         if (st.threadStats != null) {
-                            mCurThreadPids = collectStats(st.threadsDir, pid, false,
+                            mCurThreadPids = collectStats(st.threadsDir, pid, st.uid, false,
                                     mCurThreadPids, st.threadStats);
                         }
                     }
@@ -495,7 +492,7 @@ public class ProcessCpuTracker {
 
             if (st == null || st.pid > pid) {
                 // We have a new process!
-                st = new Stats(pid, parentPid, mIncludeThreads);
+                st = new Stats(pid, parentPid, parentUid, mIncludeThreads);
                 allProcs.add(curStatsIndex, st);
                 curStatsIndex++;
                 NS++;
@@ -506,9 +503,7 @@ public class ProcessCpuTracker {
                 final String[] procStatsString = mProcessFullStatsStringData;
                 final long[] procStats = mProcessFullStatsData;
                 st.base_uptime = SystemClock.uptimeMillis();
-                String path = st.statFile.toString();
-                //Slog.d(TAG, "Reading proc file: " + path);
-                if (Process.readProcFile(path, PROCESS_FULL_STATS_FORMAT, procStatsString,
+                if (Process.readProcFile(st.statFile, PROCESS_FULL_STATS_FORMAT, procStatsString,
                         procStats, null)) {
                     // This is a possible way to filter out processes that
                     // are actually kernel threads...  do we want to?  Some
@@ -537,7 +532,7 @@ public class ProcessCpuTracker {
                 if (parentPid < 0) {
                     getName(st, st.cmdlineFile);
                     if (st.threadStats != null) {
-                        mCurThreadPids = collectStats(st.threadsDir, pid, true,
+                        mCurThreadPids = collectStats(st.threadsDir, pid, st.uid, true,
                                 mCurThreadPids, st.threadStats);
                     }
                 } else if (st.interesting) {
@@ -16,6 +16,7 @@
 
 package android.content.res;
 
+import android.content.ComponentCallbacks2;
 import android.test.ActivityInstrumentationTestCase2;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.util.TypedValue;
@@ -199,6 +200,37 @@ public class ConfigurationBoundResourceCacheTest
         }
     }
 
+    @SmallTest
+    public void testCacheStats() {
+        final Resources res = getActivity().getResources();
+        final DummyFloatConstantState state = new DummyFloatConstantState(5f);
+        assertNull(mCache.getInstance(1, res, null));
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+
+        mCache.put(1, null, state);
+        mCache.put(2, getActivity().getTheme(), state);
+        assertEquals(2, mCache.getEntryCount());
+
+        assertEquals(5f, mCache.getInstance(1, res, null));
+        assertEquals(5f, mCache.getInstance(2, res, getActivity().getTheme()));
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @SmallTest
+    public void testTrimMemoryKeepsLiveEntries() {
+        final Resources res = getActivity().getResources();
+        final DummyFloatConstantState state = new DummyFloatConstantState(5f);
+        mCache.put(1, null, state);
+        mCache.put(2, getActivity().getTheme(), state);
+
+        mCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(2, mCache.getEntryCount());
+        assertEquals(5f, mCache.getInstance(1, res, null));
+        assertEquals(5f, mCache.getInstance(2, res, getActivity().getTheme()));
+    }
+
     private static int calcConfigChanges(Resources resources, Configuration configuration) {
         return resources.calcConfigChanges(configuration);
     }
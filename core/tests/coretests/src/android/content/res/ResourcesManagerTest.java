@@ -157,6 +157,28 @@ public class ResourcesManagerTest extends TestCase {
         assertEquals(expectedConfig, resources3.getConfiguration());
     }
 
+    @SmallTest
+    public void testInvalidatedPathIsNotReturnedFromCache() {
+        Resources resources = mResourcesManager.getResources(
+                null, APP_ONE_RES_DIR, null, null, null, Display.DEFAULT_DISPLAY, null,
+                CompatibilityInfo.DEFAULT_COMPATIBILITY_INFO, null);
+        assertNotNull(resources);
+
+        mResourcesManager.invalidatePath(APP_ONE_RES_DIR);
+
+        Resources newResources = mResourcesManager.getResources(
+                null, APP_ONE_RES_DIR, null, null, null, Display.DEFAULT_DISPLAY, null,
+                CompatibilityInfo.DEFAULT_COMPATIBILITY_INFO, null);
+        assertNotNull(newResources);
+        assertNotSame(resources, newResources);
+        assertNotSame(resources.getImpl(), newResources.getImpl());
+
+        // The new Resources are now the cached ones.
+        assertSame(newResources, mResourcesManager.getResources(
+                null, APP_ONE_RES_DIR, null, null, null, Display.DEFAULT_DISPLAY, null,
+                CompatibilityInfo.DEFAULT_COMPATIBILITY_INFO, null));
+    }
+
     @SmallTest
     public void testTwoActivitiesWithIdenticalParametersShareImpl() {
         Binder activity1 = new Binder();
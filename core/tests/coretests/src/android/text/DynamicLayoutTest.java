@@ -18,6 +18,7 @@ package android.text;
 
 import static android.text.Layout.Alignment.ALIGN_NORMAL;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -25,9 +26,11 @@ import static org.junit.Assert.assertTrue;
 
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 import android.text.style.ReplacementSpan;
+import android.text.style.StyleSpan;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -112,4 +115,57 @@ public class DynamicLayoutTest {
         assertFalse(layout.getBlocksAlwaysNeedToBeRedrawn().contains(0));
         assertTrue(layout.getBlocksAlwaysNeedToBeRedrawn().isEmpty());
     }
+
+    private static SpannableStringBuilder createLongText() {
+        final SpannableStringBuilder builder = new SpannableStringBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit " + i + "\n");
+        }
+        return builder;
+    }
+
+    private static void assertSameLines(Layout expected, Layout actual) {
+        assertEquals(expected.getLineCount(), actual.getLineCount());
+        for (int i = 0; i < expected.getLineCount(); i++) {
+            assertEquals(expected.getLineStart(i), actual.getLineStart(i));
+            assertEquals(expected.getLineTop(i), actual.getLineTop(i));
+            assertEquals(expected.getLineDescent(i), actual.getLineDescent(i));
+        }
+    }
+
+    @Test
+    public void testParagraphCache_reusedWhenParagraphIsRestored() {
+        final SpannableStringBuilder builder = createLongText();
+        final TextPaint paint = new TextPaint();
+        final DynamicLayout layout = new DynamicLayout(builder, paint, 200,
+                ALIGN_NORMAL, 1, 0, false);
+        final int hits = layout.getParagraphCacheHitCount();
+
+        // Splitting then joining the first paragraph comes back to the measured text.
+        builder.insert(10, "\n");
+        builder.delete(10, 11);
+        assertTrue(layout.getParagraphCacheHitCount() > hits);
+
+        final StaticLayout expected = new StaticLayout(builder, paint, 200,
+                ALIGN_NORMAL, 1, 0, false);
+        assertSameLines(expected, layout);
+    }
+
+    @Test
+    public void testParagraphCache_missesWhenSpansChange() {
+        final SpannableStringBuilder builder = createLongText();
+        final TextPaint paint = new TextPaint();
+        final DynamicLayout layout = new DynamicLayout(builder, paint, 200,
+                ALIGN_NORMAL, 1, 0, false);
+        final int hits = layout.getParagraphCacheHitCount();
+        final int misses = layout.getParagraphCacheMissCount();
+
+        builder.setSpan(new StyleSpan(Typeface.BOLD), 0, 10, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        assertEquals(hits, layout.getParagraphCacheHitCount());
+        assertTrue(layout.getParagraphCacheMissCount() > misses);
+
+        final StaticLayout expected = new StaticLayout(builder, paint, 200,
+                ALIGN_NORMAL, 1, 0, false);
+        assertSameLines(expected, layout);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import static android.text.Layout.Alignment.ALIGN_NORMAL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PrecomputedTextTest {
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.\n"
+            + "Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris.";
+    private static final int WIDTH = 200;
+
+    @Test
+    public void testCreate_matchesStaticLayout() throws Exception {
+        final TextPaint paint = new TextPaint();
+        final PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint, WIDTH)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_HIGH_QUALITY)
+                .build();
+        final PrecomputedText precomputed = PrecomputedText.create(TEXT, params);
+
+        final StaticLayout expected = StaticLayout.Builder.obtain(TEXT, 0, TEXT.length(), paint,
+                WIDTH).setBreakStrategy(Layout.BREAK_STRATEGY_HIGH_QUALITY).build();
+        final Layout layout = precomputed.createLayout(paint);
+        assertEquals(expected.getLineCount(), precomputed.getLineCount());
+        assertEquals(expected.getHeight(), precomputed.getHeight());
+        assertEquals(expected.getLineCount(), layout.getLineCount());
+        for (int i = 0; i < expected.getLineCount(); i++) {
+            assertEquals(expected.getLineStart(i), layout.getLineStart(i));
+            assertEquals(expected.getLineTop(i), layout.getLineTop(i));
+        }
+        assertEquals(paint, layout.getPaint());
+    }
+
+    @Test
+    public void testCreate_onBackgroundThread() throws Exception {
+        final PrecomputedText.Params params =
+                new PrecomputedText.Params.Builder(new TextPaint(), WIDTH).build();
+        final PrecomputedText[] result = new PrecomputedText[1];
+        final Thread thread = new Thread(() -> result[0] = PrecomputedText.create(TEXT, params));
+        thread.start();
+        thread.join();
+
+        assertEquals(TEXT, result[0].getText());
+        assertTrue(result[0].getLineCount() > 1);
+    }
+
+    @Test
+    public void testParams_isCompatibleWith() throws Exception {
+        final TextPaint paint = new TextPaint();
+        final PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint, WIDTH)
+                .build();
+        assertTrue(params.isCompatibleWith(paint, WIDTH, ALIGN_NORMAL,
+                TextDirectionHeuristics.FIRSTSTRONG_LTR, 0.0f, 1.0f, true,
+                Layout.BREAK_STRATEGY_SIMPLE, Layout.HYPHENATION_FREQUENCY_NONE,
+                Layout.JUSTIFICATION_MODE_NONE));
+        assertFalse(params.isCompatibleWith(paint, WIDTH + 1, ALIGN_NORMAL,
+                TextDirectionHeuristics.FIRSTSTRONG_LTR, 0.0f, 1.0f, true,
+                Layout.BREAK_STRATEGY_SIMPLE, Layout.HYPHENATION_FREQUENCY_NONE,
+                Layout.JUSTIFICATION_MODE_NONE));
+
+        // Changing the paint afterwards does not change the parameters.
+        paint.setTextSize(paint.getTextSize() * 2);
+        assertFalse(params.isCompatibleWith(paint, WIDTH, ALIGN_NORMAL,
+                TextDirectionHeuristics.FIRSTSTRONG_LTR, 0.0f, 1.0f, true,
+                Layout.BREAK_STRATEGY_SIMPLE, Layout.HYPHENATION_FREQUENCY_NONE,
+                Layout.JUSTIFICATION_MODE_NONE));
+    }
+}
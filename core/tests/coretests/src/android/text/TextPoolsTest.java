@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the per-thread pools of {@link TextLine} and {@link MeasuredText}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class TextPoolsTest {
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.\n"
+            + "Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris.";
+    private static final int WIDTH = 200;
+
+    private final Canvas mCanvas = new Canvas(
+            Bitmap.createBitmap(WIDTH, WIDTH, Bitmap.Config.ARGB_8888));
+
+    /** Measures, breaks and draws the text, which uses both pools. */
+    private void layoutAndDraw() {
+        final TextPaint paint = new TextPaint();
+        final StaticLayout layout = StaticLayout.Builder.obtain(TEXT, 0, TEXT.length(), paint,
+                WIDTH).build();
+        for (int i = 0; i < layout.getLineCount(); i++) {
+            layout.getLineWidth(i);
+        }
+        layout.draw(mCanvas);
+        Layout.getDesiredWidth(TEXT, paint);
+    }
+
+    @Test
+    public void testRepeatedLayoutsReuseInstances() throws Exception {
+        layoutAndDraw();
+        final int textLines = TextLine.getAllocationCount();
+        final int measuredTexts = MeasuredText.getAllocationCount();
+
+        for (int i = 0; i < 10; i++) {
+            layoutAndDraw();
+        }
+        assertEquals(textLines, TextLine.getAllocationCount());
+        assertEquals(measuredTexts, MeasuredText.getAllocationCount());
+    }
+
+    @Test
+    public void testPoolsArePerThread() throws Exception {
+        layoutAndDraw();
+        final int[] counts = new int[4];
+        final Thread thread = new Thread(() -> {
+            // The pools of a new thread start empty.
+            layoutAndDraw();
+            counts[0] = TextLine.getAllocationCount();
+            counts[1] = MeasuredText.getAllocationCount();
+            layoutAndDraw();
+            counts[2] = TextLine.getAllocationCount();
+            counts[3] = MeasuredText.getAllocationCount();
+        });
+        thread.start();
+        thread.join();
+
+        assertTrue(counts[0] > 0);
+        assertTrue(counts[1] > 0);
+        assertEquals(counts[0], counts[2]);
+        assertEquals(counts[1], counts[3]);
+    }
+}
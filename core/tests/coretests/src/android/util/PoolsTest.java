@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Pools}.
+ */
+public class PoolsTest extends TestCase {
+
+    public void testThreadLocalPool_reusesReleasedInstances() throws Exception {
+        final Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<>(2);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getMissCount());
+
+        final Object first = new Object();
+        final Object second = new Object();
+        final Object third = new Object();
+        assertTrue(pool.release(first));
+        assertTrue(pool.release(second));
+        assertFalse(pool.release(third));
+        assertEquals(1, pool.getDropCount());
+
+        assertSame(second, pool.acquire());
+        assertSame(first, pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(2, pool.getMissCount());
+    }
+
+    public void testThreadLocalPool_isolatesThreads() throws Exception {
+        final Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<>(2);
+        final Object instance = new Object();
+        assertTrue(pool.release(instance));
+
+        final Object[] acquired = new Object[1];
+        final int[] missCount = new int[1];
+        final Thread thread = new Thread(() -> {
+            acquired[0] = pool.acquire();
+            missCount[0] = pool.getMissCount();
+        });
+        thread.start();
+        thread.join();
+
+        assertNull(acquired[0]);
+        assertEquals(1, missCount[0]);
+        assertEquals(0, pool.getMissCount());
+        assertSame(instance, pool.acquire());
+    }
+
+    public void testThreadLocalPool_rejectsDoubleRelease() throws Exception {
+        final Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<>(2);
+        final Object instance = new Object();
+        pool.release(instance);
+        try {
+            pool.release(instance);
+            fail("Releasing an instance twice should throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
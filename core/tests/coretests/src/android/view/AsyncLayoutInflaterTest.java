@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.AttributeSet;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+
+import com.android.frameworks.coretests.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class AsyncLayoutInflaterTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * A view that can only be created on a Looper thread.
+     */
+    public static class HandlerView extends View {
+        public HandlerView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            new Handler();
+        }
+    }
+
+    /**
+     * A view whose class fails to initialize.
+     */
+    public static class FailingClassView extends View {
+        private static final boolean sInitialized = failInitialization();
+
+        public FailingClassView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        private static boolean failInitialization() {
+            throw new IllegalStateException("FailingClassView cannot be initialized");
+        }
+    }
+
+    /**
+     * A view that fails to be created on any thread.
+     */
+    public static class ThrowingView extends View {
+        public ThrowingView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            throw new IllegalStateException("ThrowingView cannot be created");
+        }
+    }
+
+    private static class Result implements AsyncLayoutInflater.OnInflateFinishedListener {
+        final CountDownLatch mLatch = new CountDownLatch(1);
+        View mView;
+        ViewGroup mParent;
+        Thread mThread;
+        Throwable mError;
+
+        @Override
+        public void onInflateFinished(View view, int resid, ViewGroup parent) {
+            mView = view;
+            mParent = parent;
+            mThread = Thread.currentThread();
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onInflateFailed(int resid, ViewGroup parent, Throwable error) {
+            mError = error;
+            mParent = parent;
+            mThread = Thread.currentThread();
+            mLatch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(mLatch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    private Context getContext() {
+        return InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void testInflate() throws Throwable {
+        final FrameLayout parent = new FrameLayout(getContext());
+        final Result result = new Result();
+
+        new AsyncLayoutInflater(getContext()).inflate(R.layout.linear_layout_textviews, parent,
+                result);
+        result.await();
+
+        assertSame(Looper.getMainLooper().getThread(), result.mThread);
+        assertTrue(result.mView instanceof LinearLayout);
+        assertTrue(result.mView.getLayoutParams() instanceof FrameLayout.LayoutParams);
+        assertNull(result.mView.getParent());
+        assertSame(parent, result.mParent);
+    }
+
+    @Test
+    public void testInflate_viewNeedsLooper() throws Throwable {
+        final int mainThreadInflationCount = AsyncLayoutInflater.getMainThreadInflationCount();
+        final Result result = new Result();
+
+        new AsyncLayoutInflater(getContext()).inflate(R.layout.async_inflate_handler_view, null,
+                result);
+        result.await();
+
+        assertTrue(result.mView instanceof HandlerView);
+        assertEquals(mainThreadInflationCount + 1,
+                AsyncLayoutInflater.getMainThreadInflationCount());
+    }
+
+    @Test
+    public void testInflate_errorIsReported() throws Throwable {
+        final int mainThreadInflationCount = AsyncLayoutInflater.getMainThreadInflationCount();
+        final FrameLayout parent = new FrameLayout(getContext());
+        final Result result = new Result();
+
+        new AsyncLayoutInflater(getContext()).inflate(R.layout.async_inflate_failing_class_view,
+                parent, result);
+        result.await();
+
+        // The class is unusable, it is not inflated again on the main thread.
+        assertSame(Looper.getMainLooper().getThread(), result.mThread);
+        assertNull(result.mView);
+        assertTrue(result.mError instanceof Error);
+        assertSame(parent, result.mParent);
+        assertEquals(mainThreadInflationCount, AsyncLayoutInflater.getMainThreadInflationCount());
+    }
+
+    @Test
+    public void testInflate_mainThreadFailureIsReported() throws Throwable {
+        final int mainThreadInflationCount = AsyncLayoutInflater.getMainThreadInflationCount();
+        final Result result = new Result();
+
+        new AsyncLayoutInflater(getContext()).inflate(R.layout.async_inflate_throwing_view, null,
+                result);
+        result.await();
+
+        assertSame(Looper.getMainLooper().getThread(), result.mThread);
+        assertNull(result.mView);
+        assertTrue(result.mError instanceof InflateException);
+        assertEquals(mainThreadInflationCount + 1,
+                AsyncLayoutInflater.getMainThreadInflationCount());
+    }
+}
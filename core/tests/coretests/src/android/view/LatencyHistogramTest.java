@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import static org.junit.Assert.assertEquals;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LatencyHistogramTest {
+    private static long ms(double millis) {
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, LatencyHistogram.getBucket(-1));
+        assertEquals(0, LatencyHistogram.getBucket(ms(0.5)));
+        assertEquals(16, LatencyHistogram.getBucket(ms(16.7)));
+        assertEquals(31, LatencyHistogram.getBucket(ms(31.9)));
+        assertEquals(32, LatencyHistogram.getBucket(ms(32)));
+        assertEquals(32, LatencyHistogram.getBucket(ms(35.9)));
+        assertEquals(33, LatencyHistogram.getBucket(ms(36)));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 2, LatencyHistogram.getBucket(ms(159)));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(ms(160)));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucket(ms(10000)));
+
+        assertEquals(1, LatencyHistogram.getBucketUpperBoundMillis(0));
+        assertEquals(32, LatencyHistogram.getBucketUpperBoundMillis(31));
+        assertEquals(36, LatencyHistogram.getBucketUpperBoundMillis(32));
+        assertEquals(160, LatencyHistogram.getBucketUpperBoundMillis(
+                LatencyHistogram.BUCKET_COUNT - 2));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(50));
+
+        for (int i = 0; i < 98; i++) {
+            histogram.record(ms(4.5));
+        }
+        histogram.record(ms(40));
+        histogram.record(ms(500.5));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMillis(0));
+        assertEquals(5, histogram.getPercentileMillis(50));
+        assertEquals(5, histogram.getPercentileMillis(98));
+        assertEquals(44, histogram.getPercentileMillis(99));
+        // The last bucket is bounded by the longest duration.
+        assertEquals(501, histogram.getPercentileMillis(100));
+        assertEquals(ms(500.5), histogram.getMaxNanos());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+}
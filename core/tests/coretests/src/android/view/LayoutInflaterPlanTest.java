@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.AttributeSet;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.android.frameworks.coretests.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the replay of the inflation plans recorded by {@link LayoutInflater}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LayoutInflaterPlanTest {
+    private Context mContext;
+    private LayoutInflater mInflater;
+
+    /**
+     * A view that a factory creates instead of a {@link TextView}.
+     */
+    public static class FactoryTextView extends TextView {
+        public FactoryTextView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+    }
+
+    private static class TextViewFactory implements LayoutInflater.Factory2 {
+        @Override
+        public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+            return "TextView".equals(name) ? new FactoryTextView(context, attrs) : null;
+        }
+
+        @Override
+        public View onCreateView(String name, Context context, AttributeSet attrs) {
+            return onCreateView(null, name, context, attrs);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mInflater = LayoutInflater.from(mContext).cloneInContext(mContext);
+        mInflater.clearInflationPlans();
+    }
+
+    /** Returns the classes of a view and its descendants, in depth-first order. */
+    private static List<Class<?>> getViewClasses(View view) {
+        final ArrayList<Class<?>> classes = new ArrayList<>();
+        addViewClasses(view, classes);
+        return classes;
+    }
+
+    private static void addViewClasses(View view, List<Class<?>> classes) {
+        classes.add(view.getClass());
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                addViewClasses(group.getChildAt(i), classes);
+            }
+        }
+    }
+
+    private List<Class<?>> inflateFresh(LayoutInflater inflater, int resource) {
+        inflater.clearInflationPlans();
+        final List<Class<?>> classes = getViewClasses(inflater.inflate(resource, null));
+        inflater.clearInflationPlans();
+        return classes;
+    }
+
+    private void assertReplayCreatesSameViews(int resource) {
+        final List<Class<?>> fresh = getViewClasses(mInflater.inflate(resource, null));
+        assertTrue(mInflater.hasInflationPlan(resource));
+        assertEquals(fresh, getViewClasses(mInflater.inflate(resource, null)));
+        assertTrue(mInflater.hasInflationPlan(resource));
+    }
+
+    @Test
+    public void testReplayCreatesSameViews() throws Exception {
+        assertReplayCreatesSameViews(R.layout.linear_layout_textviews);
+    }
+
+    @Test
+    public void testReplayCreatesSameViews_include() throws Exception {
+        assertReplayCreatesSameViews(R.layout.include_tag);
+    }
+
+    @Test
+    public void testReplayCreatesSameViews_merge() throws Exception {
+        final FrameLayout freshRoot = new FrameLayout(mContext);
+        mInflater.inflate(R.layout.merge_tag, freshRoot, true);
+        assertTrue(mInflater.hasInflationPlan(R.layout.merge_tag));
+
+        final FrameLayout replayRoot = new FrameLayout(mContext);
+        mInflater.inflate(R.layout.merge_tag, replayRoot, true);
+        assertEquals(getViewClasses(freshRoot), getViewClasses(replayRoot));
+    }
+
+    @Test
+    public void testDivergingPlanIsRecordedAgain() throws Exception {
+        final int resource = R.layout.inflation_plan_themed_include;
+        // Both clones share their plans, but include a different layout.
+        final LayoutInflater buttonInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanButton));
+        final LayoutInflater textViewsInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanTextViews));
+        final List<Class<?>> buttonClasses = inflateFresh(buttonInflater, resource);
+        final List<Class<?>> textViewsClasses = inflateFresh(textViewsInflater, resource);
+        assertFalse(buttonClasses.equals(textViewsClasses));
+
+        assertEquals(buttonClasses,
+                getViewClasses(buttonInflater.inflate(resource, null)));
+        assertTrue(textViewsInflater.hasInflationPlan(resource));
+
+        // The other layout diverges from the plan, which is dropped.
+        assertEquals(textViewsClasses,
+                getViewClasses(textViewsInflater.inflate(resource, null)));
+        assertFalse(buttonInflater.hasInflationPlan(resource));
+
+        // Then recorded again and replayed.
+        assertEquals(textViewsClasses,
+                getViewClasses(textViewsInflater.inflate(resource, null)));
+        assertTrue(buttonInflater.hasInflationPlan(resource));
+        assertEquals(textViewsClasses,
+                getViewClasses(textViewsInflater.inflate(resource, null)));
+        assertEquals(buttonClasses,
+                getViewClasses(buttonInflater.inflate(resource, null)));
+    }
+
+    @Test
+    public void testFactoryOfCloneIsConsultedBeforePlan() throws Exception {
+        final int resource = R.layout.inflation_plan_themed_include;
+        final LayoutInflater factoryInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanTextViews));
+        factoryInflater.setFactory2(new TextViewFactory());
+        final LayoutInflater plainInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanTextViews));
+        final List<Class<?>> factoryClasses = inflateFresh(factoryInflater, resource);
+        final List<Class<?>> plainClasses = inflateFresh(plainInflater, resource);
+        assertTrue(factoryClasses.contains(FactoryTextView.class));
+        assertFalse(plainClasses.contains(FactoryTextView.class));
+
+        // The plan recorded without the factory does not bypass the factory.
+        plainInflater.inflate(resource, null);
+        assertTrue(factoryInflater.hasInflationPlan(resource));
+        assertEquals(factoryClasses, getViewClasses(factoryInflater.inflate(resource, null)));
+        assertEquals(plainClasses, getViewClasses(plainInflater.inflate(resource, null)));
+    }
+
+    @Test
+    public void testPlanRecordedWithFactoryIsNotReusedWithoutIt() throws Exception {
+        final int resource = R.layout.inflation_plan_themed_include;
+        final LayoutInflater factoryInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanTextViews));
+        factoryInflater.setFactory2(new TextViewFactory());
+        final LayoutInflater plainInflater = mInflater.cloneInContext(
+                new ContextThemeWrapper(mContext, R.style.InflationPlanTextViews));
+        final List<Class<?>> factoryClasses = inflateFresh(factoryInflater, resource);
+        final List<Class<?>> plainClasses = inflateFresh(plainInflater, resource);
+
+        // The views created by the factory are not planned for the clone without it.
+        factoryInflater.inflate(resource, null);
+        assertTrue(plainInflater.hasInflationPlan(resource));
+        assertEquals(plainClasses, getViewClasses(plainInflater.inflate(resource, null)));
+        assertEquals(factoryClasses, getViewClasses(factoryInflater.inflate(resource, null)));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view.accessibility;
+
+import android.graphics.Rect;
+import android.os.Parcel;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.accessibility.AccessibilityNodeInfo.AccessibilityAction;
+import android.view.accessibility.AccessibilityNodeInfo.CollectionItemInfo;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class exercises the marshaling of {@link AccessibilityNodeInfoBatch}es.
+ */
+public class AccessibilityNodeInfoBatchTest extends TestCase {
+
+    private static final String CLASS_NAME = "foo.bar.baz.Test";
+    private static final String OTHER_CLASS_NAME = "foo.bar.baz.Other";
+    private static final String PACKAGE_NAME = "foo.bar.baz";
+    private static final int WINDOW_ID = 7;
+    private static final int NODE_COUNT = 20;
+
+    private static AccessibilityNodeInfo createNode(int index) {
+        final AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+        info.setSourceNodeId(AccessibilityNodeInfo.makeNodeId(index, 0), WINDOW_ID);
+        info.setPackageName(PACKAGE_NAME);
+        info.setClassName(index % 5 == 0 ? OTHER_CLASS_NAME : CLASS_NAME);
+        info.setText("Item " + index);
+        info.setBoundsInScreen(new Rect(0, index * 10, 100, index * 10 + 10));
+        info.setEnabled(true);
+        info.addAction(AccessibilityAction.ACTION_CLICK);
+        if (index % 3 == 0) {
+            // Same action as the other nodes, with a label.
+            info.removeAction(AccessibilityAction.ACTION_CLICK);
+            info.addAction(new AccessibilityAction(AccessibilityNodeInfo.ACTION_CLICK,
+                    "Open " + index));
+            info.setCollectionItemInfo(CollectionItemInfo.obtain(index, 1, 0, 1, false));
+        }
+        return info;
+    }
+
+    private static void assertNode(int index, AccessibilityNodeInfo info) {
+        assertEquals(AccessibilityNodeInfo.makeNodeId(index, 0), info.getSourceNodeId());
+        assertEquals(WINDOW_ID, info.getWindowId());
+        assertEquals(PACKAGE_NAME, info.getPackageName().toString());
+        assertEquals(index % 5 == 0 ? OTHER_CLASS_NAME : CLASS_NAME,
+                info.getClassName().toString());
+        assertEquals("Item " + index, info.getText().toString());
+        final Rect bounds = new Rect();
+        info.getBoundsInScreen(bounds);
+        assertEquals(new Rect(0, index * 10, 100, index * 10 + 10), bounds);
+        assertTrue(info.isEnabled());
+
+        final List<AccessibilityAction> actions = info.getActionList();
+        assertEquals(1, actions.size());
+        assertEquals(AccessibilityNodeInfo.ACTION_CLICK, actions.get(0).getId());
+        if (index % 3 == 0) {
+            assertEquals("Open " + index, actions.get(0).getLabel().toString());
+            assertEquals(index, info.getCollectionItemInfo().getRowIndex());
+        } else {
+            assertNull(actions.get(0).getLabel());
+            assertNull(info.getCollectionItemInfo());
+        }
+    }
+
+    /**
+     * If the nodes of a batch are marshaled/unmarshaled correctly
+     */
+    @SmallTest
+    public void testMarshaling() {
+        final AccessibilityNodeInfoBatch batch = new AccessibilityNodeInfoBatch();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            batch.add(createNode(i));
+        }
+
+        final Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        final AccessibilityNodeInfoBatch result =
+                AccessibilityNodeInfoBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(NODE_COUNT, result.size());
+        for (int i = 0; i < NODE_COUNT; i++) {
+            assertNode(i, result.get(i));
+        }
+    }
+
+    /**
+     * If a batch is smaller than the list of its nodes parceled one by one
+     */
+    @SmallTest
+    public void testMarshaledSize() {
+        final ArrayList<AccessibilityNodeInfo> list = new ArrayList<>();
+        final AccessibilityNodeInfoBatch batch = new AccessibilityNodeInfoBatch();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            list.add(createNode(i));
+            batch.add(createNode(i));
+        }
+
+        final Parcel parcel = Parcel.obtain();
+        parcel.writeTypedList(list);
+        final int listSize = parcel.dataSize();
+        parcel.setDataSize(0);
+        batch.writeToParcel(parcel, 0);
+        final int batchSize = parcel.dataSize();
+        parcel.recycle();
+
+        assertTrue("batch " + batchSize + " vs list " + listSize, batchSize < listSize);
+    }
+}
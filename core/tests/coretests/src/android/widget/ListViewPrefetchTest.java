@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Tests for the item prefetch of {@link AbsListView}.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ListViewPrefetchTest {
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 1000;
+    private static final int ROW_HEIGHT = 100;
+    private static final int ITEM_COUNT = 100;
+
+    private Context mContext;
+    private RowAdapter mAdapter;
+    private ListView mListView;
+    private final ArrayList<View> mRemovedChildren = new ArrayList<>();
+
+    /**
+     * An adapter that records the views it binds and the convert views it is given.
+     */
+    private class RowAdapter extends BaseAdapter {
+        final SparseIntArray mBindCounts = new SparseIntArray();
+        final SparseArray<View> mBoundViews = new SparseArray<>();
+        final SparseArray<View> mConvertViews = new SparseArray<>();
+
+        @Override
+        public int getCount() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return position;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            View row = convertView;
+            if (row == null) {
+                row = new View(mContext);
+                row.setLayoutParams(new AbsListView.LayoutParams(
+                        ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+            }
+            mBindCounts.put(position, mBindCounts.get(position) + 1);
+            mBoundViews.put(position, row);
+            mConvertViews.put(position, convertView);
+            return row;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mAdapter = new RowAdapter();
+        mListView = new ListView(mContext);
+        mListView.setDivider(null);
+        mListView.setItemPrefetchEnabled(true);
+        mListView.setAdapter(mAdapter);
+        mListView.setOnHierarchyChangeListener(new ViewGroup.OnHierarchyChangeListener() {
+            @Override
+            public void onChildViewAdded(View parent, View child) {
+            }
+
+            @Override
+            public void onChildViewRemoved(View parent, View child) {
+                mRemovedChildren.add(child);
+            }
+        });
+        measureAndLayout();
+    }
+
+    private void measureAndLayout() {
+        mListView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        mListView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Scrolls the list by the given distance, then prefetches as the UI thread would when idle.
+     *
+     * @return The position of the row prefetched closest to the visible rows.
+     */
+    private int scrollAndPrefetch(int distance) {
+        mListView.scrollListBy(distance);
+        final int position = distance > 0
+                ? mListView.getLastVisiblePosition() + 1
+                : mListView.getFirstVisiblePosition() - 1;
+        final int prefetchedCount = mListView.getPrefetchedItemCount();
+        mListView.prefetchItems(Long.MAX_VALUE);
+        assertTrue(mListView.getPrefetchedItemCount() > prefetchedCount);
+        return position;
+    }
+
+    @Test
+    public void testPrefetchedViewIsUsedWithoutRebinding() throws Exception {
+        final int position = scrollAndPrefetch(ROW_HEIGHT / 10);
+        final View prefetchedView = mAdapter.mBoundViews.get(position);
+        assertEquals(1, mAdapter.mBindCounts.get(position));
+
+        mListView.scrollListBy(ROW_HEIGHT);
+        assertTrue(mListView.getLastVisiblePosition() >= position);
+        assertSame(prefetchedView,
+                mListView.getChildAt(position - mListView.getFirstVisiblePosition()));
+        assertEquals(1, mAdapter.mBindCounts.get(position));
+        assertEquals(1, mListView.getPrefetchedItemUsedCount());
+    }
+
+    @Test
+    public void testDataChangeReleasesPrefetchedViews() throws Exception {
+        final int position = scrollAndPrefetch(ROW_HEIGHT / 10);
+        final View prefetchedView = mAdapter.mBoundViews.get(position);
+
+        mAdapter.notifyDataSetChanged();
+        measureAndLayout();
+        mListView.scrollListBy(ROW_HEIGHT);
+        assertTrue(mListView.getLastVisiblePosition() >= position);
+        // The view was bound to the old data, so it is bound again before it is displayed.
+        assertEquals(2, mAdapter.mBindCounts.get(position));
+        assertSame(prefetchedView, mAdapter.mConvertViews.get(position));
+        assertEquals(0, mListView.getPrefetchedItemUsedCount());
+    }
+
+    @Test
+    public void testReleasedViewsWereNeverRemoved() throws Exception {
+        final int position = scrollAndPrefetch(ROW_HEIGHT / 10);
+        final View prefetchedView = mAdapter.mBoundViews.get(position);
+
+        // Puts the prefetched view in the scrap heap, then clears the scrap heap.
+        mAdapter.notifyDataSetChanged();
+        mListView.setAdapter(null);
+        // The prefetched view was never a child of the list.
+        assertFalse(mRemovedChildren.contains(prefetchedView));
+    }
+
+    @Test
+    public void testScrollReversalReleasesPrefetchedViews() throws Exception {
+        mListView.scrollListBy(2 * ROW_HEIGHT);
+        final int position = scrollAndPrefetch(ROW_HEIGHT / 10);
+        final View prefetchedView = mAdapter.mBoundViews.get(position);
+
+        // Prefetching towards the start gives back the views obtained towards the end.
+        scrollAndPrefetch(-ROW_HEIGHT / 10);
+        mListView.scrollListBy(2 * ROW_HEIGHT);
+        assertTrue(mListView.getLastVisiblePosition() >= position);
+        assertEquals(2, mAdapter.mBindCounts.get(position));
+        assertSame(prefetchedView, mAdapter.mConvertViews.get(position));
+        assertEquals(0, mListView.getPrefetchedItemUsedCount());
+    }
+}
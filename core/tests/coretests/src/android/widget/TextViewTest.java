@@ -17,6 +17,7 @@
 package android.widget;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
@@ -32,8 +33,10 @@ import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
 import android.text.GetChars;
 import android.text.Layout;
+import android.text.PrecomputedText;
 import android.text.Selection;
 import android.text.Spannable;
+import android.util.TypedValue;
 import android.view.View;
 
 import org.junit.Before;
@@ -220,4 +223,58 @@ public class TextViewTest {
         assertTrue("Hyphenation must happen on TextView narrower than the word width",
                 hyphenationHappend);
     }
+
+    private static final String PRECOMPUTED_TEXT = "Lorem ipsum dolor sit amet, consectetur "
+            + "adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+    private static final int PRECOMPUTED_WIDTH = 300;
+
+    private TextView createPrecomputedTextView() {
+        final TextView textView = new TextView(mActivity);
+        final PrecomputedText.Params params =
+                textView.getPrecomputedTextParams(PRECOMPUTED_WIDTH);
+        textView.setPrecomputedText(PrecomputedText.create(PRECOMPUTED_TEXT, params));
+        return textView;
+    }
+
+    private static void measureAndLayout(TextView textView, int textWidth) {
+        final int width = textWidth + textView.getCompoundPaddingLeft()
+                + textView.getCompoundPaddingRight();
+        textView.measure(
+                View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        textView.layout(0, 0, width, textView.getMeasuredHeight());
+    }
+
+    @UiThreadTest
+    @Test
+    public void testPrecomputedText_layoutReusedWhenParamsMatch() {
+        mTextView = createPrecomputedTextView();
+        measureAndLayout(mTextView, PRECOMPUTED_WIDTH);
+
+        assertTrue(mTextView.isLayoutPrecomputed());
+        assertEquals(PRECOMPUTED_TEXT, mTextView.getText().toString());
+        assertTrue(mTextView.getLayout().getLineCount() > 1);
+    }
+
+    @UiThreadTest
+    @Test
+    public void testPrecomputedText_layoutNotReusedForOtherWidth() {
+        mTextView = createPrecomputedTextView();
+        measureAndLayout(mTextView, PRECOMPUTED_WIDTH / 2);
+
+        assertFalse(mTextView.isLayoutPrecomputed());
+        assertEquals(PRECOMPUTED_WIDTH / 2, mTextView.getLayout().getWidth());
+    }
+
+    @UiThreadTest
+    @Test
+    public void testPrecomputedText_layoutNotReusedAfterPaintChange() {
+        mTextView = createPrecomputedTextView();
+        measureAndLayout(mTextView, PRECOMPUTED_WIDTH);
+        assertTrue(mTextView.isLayoutPrecomputed());
+
+        mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextView.getTextSize() * 2);
+        measureAndLayout(mTextView, PRECOMPUTED_WIDTH);
+        assertFalse(mTextView.isLayoutPrecomputed());
+    }
 }
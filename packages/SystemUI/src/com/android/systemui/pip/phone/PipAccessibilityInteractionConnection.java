@@ -22,6 +22,7 @@ import android.os.Handler;
 import android.os.RemoteException;
 import android.view.MagnificationSpec;
 import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeInfoBatch;
 import android.view.accessibility.AccessibilityWindowInfo;
 import android.view.accessibility.IAccessibilityInteractionConnection;
 import android.view.accessibility.IAccessibilityInteractionConnectionCallback;
@@ -64,7 +65,8 @@ public class PipAccessibilityInteractionConnection
         try {
             callback.setFindAccessibilityNodeInfosResult(
                     (accessibilityNodeId == AccessibilityNodeInfo.ROOT_NODE_ID)
-                            ? getNodeList() : null, interactionId);
+                            ? AccessibilityNodeInfoBatch.from(getNodeList()) : null,
+                    interactionId);
         } catch (RemoteException re) {
                 /* best effort - ignore */
         }
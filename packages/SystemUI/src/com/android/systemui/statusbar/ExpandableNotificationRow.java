@@ -1213,6 +1213,10 @@ public class ExpandableNotificationRow extends ActivatableNotificationView
         mNotificationInflater.setUsesIncreasedHeadsUpHeight(use);
     }
 
+    public void setIsHeadsUpCandidate(boolean isHeadsUpCandidate) {
+        mNotificationInflater.setIsHeadsUpCandidate(isHeadsUpCandidate);
+    }
+
     public void setRemoteViewClickHandler(RemoteViews.OnClickHandler remoteViewClickHandler) {
         mNotificationInflater.setRemoteViewClickHandler(remoteViewClickHandler);
     }
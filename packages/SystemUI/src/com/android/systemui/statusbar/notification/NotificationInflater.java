@@ -37,11 +37,12 @@ import com.android.systemui.util.Assert;
 
 import java.util.HashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A utility that inflates the right kind of contentView based on the state
@@ -57,6 +58,13 @@ public class NotificationInflater {
     private static final int FLAG_REINFLATE_HEADS_UP_VIEW = 1<<2;
     private static final int FLAG_REINFLATE_PUBLIC_VIEW = 1<<3;
     private static final int FLAG_REINFLATE_AMBIENT_VIEW = 1<<4;
+
+    // Priorities of the rows on the inflation threads, the lowest first.
+    @VisibleForTesting
+    static final int PRIORITY_HEADS_UP = 0;
+    @VisibleForTesting
+    static final int PRIORITY_DEFAULT = 1;
+
     private static final InflationExecutor EXECUTOR = new InflationExecutor();
 
     private final ExpandableNotificationRow mRow;
@@ -67,6 +75,7 @@ public class NotificationInflater {
     private boolean mIsChildInGroup;
     private InflationCallback mCallback;
     private boolean mRedactAmbient;
+    private boolean mIsHeadsUpCandidate;
 
     public NotificationInflater(ExpandableNotificationRow row) {
         mRow = row;
@@ -99,6 +108,14 @@ public class NotificationInflater {
         mUsesIncreasedHeadsUpHeight = usesIncreasedHeight;
     }
 
+    /**
+     * Set whether the notification is expected to peek once inflated, in which case its views are
+     * inflated before the views of the other rows.
+     */
+    public void setIsHeadsUpCandidate(boolean isHeadsUpCandidate) {
+        mIsHeadsUpCandidate = isHeadsUpCandidate;
+    }
+
     public void setRemoteViewClickHandler(RemoteViews.OnClickHandler remoteViewClickHandler) {
         mRemoteViewClickHandler = remoteViewClickHandler;
     }
@@ -139,7 +156,7 @@ public class NotificationInflater {
         StatusBarNotification sbn = mRow.getEntry().notification;
         new AsyncInflationTask(sbn, reInflateFlags, mRow, mIsLowPriority,
                 mIsChildInGroup, mUsesIncreasedHeight, mUsesIncreasedHeadsUpHeight, mRedactAmbient,
-                mCallback, mRemoteViewClickHandler).execute();
+                mIsHeadsUpCandidate, mCallback, mRemoteViewClickHandler).execute();
     }
 
     @VisibleForTesting
@@ -148,7 +165,8 @@ public class NotificationInflater {
         InflationProgress result = createRemoteViews(reInflateFlags, builder, mIsLowPriority,
                 mIsChildInGroup, mUsesIncreasedHeight, mUsesIncreasedHeadsUpHeight,
                 mRedactAmbient, packageContext);
-        apply(result, reInflateFlags, mRow, mRedactAmbient, mRemoteViewClickHandler, null);
+        apply(result, reInflateFlags, mRow, mRedactAmbient, mIsHeadsUpCandidate,
+                mRemoteViewClickHandler, null);
         return result;
     }
 
@@ -183,10 +201,12 @@ public class NotificationInflater {
     }
 
     public static CancellationSignal apply(InflationProgress result, int reInflateFlags,
-            ExpandableNotificationRow row, boolean redactAmbient,
+            ExpandableNotificationRow row, boolean redactAmbient, boolean isHeadsUpCandidate,
             RemoteViews.OnClickHandler remoteViewClickHandler,
             @Nullable InflationCallback callback) {
         NotificationData.Entry entry = row.getEntry();
+        // All views of the row are queued together, so that the row finishes as a whole.
+        final Executor executor = EXECUTOR.forRow(getPriority(row, isHeadsUpCandidate));
         NotificationContentView privateLayout = row.getPrivateLayout();
         NotificationContentView publicLayout = row.getPublicLayout();
         final HashMap<Integer, CancellationSignal> runningInflations = new HashMap<>();
@@ -209,7 +229,7 @@ public class NotificationInflater {
                     isNewView, remoteViewClickHandler, callback, entry, privateLayout,
                     privateLayout.getContractedChild(), privateLayout.getVisibleWrapper(
                             NotificationContentView.VISIBLE_TYPE_CONTRACTED),
-                    runningInflations, applyCallback);
+                    runningInflations, executor, applyCallback);
         }
 
         flag = FLAG_REINFLATE_EXPANDED_VIEW;
@@ -233,7 +253,7 @@ public class NotificationInflater {
                         privateLayout, privateLayout.getExpandedChild(),
                         privateLayout.getVisibleWrapper(
                                 NotificationContentView.VISIBLE_TYPE_EXPANDED), runningInflations,
-                        applyCallback);
+                        executor, applyCallback);
             }
         }
 
@@ -258,7 +278,7 @@ public class NotificationInflater {
                         privateLayout, privateLayout.getHeadsUpChild(),
                         privateLayout.getVisibleWrapper(
                                 NotificationContentView.VISIBLE_TYPE_HEADSUP), runningInflations,
-                        applyCallback);
+                        executor, applyCallback);
             }
         }
 
@@ -281,7 +301,7 @@ public class NotificationInflater {
                     redactAmbient, isNewView, remoteViewClickHandler, callback, entry,
                     publicLayout, publicLayout.getContractedChild(),
                     publicLayout.getVisibleWrapper(NotificationContentView.VISIBLE_TYPE_CONTRACTED),
-                    runningInflations, applyCallback);
+                    runningInflations, executor, applyCallback);
         }
 
         flag = FLAG_REINFLATE_AMBIENT_VIEW;
@@ -304,7 +324,7 @@ public class NotificationInflater {
                     redactAmbient, isNewView, remoteViewClickHandler, callback, entry,
                     newParent, newParent.getAmbientChild(), newParent.getVisibleWrapper(
                             NotificationContentView.VISIBLE_TYPE_AMBIENT), runningInflations,
-                    applyCallback);
+                    executor, applyCallback);
         }
 
         // Let's try to finish, maybe nobody is even inflating anything
@@ -326,7 +346,7 @@ public class NotificationInflater {
             NotificationContentView parentLayout, View existingView,
             NotificationViewWrapper existingWrapper,
             final HashMap<Integer, CancellationSignal> runningInflations,
-            ApplyCallback applyCallback) {
+            Executor executor, ApplyCallback applyCallback) {
         RemoteViews newContentView = applyCallback.getRemoteView();
         RemoteViews.OnViewAppliedListener listener
                 = new RemoteViews.OnViewAppliedListener() {
@@ -375,20 +395,29 @@ public class NotificationInflater {
             cancellationSignal = newContentView.applyAsync(
                     result.packageContext,
                     parentLayout,
-                    EXECUTOR,
+                    executor,
                     listener,
                     remoteViewClickHandler);
         } else {
             cancellationSignal = newContentView.reapplyAsync(
                     result.packageContext,
                     existingView,
-                    EXECUTOR,
+                    executor,
                     listener,
                     remoteViewClickHandler);
         }
         runningInflations.put(inflationId, cancellationSignal);
     }
 
+    /**
+     * @return the priority of the inflation of the row. Rows that peek, or are about to, go first
+     * since they are shown as soon as they are inflated.
+     */
+    @VisibleForTesting
+    static int getPriority(ExpandableNotificationRow row, boolean isHeadsUpCandidate) {
+        return isHeadsUpCandidate || row.isHeadsUp() ? PRIORITY_HEADS_UP : PRIORITY_DEFAULT;
+    }
+
     private static void handleInflationError(HashMap<Integer, CancellationSignal> runningInflations,
             Exception e, StatusBarNotification notification, @Nullable InflationCallback callback) {
         Assert.isMainThread();
@@ -539,6 +568,7 @@ public class NotificationInflater {
         private final InflationCallback mCallback;
         private final boolean mUsesIncreasedHeadsUpHeight;
         private final boolean mRedactAmbient;
+        private final boolean mIsHeadsUpCandidate;
         private int mReInflateFlags;
         private ExpandableNotificationRow mRow;
         private Exception mError;
@@ -549,7 +579,7 @@ public class NotificationInflater {
                 int reInflateFlags, ExpandableNotificationRow row, boolean isLowPriority,
                 boolean isChildInGroup, boolean usesIncreasedHeight,
                 boolean usesIncreasedHeadsUpHeight, boolean redactAmbient,
-                InflationCallback callback,
+                boolean isHeadsUpCandidate, InflationCallback callback,
                 RemoteViews.OnClickHandler remoteViewClickHandler) {
             mRow = row;
             mSbn = notification;
@@ -560,6 +590,7 @@ public class NotificationInflater {
             mUsesIncreasedHeight = usesIncreasedHeight;
             mUsesIncreasedHeadsUpHeight = usesIncreasedHeadsUpHeight;
             mRedactAmbient = redactAmbient;
+            mIsHeadsUpCandidate = isHeadsUpCandidate;
             mRemoteViewClickHandler = remoteViewClickHandler;
             mCallback = callback;
             NotificationData.Entry entry = row.getEntry();
@@ -604,7 +635,7 @@ public class NotificationInflater {
         protected void onPostExecute(InflationProgress result) {
             if (mError == null) {
                 mCancellationSignal = apply(result, mReInflateFlags, mRow, mRedactAmbient,
-                        mRemoteViewClickHandler, this);
+                        mIsHeadsUpCandidate, mRemoteViewClickHandler, this);
             } else {
                 handleError(mError);
             }
@@ -675,9 +706,11 @@ public class NotificationInflater {
 
     /**
      * A custom executor that allows more tasks to be queued. Default values are copied from
-     * AsyncTask
+     * AsyncTask. Queued tasks run by the priority of their row, then row by row in the order the
+     * rows were queued.
       */
-    private static class InflationExecutor implements Executor {
+    @VisibleForTesting
+    static class InflationExecutor implements Executor {
         private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
         // We want at least 2 threads and at most 4 threads in the core pool,
         // preferring to have 1 less than the CPU count to avoid saturating
@@ -695,17 +728,65 @@ public class NotificationInflater {
         };
 
         private final ThreadPoolExecutor mExecutor;
+        private final AtomicLong mSequence = new AtomicLong();
 
         private InflationExecutor() {
+            this(CORE_POOL_SIZE);
+        }
+
+        @VisibleForTesting
+        InflationExecutor(int corePoolSize) {
+            // The queue is unbounded, so only the core threads are ever started.
             mExecutor = new ThreadPoolExecutor(
-                    CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<>(), sThreadFactory);
+                    corePoolSize, Math.max(corePoolSize, MAXIMUM_POOL_SIZE), KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new PriorityBlockingQueue<>(), sThreadFactory);
             mExecutor.allowCoreThreadTimeOut(true);
         }
 
         @Override
         public void execute(Runnable runnable) {
-            mExecutor.execute(runnable);
+            forRow(PRIORITY_DEFAULT).execute(runnable);
+        }
+
+        /**
+         * @return an executor queueing the tasks of a new row with the given priority. The tasks
+         * of the row run after the tasks of the rows queued before it with the same priority.
+         */
+        Executor forRow(int priority) {
+            final long rowSequence = mSequence.getAndIncrement();
+            return runnable -> mExecutor.execute(new PrioritizedRunnable(runnable, priority,
+                    rowSequence, mSequence.getAndIncrement()));
+        }
+    }
+
+    private static class PrioritizedRunnable implements Runnable,
+            Comparable<PrioritizedRunnable> {
+        private final Runnable mRunnable;
+        private final int mPriority;
+        private final long mRowSequence;
+        private final long mSequence;
+
+        PrioritizedRunnable(Runnable runnable, int priority, long rowSequence, long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mRowSequence = rowSequence;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedRunnable other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(mPriority, other.mPriority);
+            }
+            if (mRowSequence != other.mRowSequence) {
+                return Long.compare(mRowSequence, other.mRowSequence);
+            }
+            return Long.compare(mSequence, other.mSequence);
         }
     }
 }
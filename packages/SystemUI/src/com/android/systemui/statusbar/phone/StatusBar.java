@@ -7805,6 +7805,8 @@ public class StatusBar extends SystemUI implements DemoMode,
         boolean useIncreasedHeadsUp = useIncreasedCollapsedHeight && mPanelExpanded;
         row.setUseIncreasedCollapsedHeight(useIncreasedCollapsedHeight);
         row.setUseIncreasedHeadsUpHeight(useIncreasedHeadsUp);
+        // Rows that are about to peek are inflated before the others.
+        row.setIsHeadsUpCandidate(shouldPeek(entry, sbn));
         row.updateNotification(entry);
     }
 
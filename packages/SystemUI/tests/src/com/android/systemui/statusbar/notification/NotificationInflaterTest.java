@@ -18,12 +18,14 @@ package com.android.systemui.statusbar.notification;
 
 import static com.android.systemui.statusbar.notification.NotificationInflater.FLAG_REINFLATE_ALL;
 
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.app.Notification;
 import android.content.Context;
+import android.os.AsyncTask;
 import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
@@ -49,7 +51,11 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 
@@ -171,7 +177,7 @@ public class NotificationInflaterTest extends SysuiTestCase {
                         countDownLatch.countDown();
                     }
                 }, mRow.getEntry(), mRow.getPrivateLayout(), null, null, new HashMap<>(),
-                new NotificationInflater.ApplyCallback() {
+                AsyncTask.THREAD_POOL_EXECUTOR, new NotificationInflater.ApplyCallback() {
                     @Override
                     public void setResultView(View v) {
                     }
@@ -213,6 +219,54 @@ public class NotificationInflaterTest extends SysuiTestCase {
                 NotificationInflater.canReapplyRemoteView(mediaView, decoratedMediaView));
     }
 
+    @Test
+    public void testExecutorRunsRowsByPriority() throws Exception {
+        NotificationInflater.InflationExecutor executor =
+                new NotificationInflater.InflationExecutor(1 /* corePoolSize */);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Executor row1 = executor.forRow(NotificationInflater.PRIORITY_DEFAULT);
+        Executor row2 = executor.forRow(NotificationInflater.PRIORITY_DEFAULT);
+        Executor headsUpRow = executor.forRow(NotificationInflater.PRIORITY_HEADS_UP);
+        for (String view : new String[] {"contracted", "expanded"}) {
+            row2.execute(() -> {
+                order.add("row2 " + view);
+                done.countDown();
+            });
+            row1.execute(() -> {
+                order.add("row1 " + view);
+                done.countDown();
+            });
+            headsUpRow.execute(() -> {
+                order.add("headsUp " + view);
+                done.countDown();
+            });
+        }
+        blocker.countDown();
+        done.await();
+        Assert.assertEquals(Arrays.asList("headsUp contracted", "headsUp expanded",
+                "row1 contracted", "row1 expanded", "row2 contracted", "row2 expanded"), order);
+    }
+
+    @Test
+    public void testHeadsUpCandidateInflatedFirst() throws Exception {
+        Assert.assertEquals(NotificationInflater.PRIORITY_DEFAULT,
+                NotificationInflater.getPriority(mRow, false /* isHeadsUpCandidate */));
+        Assert.assertEquals(NotificationInflater.PRIORITY_HEADS_UP,
+                NotificationInflater.getPriority(mRow, true /* isHeadsUpCandidate */));
+        doReturn(true).when(mRow).isHeadsUp();
+        Assert.assertEquals(NotificationInflater.PRIORITY_HEADS_UP,
+                NotificationInflater.getPriority(mRow, false /* isHeadsUpCandidate */));
+    }
+
     public static void runThenWaitForInflation(Runnable block,
             NotificationInflater inflater) throws Exception {
         runThenWaitForInflation(block, false /* expectingException */, inflater);
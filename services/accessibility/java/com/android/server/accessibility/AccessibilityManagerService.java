@@ -2677,6 +2677,15 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
         final SparseArray<AccessibilityEvent> mPendingEvents =
             new SparseArray<>();
 
+        // the content change events pending to be dispatched to this service
+        final PendingContentChangedEvents mPendingContentChangedEvents =
+                new PendingContentChangedEvents();
+
+        // Events received for this service, merged into a pending one, and sent to it.
+        int mReceivedEventCount;
+        int mCoalescedEventCount;
+        int mDeliveredEventCount;
+
         boolean mWasConnectedAndDied;
 
         /** Whether this service relies on its {@link AccessibilityCache} being up to date */
@@ -3648,6 +3657,9 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
                 pw.append(", eventTypes="
                         + AccessibilityEvent.eventTypeToString(mEventTypes));
                 pw.append(", notificationTimeout=" + mNotificationTimeout);
+                pw.append(", events[received=" + mReceivedEventCount
+                        + ", coalesced=" + mCoalescedEventCount
+                        + ", delivered=" + mDeliveredEventCount + "]");
                 pw.append("]");
             }
         }
@@ -3739,6 +3751,11 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
         public void notifyAccessibilityEvent(AccessibilityEvent event, boolean serviceWantsEvent) {
             synchronized (mLock) {
                 final int eventType = event.getEventType();
+                mReceivedEventCount++;
+                if (mPendingContentChangedEvents.merge(event, serviceWantsEvent)) {
+                    mCoalescedEventCount++;
+                    return;
+                }
                 // Make a copy since during dispatch it is possible the event to
                 // be modified to remove its source if the receiving service does
                 // not have permission to access the window content.
@@ -3752,10 +3769,12 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
                     if (oldEvent != null) {
                         mEventDispatchHandler.removeMessages(eventType);
                         oldEvent.recycle();
+                        mCoalescedEventCount++;
                     }
                     message = mEventDispatchHandler.obtainMessage(eventType);
                 } else {
                     // Send all messages, bypassing mPendingEvents
+                    mPendingContentChangedEvents.add(newEvent, serviceWantsEvent);
                     message = mEventDispatchHandler.obtainMessage(eventType, newEvent);
                 }
                 message.arg1 = serviceWantsEvent ? 1 : 0;
@@ -3820,6 +3839,11 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
             synchronized (mLock) {
                 listener = mServiceInterface;
 
+                // The event can no longer take merged changes.
+                if (event != null) {
+                    mPendingContentChangedEvents.remove(event, serviceWantsEvent);
+                }
+
                 // If the service died/was disabled while the message for dispatching
                 // the accessibility event was propagating the listener may be null.
                 if (listener == null) {
@@ -3862,6 +3886,9 @@ public class AccessibilityManagerService extends IAccessibilityManager.Stub {
 
             try {
                 listener.onAccessibilityEvent(event, serviceWantsEvent);
+                synchronized (mLock) {
+                    mDeliveredEventCount++;
+                }
                 if (DEBUG) {
                     Slog.i(LOG_TAG, "Event " + event + " sent to " + listener);
                 }
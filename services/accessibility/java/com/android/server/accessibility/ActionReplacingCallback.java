@@ -22,11 +22,11 @@ import android.util.Slog;
 import android.view.MagnificationSpec;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.view.accessibility.AccessibilityNodeInfo.AccessibilityAction;
+import android.view.accessibility.AccessibilityNodeInfoBatch;
 import android.view.accessibility.IAccessibilityInteractionConnection;
 import android.view.accessibility.IAccessibilityInteractionConnectionCallback;
 import com.android.internal.annotations.GuardedBy;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -109,7 +109,7 @@ public class ActionReplacingCallback extends IAccessibilityInteractionConnection
     }
 
     @Override
-    public void setFindAccessibilityNodeInfosResult(List<AccessibilityNodeInfo> infos,
+    public void setFindAccessibilityNodeInfosResult(AccessibilityNodeInfoBatch infos,
             int interactionId) {
         boolean callbackForSingleNode;
         boolean callbackForMultipleNodes;
@@ -167,7 +167,7 @@ public class ActionReplacingCallback extends IAccessibilityInteractionConnection
     }
 
     private void replaceInfosActionsAndCallService() {
-        final List<AccessibilityNodeInfo> nodesToReturn;
+        final AccessibilityNodeInfoBatch nodesToReturn;
         synchronized (mLock) {
             if (mDone) {
                 if (DEBUG) {
@@ -182,7 +182,7 @@ public class ActionReplacingCallback extends IAccessibilityInteractionConnection
             }
             recycleReplaceActionNodesLocked();
             nodesToReturn = (mNodesFromOriginalWindow == null)
-                    ? null : new ArrayList<>(mNodesFromOriginalWindow);
+                    ? null : new AccessibilityNodeInfoBatch(mNodesFromOriginalWindow);
             mDone = true;
         }
         try {
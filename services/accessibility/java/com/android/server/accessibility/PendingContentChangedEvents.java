@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import java.util.ArrayList;
+
+/**
+ * The {@link AccessibilityEvent#TYPE_WINDOW_CONTENT_CHANGED} events queued for an accessibility
+ * service and not yet dispatched to it. A content change of a node that already has one queued is
+ * merged into the queued event instead of being queued again.
+ *
+ * Events the service wants and events only its cache wants are kept apart, so that merging never
+ * changes how an event is delivered.
+ *
+ * This class is not thread-safe, its callers synchronize on the lock of the
+ * {@link AccessibilityManagerService}.
+ */
+class PendingContentChangedEvents {
+    private final ArrayList<AccessibilityEvent> mServiceEvents = new ArrayList<>();
+    private final ArrayList<AccessibilityEvent> mCacheEvents = new ArrayList<>();
+
+    /**
+     * Adds an event that was queued for dispatch.
+     *
+     * @param serviceWantsEvent Whether the event is for the service, as opposed to its cache only.
+     */
+    void add(AccessibilityEvent event, boolean serviceWantsEvent) {
+        if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+            getEvents(serviceWantsEvent).add(event);
+        }
+    }
+
+    /**
+     * Removes an event that is being dispatched, after which it can no longer take merged changes.
+     */
+    void remove(AccessibilityEvent event, boolean serviceWantsEvent) {
+        getEvents(serviceWantsEvent).remove(event);
+    }
+
+    /**
+     * Merges a content change event into the queued one of the same node, if any. The queued
+     * event keeps its place in the queue and reports the changes of both, which the service
+     * resolves by fetching the node again. Content changes of different nodes are left alone as
+     * the hierarchy of the window is not known here.
+     *
+     * @return Whether the event was merged and must not be dispatched.
+     */
+    boolean merge(AccessibilityEvent event, boolean serviceWantsEvent) {
+        if (event.getEventType() != AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+            return false;
+        }
+        final ArrayList<AccessibilityEvent> events = getEvents(serviceWantsEvent);
+        for (int i = events.size() - 1; i >= 0; i--) {
+            final AccessibilityEvent pendingEvent = events.get(i);
+            if (pendingEvent.getWindowId() == event.getWindowId()
+                    && pendingEvent.getSourceNodeId() == event.getSourceNodeId()) {
+                pendingEvent.setSealed(false);
+                pendingEvent.setContentChangeTypes(pendingEvent.getContentChangeTypes()
+                        | event.getContentChangeTypes());
+                pendingEvent.setEventTime(event.getEventTime());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ArrayList<AccessibilityEvent> getEvents(boolean serviceWantsEvent) {
+        return serviceWantsEvent ? mServiceEvents : mCacheEvents;
+    }
+}
@@ -101,6 +101,7 @@ import android.security.Credentials;
 import android.security.KeyStore;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.LocalLog;
 import android.util.LocalLog.ReadOnlyLocalLog;
 import android.util.Log;
@@ -136,6 +137,7 @@ import com.android.server.connectivity.NetworkDiagnostics;
 import com.android.server.connectivity.NetworkMonitor;
 import com.android.server.connectivity.NetworkNotificationManager;
 import com.android.server.connectivity.NetworkNotificationManager.NotificationType;
+import com.android.server.connectivity.NetworkRequestIndex;
 import com.android.server.connectivity.PacManager;
 import com.android.server.connectivity.PermissionMonitor;
 import com.android.server.connectivity.Tethering;
@@ -206,6 +208,13 @@ public class ConnectivityService extends IConnectivityManager.Stub
     @VisibleForTesting
     protected int mLingerDelayMs;  // Can't be final, or test subclass constructors can't change it.
 
+    // Default to a 50ms window to coalesce the capabilities and link properties callbacks of
+    // each request. Modifiable only for testing, 0 disables coalescing.
+    private static final String CALLBACK_COALESCE_PROPERTY = "persist.netmon.callback_coalesce";
+    private static final int DEFAULT_CALLBACK_COALESCE_MS = 50;
+    @VisibleForTesting
+    protected int mCallbackCoalesceMs;
+
     // How long to delay to removal of a pending intent based request.
     // See Settings.Secure.CONNECTIVITY_RELEASE_PENDING_INTENT_DELAY_MS
     private final int mReleasePendingIntentDelayMs;
@@ -395,6 +404,13 @@ public class ConnectivityService extends IConnectivityManager.Stub
      */
     private static final int EVENT_REVALIDATE_NETWORK = 36;
 
+    /**
+     * used to send the capabilities and link properties callbacks of a request held back during
+     * the coalescing window.
+     * obj = NetworkRequestInfo
+     */
+    private static final int EVENT_FLUSH_COALESCED_CALLBACKS = 37;
+
     private static String eventName(int what) {
         return sMagicDecoderRing.get(what, Integer.toString(what));
     }
@@ -702,6 +718,7 @@ public class ConnectivityService extends IConnectivityManager.Stub
         mDefaultRequest = createInternetRequestForTransport(-1, NetworkRequest.Type.REQUEST);
         NetworkRequestInfo defaultNRI = new NetworkRequestInfo(null, mDefaultRequest, new Binder());
         mNetworkRequests.put(mDefaultRequest, defaultNRI);
+        mNetworkRequestIndex.add(mDefaultRequest.networkCapabilities, defaultNRI);
         mNetworkRequestInfoLogs.log("REGISTER " + defaultNRI);
 
         mDefaultMobileDataRequest = createInternetRequestForTransport(
@@ -716,6 +733,8 @@ public class ConnectivityService extends IConnectivityManager.Stub
                 Settings.Secure.CONNECTIVITY_RELEASE_PENDING_INTENT_DELAY_MS, 5_000);
 
         mLingerDelayMs = mSystemProperties.getInt(LINGER_DELAY_PROPERTY, DEFAULT_LINGER_DELAY_MS);
+        mCallbackCoalesceMs = mSystemProperties.getInt(CALLBACK_COALESCE_PROPERTY,
+                DEFAULT_CALLBACK_COALESCE_MS);
 
         mContext = checkNotNull(context, "missing Context");
         mNetd = checkNotNull(netManager, "missing INetworkManagementService");
@@ -1953,6 +1972,16 @@ public class ConnectivityService extends IConnectivityManager.Stub
         pw.println();
         pw.decreaseIndent();
 
+        pw.println(String.format(
+                "Rematches: count=%d avg=%dus max=%dus requestsEvaluated=%d requestsSkipped=%d",
+                mRematchCount, mRematchCount != 0 ? mRematchTotalNanos / mRematchCount / 1000 : 0,
+                mRematchMaxNanos / 1000, mRematchRequestsEvaluated, mRematchRequestsSkipped));
+        pw.println(String.format(
+                "Coalesced callbacks: windowMs=%d held=%d merged=%d dropped=%d pending=%d",
+                mCallbackCoalesceMs, mCoalescedCallbacksHeld, mCoalescedCallbacksMerged,
+                mCoalescedCallbacksDropped, mCoalescedCallbacks.size()));
+        pw.println();
+
         mLegacyTypeTracker.dump(pw);
 
         pw.println();
@@ -2389,6 +2418,7 @@ public class ConnectivityService extends IConnectivityManager.Stub
 
     private void handleRegisterNetworkRequest(NetworkRequestInfo nri) {
         mNetworkRequests.put(nri.request, nri);
+        mNetworkRequestIndex.add(nri.request.networkCapabilities, nri);
         mNetworkRequestInfoLogs.log("REGISTER " + nri);
         if (nri.request.isListen()) {
             for (NetworkAgentInfo network : mNetworkAgentInfos.values()) {
@@ -2505,7 +2535,9 @@ public class ConnectivityService extends IConnectivityManager.Stub
 
     private void handleRemoveNetworkRequest(final NetworkRequestInfo nri) {
         nri.unlinkDeathRecipient();
+        dropCoalescedCallbacks(nri);
         mNetworkRequests.remove(nri.request);
+        mNetworkRequestIndex.remove(nri.request.networkCapabilities, nri);
         synchronized (mUidToNetworkRequestCount) {
             int requests = mUidToNetworkRequestCount.get(nri.mUid, 0);
             if (requests < 1) {
@@ -2894,6 +2926,10 @@ public class ConnectivityService extends IConnectivityManager.Stub
                     handleReportNetworkConnectivity((Network) msg.obj, msg.arg1, toBool(msg.arg2));
                     break;
                 }
+                case EVENT_FLUSH_COALESCED_CALLBACKS: {
+                    handleFlushCoalescedCallbacks((NetworkRequestInfo) msg.obj);
+                    break;
+                }
             }
         }
     }
@@ -3967,6 +4003,40 @@ public class ConnectivityService extends IConnectivityManager.Stub
     private final HashMap<NetworkRequest, NetworkRequestInfo> mNetworkRequests =
             new HashMap<NetworkRequest, NetworkRequestInfo>();
 
+    // Capabilities and link properties callbacks coalesced by CoalescedCallbacks.
+    private static final int COALESCED_CAP_CHANGED = 1 << 0;
+    private static final int COALESCED_IP_CHANGED = 1 << 1;
+
+    /**
+     * The capabilities and link properties callbacks of a request during a coalescing window.
+     * The first callback of each type and network is sent right away, the next ones are held
+     * back and sent once at the end of the window, with the state of the network at that time.
+     */
+    private static class CoalescedCallbacks {
+        // Callbacks sent during the window, by network.
+        final ArrayMap<NetworkAgentInfo, Integer> sent = new ArrayMap<>();
+        // Callbacks held back until the end of the window, by network.
+        final ArrayMap<NetworkAgentInfo, Integer> held = new ArrayMap<>();
+    }
+
+    // Requests within a coalescing window.
+    private final ArrayMap<NetworkRequestInfo, CoalescedCallbacks> mCoalescedCallbacks =
+            new ArrayMap<>();
+    private long mCoalescedCallbacksHeld;
+    private long mCoalescedCallbacksMerged;
+    private long mCoalescedCallbacksDropped;
+    // The requests of mNetworkRequests, by the transports they accept.
+    private final NetworkRequestIndex<NetworkRequestInfo> mNetworkRequestIndex =
+            new NetworkRequestIndex<>();
+
+    // Stats of the rematches of networks and requests, for dumpsys.
+    private int mRematchDepth;
+    private long mRematchCount;
+    private long mRematchTotalNanos;
+    private long mRematchMaxNanos;
+    private long mRematchRequestsEvaluated;
+    private long mRematchRequestsSkipped;
+
     private static final int MAX_NETWORK_REQUESTS_PER_UID = 100;
     // Map from UID to number of NetworkRequests that UID has filed.
     @GuardedBy("mUidToNetworkRequestCount")
@@ -4782,11 +4852,121 @@ public class ConnectivityService extends IConnectivityManager.Stub
         releasePendingNetworkRequestWithDelay(pendingIntent);
     }
 
-    private static void callCallbackForRequest(NetworkRequestInfo nri,
+    private void callCallbackForRequest(NetworkRequestInfo nri,
             NetworkAgentInfo networkAgent, int notificationType, int arg1) {
         if (nri.messenger == null) {
             return;  // Default request has no msgr
         }
+        final int coalescedBit = getCoalescedCallbackBit(notificationType);
+        if (coalescedBit == 0) {
+            // Deliver the changes held back before anything else happens to the request.
+            flushCoalescedCallbacks(nri);
+        } else if (holdCallback(nri, networkAgent, coalescedBit)) {
+            return;
+        }
+        sendCallbackForRequest(nri, networkAgent, notificationType, arg1);
+    }
+
+    private static int getCoalescedCallbackBit(int notificationType) {
+        switch (notificationType) {
+            case ConnectivityManager.CALLBACK_CAP_CHANGED:
+                return COALESCED_CAP_CHANGED;
+            case ConnectivityManager.CALLBACK_IP_CHANGED:
+                return COALESCED_IP_CHANGED;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Holds back a capabilities or link properties callback if the same callback was sent for
+     * the request and network within the coalescing window. Otherwise starts a window.
+     *
+     * @return whether the callback was held back.
+     */
+    private boolean holdCallback(NetworkRequestInfo nri, NetworkAgentInfo nai, int coalescedBit) {
+        if (mCallbackCoalesceMs <= 0) {
+            return false;
+        }
+        CoalescedCallbacks callbacks = mCoalescedCallbacks.get(nri);
+        if (callbacks == null) {
+            callbacks = new CoalescedCallbacks();
+            mCoalescedCallbacks.put(nri, callbacks);
+            mHandler.sendMessageDelayed(
+                    mHandler.obtainMessage(EVENT_FLUSH_COALESCED_CALLBACKS, nri),
+                    mCallbackCoalesceMs);
+        }
+        final int sent = callbacks.sent.getOrDefault(nai, 0);
+        if ((sent & coalescedBit) == 0) {
+            callbacks.sent.put(nai, sent | coalescedBit);
+            return false;
+        }
+        final int held = callbacks.held.getOrDefault(nai, 0);
+        if ((held & coalescedBit) != 0) {
+            // The callback sent at the end of the window carries the latest state.
+            mCoalescedCallbacksMerged++;
+        }
+        callbacks.held.put(nai, held | coalescedBit);
+        mCoalescedCallbacksHeld++;
+        return true;
+    }
+
+    /**
+     * Sends the callbacks held back during the window that just ended. The window is extended
+     * while changes keep coming.
+     */
+    private void handleFlushCoalescedCallbacks(NetworkRequestInfo nri) {
+        final CoalescedCallbacks callbacks = mCoalescedCallbacks.remove(nri);
+        if (callbacks == null || callbacks.held.isEmpty()) {
+            return;
+        }
+        final CoalescedCallbacks next = new CoalescedCallbacks();
+        next.sent.putAll(callbacks.held);
+        mCoalescedCallbacks.put(nri, next);
+        mHandler.sendMessageDelayed(mHandler.obtainMessage(EVENT_FLUSH_COALESCED_CALLBACKS, nri),
+                mCallbackCoalesceMs);
+        sendHeldCallbacks(nri, callbacks);
+    }
+
+    /**
+     * Sends the callbacks held back for a request now and ends its window.
+     */
+    private void flushCoalescedCallbacks(NetworkRequestInfo nri) {
+        final CoalescedCallbacks callbacks = mCoalescedCallbacks.remove(nri);
+        if (callbacks != null) {
+            mHandler.removeMessages(EVENT_FLUSH_COALESCED_CALLBACKS, nri);
+            sendHeldCallbacks(nri, callbacks);
+        }
+    }
+
+    private void dropCoalescedCallbacks(NetworkRequestInfo nri) {
+        if (mCoalescedCallbacks.remove(nri) != null) {
+            mHandler.removeMessages(EVENT_FLUSH_COALESCED_CALLBACKS, nri);
+        }
+    }
+
+    private void sendHeldCallbacks(NetworkRequestInfo nri, CoalescedCallbacks callbacks) {
+        for (int i = 0; i < callbacks.held.size(); i++) {
+            final NetworkAgentInfo nai = callbacks.held.keyAt(i);
+            final int held = callbacks.held.valueAt(i);
+            if (!nai.isSatisfyingRequest(nri.request.requestId)) {
+                // The app was told the network is lost or is losing it, the changes no longer
+                // matter.
+                mCoalescedCallbacksDropped += Integer.bitCount(held);
+                continue;
+            }
+            // Same order as when a network becomes available.
+            if ((held & COALESCED_CAP_CHANGED) != 0) {
+                sendCallbackForRequest(nri, nai, ConnectivityManager.CALLBACK_CAP_CHANGED, 0);
+            }
+            if ((held & COALESCED_IP_CHANGED) != 0) {
+                sendCallbackForRequest(nri, nai, ConnectivityManager.CALLBACK_IP_CHANGED, 0);
+            }
+        }
+    }
+
+    private static void sendCallbackForRequest(NetworkRequestInfo nri,
+            NetworkAgentInfo networkAgent, int notificationType, int arg1) {
         Bundle bundle = new Bundle();
         // TODO: check if defensive copies of data is needed.
         putParcelable(bundle, new NetworkRequest(nri.request));
@@ -4876,8 +5056,10 @@ public class ConnectivityService extends IConnectivityManager.Stub
     }
 
     private void processListenRequests(NetworkAgentInfo nai, boolean capabilitiesChanged) {
+        final ArrayList<NetworkRequestInfo> requests = getRequestsToRematch(nai);
+
         // For consistency with previous behaviour, send onLost callbacks before onAvailable.
-        for (NetworkRequestInfo nri : mNetworkRequests.values()) {
+        for (NetworkRequestInfo nri : requests) {
             NetworkRequest nr = nri.request;
             if (!nr.isListen()) continue;
             if (nai.isSatisfyingRequest(nr.requestId) && !nai.satisfies(nr)) {
@@ -4890,7 +5072,7 @@ public class ConnectivityService extends IConnectivityManager.Stub
             notifyNetworkCallbacks(nai, ConnectivityManager.CALLBACK_CAP_CHANGED);
         }
 
-        for (NetworkRequestInfo nri : mNetworkRequests.values()) {
+        for (NetworkRequestInfo nri : requests) {
             NetworkRequest nr = nri.request;
             if (!nr.isListen()) continue;
             if (nai.satisfies(nr) && !nai.isSatisfyingRequest(nr.requestId)) {
@@ -4900,6 +5082,27 @@ public class ConnectivityService extends IConnectivityManager.Stub
         }
     }
 
+    /**
+     * Returns the requests that a network may satisfy, and the requests it is satisfying, which
+     * are the only requests whose matching with the network can change.
+     */
+    private ArrayList<NetworkRequestInfo> getRequestsToRematch(NetworkAgentInfo nai) {
+        final NetworkCapabilities nc = nai.networkCapabilities;
+        final ArrayList<NetworkRequestInfo> requests = mNetworkRequestIndex.getCandidates(nc);
+        // Transports are immutable once a network is connected, but a network that lost one
+        // anyway must still be removed from the requests of that transport that it satisfies.
+        for (int i = 0; i < nai.numNetworkRequests(); i++) {
+            final NetworkRequestInfo nri = mNetworkRequests.get(nai.requestAt(i));
+            if (nri != null
+                    && !NetworkRequestIndex.isCandidate(nri.request.networkCapabilities, nc)) {
+                requests.add(nri);
+            }
+        }
+        mRematchRequestsEvaluated += requests.size();
+        mRematchRequestsSkipped += Math.max(0, mNetworkRequests.size() - requests.size());
+        return requests;
+    }
+
     // Handles a network appearing or improving its score.
     //
     // - Evaluates all current NetworkRequests that can be
@@ -4930,6 +5133,22 @@ public class ConnectivityService extends IConnectivityManager.Stub
     private void rematchNetworkAndRequests(NetworkAgentInfo newNetwork,
             ReapUnvalidatedNetworks reapUnvalidatedNetworks, long now) {
         if (!newNetwork.everConnected) return;
+        // Rematches can nest through updateCapabilities(), only time the outermost one.
+        final long startNanos = (mRematchDepth++ == 0) ? System.nanoTime() : 0;
+        try {
+            rematchNetworkAndRequestsInner(newNetwork, reapUnvalidatedNetworks, now);
+        } finally {
+            if (--mRematchDepth == 0) {
+                final long durationNanos = System.nanoTime() - startNanos;
+                mRematchCount++;
+                mRematchTotalNanos += durationNanos;
+                mRematchMaxNanos = Math.max(mRematchMaxNanos, durationNanos);
+            }
+        }
+    }
+
+    private void rematchNetworkAndRequestsInner(NetworkAgentInfo newNetwork,
+            ReapUnvalidatedNetworks reapUnvalidatedNetworks, long now) {
         boolean keep = newNetwork.isVPN();
         boolean isNewDefault = false;
         NetworkAgentInfo oldDefaultNetwork = null;
@@ -4945,7 +5164,7 @@ public class ConnectivityService extends IConnectivityManager.Stub
         ArrayList<NetworkRequestInfo> addedRequests = new ArrayList<NetworkRequestInfo>();
         NetworkCapabilities nc = newNetwork.networkCapabilities;
         if (VDBG) log(" network has: " + nc);
-        for (NetworkRequestInfo nri : mNetworkRequests.values()) {
+        for (NetworkRequestInfo nri : getRequestsToRematch(newNetwork)) {
             // Process requests in the first pass and listens in the second pass. This allows us to
             // change a network's capabilities depending on which requests it has. This is only
             // correct if the change in capabilities doesn't affect whether the network satisfies
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.connectivity;
+
+import static android.net.NetworkCapabilities.MAX_TRANSPORT;
+
+import android.net.NetworkCapabilities;
+import android.util.ArraySet;
+
+import java.util.ArrayList;
+
+/**
+ * Index of the network requests by the transports they accept, so that rematching a network
+ * only evaluates the requests it can satisfy: a request that names transports is only
+ * satisfied by networks that have one of them.
+ *
+ * This class is not thread-safe and all its methods must be called on the ConnectivityService
+ * handler thread.
+ *
+ * @param <T> The information kept about each request.
+ */
+public class NetworkRequestIndex<T> {
+    // Requests that do not name any transport, satisfied by networks of any transport.
+    private final ArraySet<T> mAnyTransport = new ArraySet<>();
+    // Requests that name each transport.
+    private final ArrayList<ArraySet<T>> mByTransport = new ArrayList<>(MAX_TRANSPORT + 1);
+
+    public NetworkRequestIndex() {
+        for (int i = 0; i <= MAX_TRANSPORT; i++) {
+            mByTransport.add(new ArraySet<>());
+        }
+    }
+
+    /**
+     * Adds a request to the index.
+     *
+     * @param requestCapabilities The capabilities of the request, which must not change while
+     *        it is indexed.
+     */
+    public void add(NetworkCapabilities requestCapabilities, T request) {
+        final int[] transports = requestCapabilities.getTransportTypes();
+        if (transports.length == 0) {
+            mAnyTransport.add(request);
+            return;
+        }
+        for (int transport : transports) {
+            mByTransport.get(transport).add(request);
+        }
+    }
+
+    /**
+     * Removes a request from the index.
+     *
+     * @param requestCapabilities The capabilities the request was added with.
+     */
+    public void remove(NetworkCapabilities requestCapabilities, T request) {
+        final int[] transports = requestCapabilities.getTransportTypes();
+        if (transports.length == 0) {
+            mAnyTransport.remove(request);
+            return;
+        }
+        for (int transport : transports) {
+            mByTransport.get(transport).remove(request);
+        }
+    }
+
+    /**
+     * Returns the requests that a network with the given capabilities may satisfy, each once.
+     * The caller owns the returned list.
+     */
+    public ArrayList<T> getCandidates(NetworkCapabilities networkCapabilities) {
+        final int[] transports = networkCapabilities.getTransportTypes();
+        int size = mAnyTransport.size();
+        for (int transport : transports) {
+            size += mByTransport.get(transport).size();
+        }
+        final ArrayList<T> candidates = new ArrayList<>(size);
+        candidates.addAll(mAnyTransport);
+        if (transports.length == 1) {
+            candidates.addAll(mByTransport.get(transports[0]));
+        } else if (transports.length > 1) {
+            // Requests that name several of the transports of the network are in several sets.
+            final ArraySet<T> transportCandidates = new ArraySet<>();
+            for (int transport : transports) {
+                transportCandidates.addAll(mByTransport.get(transport));
+            }
+            candidates.addAll(transportCandidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns whether a request is among the candidates of a network, i.e. whether it names no
+     * transport or one of the transports of the network.
+     */
+    public static boolean isCandidate(NetworkCapabilities requestCapabilities,
+            NetworkCapabilities networkCapabilities) {
+        final int[] transports = requestCapabilities.getTransportTypes();
+        if (transports.length == 0) {
+            return true;
+        }
+        for (int transport : transports) {
+            if (networkCapabilities.hasTransport(transport)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -60,6 +60,7 @@ import android.util.SparseArray;
 import android.util.SparseIntArray;
 
 import com.android.internal.annotations.GuardedBy;
+import com.android.internal.os.BackgroundThread;
 import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.DumpUtils;
 import com.android.internal.util.IndentingPrintWriter;
@@ -131,6 +132,16 @@ public final class ContentService extends IContentService.Stub {
 
     private final ObserverNode mRootNode = new ObserverNode("");
 
+    private final ObserverChangeBatcher mChangeBatcher = new ObserverChangeBatcher(
+            BackgroundThread.getHandler(), observer -> {
+                synchronized (mRootNode) {
+                    mRootNode.removeObserverLocked(observer);
+                }
+            });
+
+    // Observers to notify, reused by the binder threads from one notification to the next.
+    private static final ThreadLocal<ArrayList<ObserverCall>> sObserverCalls = new ThreadLocal<>();
+
     private SyncManager mSyncManager = null;
     private final Object mSyncManagerLock = new Object();
 
@@ -240,6 +251,7 @@ public final class ContentService extends IContentService.Stub {
                 pw.print(" Total number of nodes: "); pw.println(counts[0]);
                 pw.print(" Total number of observers: "); pw.println(counts[1]);
             }
+            mChangeBatcher.dump(pw);
 
             synchronized (mCache) {
                 pw.println();
@@ -415,8 +427,14 @@ public final class ContentService extends IContentService.Stub {
         // This makes it so that future permission checks will be in the context of this
         // process rather than the caller's process. We will restore this before returning.
         long identityToken = clearCallingIdentity();
+        // Taken from the thread while in use, as an observer in this process may notify again.
+        ArrayList<ObserverCall> calls = sObserverCalls.get();
+        if (calls == null) {
+            calls = new ArrayList<>();
+        } else {
+            sObserverCalls.set(null);
+        }
         try {
-            ArrayList<ObserverCall> calls = new ArrayList<ObserverCall>();
             synchronized (mRootNode) {
                 mRootNode.collectObserversLocked(uri, 0, observer, observerWantsSelfNotifications,
                         flags, userHandle, calls);
@@ -425,7 +443,7 @@ public final class ContentService extends IContentService.Stub {
             for (int i=0; i<numCalls; i++) {
                 ObserverCall oc = calls.get(i);
                 try {
-                    oc.mObserver.onChange(oc.mSelfChange, uri, userHandle);
+                    mChangeBatcher.dispatchChange(oc.mObserver, oc.mSelfChange, uri, userHandle);
                     if (DEBUG) Slog.d(TAG, "Notified " + oc.mObserver + " of " + "update at "
                             + uri);
                 } catch (RemoteException ex) {
@@ -459,6 +477,9 @@ public final class ContentService extends IContentService.Stub {
                 invalidateCacheLocked(userHandle, providerPackageName, uri);
             }
         } finally {
+            // Don't hold on to the observers until the next notification.
+            calls.clear();
+            sObserverCalls.set(calls);
             restoreCallingIdentity(identityToken);
         }
     }
@@ -1293,7 +1314,9 @@ public final class ContentService extends IContentService.Stub {
         public static final int DELETE_TYPE = 2;
 
         private String mName;
-        private ArrayList<ObserverNode> mChildren = new ArrayList<ObserverNode>();
+        // Children by name, so that finding the child of a segment does not compare it with the
+        // name of every child of a node, e.g. with the observers of each row of a table.
+        private final ArrayMap<String, ObserverNode> mChildren = new ArrayMap<>();
         private ArrayList<ObserverEntry> mObservers = new ArrayList<ObserverEntry>();
 
         public ObserverNode(String name) {
@@ -1325,7 +1348,7 @@ public final class ContentService extends IContentService.Stub {
                 }
                 for (int i=0; i<mChildren.size(); i++) {
                     counts[0]++;
-                    mChildren.get(i).dumpLocked(fd, pw, args, innerName, prefix,
+                    mChildren.valueAt(i).dumpLocked(fd, pw, args, innerName, prefix,
                             counts, pidCounts);
                 }
             }
@@ -1373,36 +1396,26 @@ public final class ContentService extends IContentService.Stub {
             if (segment == null) {
                 throw new IllegalArgumentException("Invalid Uri (" + uri + ") used for observer");
             }
-            int N = mChildren.size();
-            for (int i = 0; i < N; i++) {
-                ObserverNode node = mChildren.get(i);
-                if (node.mName.equals(segment)) {
-                    node.addObserverLocked(uri, index + 1, observer, notifyForDescendants,
-                            observersLock, uid, pid, userHandle);
-                    return;
-                }
+            ObserverNode node = mChildren.get(segment);
+            if (node == null) {
+                // No child found, create one
+                node = new ObserverNode(segment);
+                mChildren.put(segment, node);
             }
-
-            // No child found, create one
-            ObserverNode node = new ObserverNode(segment);
-            mChildren.add(node);
             node.addObserverLocked(uri, index + 1, observer, notifyForDescendants,
                     observersLock, uid, pid, userHandle);
         }
 
         public boolean removeObserverLocked(IContentObserver observer) {
-            int size = mChildren.size();
-            for (int i = 0; i < size; i++) {
-                boolean empty = mChildren.get(i).removeObserverLocked(observer);
+            for (int i = mChildren.size() - 1; i >= 0; i--) {
+                boolean empty = mChildren.valueAt(i).removeObserverLocked(observer);
                 if (empty) {
-                    mChildren.remove(i);
-                    i--;
-                    size--;
+                    mChildren.removeAt(i);
                 }
             }
 
             IBinder observerBinder = observer.asBinder();
-            size = mObservers.size();
+            int size = mObservers.size();
             for (int i = 0; i < size; i++) {
                 ObserverEntry entry = mObservers.get(i);
                 if (entry.observer.asBinder() == observerBinder) {
@@ -1489,16 +1502,18 @@ public final class ContentService extends IContentService.Stub {
                         flags, targetUserHandle, calls);
             }
 
-            int N = mChildren.size();
-            for (int i = 0; i < N; i++) {
-                ObserverNode node = mChildren.get(i);
-                if (segment == null || node.mName.equals(segment)) {
+            if (segment != null) {
+                final ObserverNode node = mChildren.get(segment);
+                if (node != null) {
                     // We found the child,
                     node.collectObserversLocked(uri, index + 1, observer,
                             observerWantsSelfNotifications, flags, targetUserHandle, calls);
-                    if (segment != null) {
-                        break;
-                    }
+                }
+            } else {
+                final int N = mChildren.size();
+                for (int i = 0; i < N; i++) {
+                    mChildren.valueAt(i).collectObserversLocked(uri, index + 1, observer,
+                            observerWantsSelfNotifications, flags, targetUserHandle, calls);
                 }
             }
         }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.content;
+
+import android.database.IContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * Delivers content changes to the observers. The first change for an observer is delivered right
+ * away. The changes that follow within the batching window are merged, each URI once, and
+ * delivered together when the window is over, so that a provider notifying a change per row of
+ * a bulk insert does not cost a binder call per row and observer.
+ */
+final class ObserverChangeBatcher {
+    private static final String TAG = "ObserverChangeBatcher";
+
+    static final long BATCH_WINDOW_MS = 50;
+
+    /**
+     * Called when a batch could not be delivered because the observer died.
+     */
+    interface DeadObserverCallback {
+        void onObserverDied(IContentObserver observer);
+    }
+
+    private final Handler mHandler;
+    private final long mWindowMs;
+    private final DeadObserverCallback mDeadObserverCallback;
+
+    private final Object mLock = new Object();
+    // Observers that were notified within the last window, with the changes since then.
+    @GuardedBy("mLock")
+    private final ArrayMap<IBinder, Batch> mBatches = new ArrayMap<>();
+    @GuardedBy("mLock")
+    private long mReceivedCount;
+    @GuardedBy("mLock")
+    private long mSuppressedCount;
+    @GuardedBy("mLock")
+    private long mDeliveredCount;
+    @GuardedBy("mLock")
+    private long mBatchCallCount;
+
+    ObserverChangeBatcher(Handler handler, DeadObserverCallback deadObserverCallback) {
+        this(handler, BATCH_WINDOW_MS, deadObserverCallback);
+    }
+
+    @VisibleForTesting
+    ObserverChangeBatcher(Handler handler, long windowMs,
+            DeadObserverCallback deadObserverCallback) {
+        mHandler = handler;
+        mWindowMs = windowMs;
+        mDeadObserverCallback = deadObserverCallback;
+    }
+
+    /**
+     * Delivers a change to an observer now if it was not notified within the window, or adds it
+     * to the changes delivered at the end of the window otherwise.
+     *
+     * @throws RemoteException if the change was delivered right away and the observer died.
+     */
+    void dispatchChange(IContentObserver observer, boolean selfChange, Uri uri, int userId)
+            throws RemoteException {
+        final IBinder binder = observer.asBinder();
+        synchronized (mLock) {
+            mReceivedCount++;
+            final Batch batch = mBatches.get(binder);
+            if (batch != null) {
+                if (!batch.add(new Change(uri, selfChange, userId))) {
+                    mSuppressedCount++;
+                }
+                return;
+            }
+            mBatches.put(binder, new Batch(observer));
+            mDeliveredCount++;
+        }
+        mHandler.postDelayed(() -> flushBatch(binder), mWindowMs);
+        observer.onChange(selfChange, uri, userId);
+    }
+
+    /**
+     * Delivers the changes merged for an observer during the window that just ended. The window
+     * is extended while changes keep coming.
+     */
+    @VisibleForTesting
+    void flushBatch(IBinder binder) {
+        final Batch batch;
+        synchronized (mLock) {
+            batch = mBatches.get(binder);
+            if (batch == null) {
+                return;
+            }
+            if (batch.mChanges.isEmpty()) {
+                mBatches.remove(binder);
+                return;
+            }
+            mBatches.put(binder, new Batch(batch.mObserver));
+            mDeliveredCount += batch.mChanges.size();
+        }
+        mHandler.postDelayed(() -> flushBatch(binder), mWindowMs);
+
+        final ArrayList<Change> changes = batch.mChanges;
+        try {
+            // One call for each run of changes with the same self change and user.
+            int start = 0;
+            while (start < changes.size()) {
+                final Change first = changes.get(start);
+                int end = start + 1;
+                while (end < changes.size() && changes.get(end).selfChange == first.selfChange
+                        && changes.get(end).userId == first.userId) {
+                    end++;
+                }
+                if (end - start == 1) {
+                    batch.mObserver.onChange(first.selfChange, first.uri, first.userId);
+                } else {
+                    final Uri[] uris = new Uri[end - start];
+                    for (int i = start; i < end; i++) {
+                        uris[i - start] = changes.get(i).uri;
+                    }
+                    batch.mObserver.onChangeBatch(first.selfChange, uris, first.userId);
+                }
+                synchronized (mLock) {
+                    mBatchCallCount++;
+                }
+                start = end;
+            }
+        } catch (RemoteException e) {
+            Log.w(TAG, "Found dead observer, removing");
+            synchronized (mLock) {
+                mBatches.remove(binder);
+            }
+            mDeadObserverCallback.onObserverDied(batch.mObserver);
+        }
+    }
+
+    void dump(PrintWriter pw) {
+        synchronized (mLock) {
+            pw.print(" Observer changes: received="); pw.print(mReceivedCount);
+            pw.print(" suppressed="); pw.print(mSuppressedCount);
+            pw.print(" delivered="); pw.print(mDeliveredCount);
+            pw.print(" batchCalls="); pw.print(mBatchCallCount);
+            pw.print(" batchingObservers="); pw.println(mBatches.size());
+        }
+    }
+
+    @VisibleForTesting
+    long getSuppressedCount() {
+        synchronized (mLock) {
+            return mSuppressedCount;
+        }
+    }
+
+    private static final class Batch {
+        final IContentObserver mObserver;
+        // The changes in the order they were notified, and the same changes for lookups.
+        final ArrayList<Change> mChanges = new ArrayList<>();
+        final ArraySet<Change> mChangeSet = new ArraySet<>();
+
+        Batch(IContentObserver observer) {
+            mObserver = observer;
+        }
+
+        /**
+         * @return false if the same change was already pending.
+         */
+        boolean add(Change change) {
+            if (!mChangeSet.add(change)) {
+                return false;
+            }
+            mChanges.add(change);
+            return true;
+        }
+    }
+
+    private static final class Change {
+        final Uri uri;
+        final boolean selfChange;
+        final int userId;
+
+        Change(Uri uri, boolean selfChange, int userId) {
+            this.uri = uri;
+            this.selfChange = selfChange;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Change)) {
+                return false;
+            }
+            final Change other = (Change) o;
+            return selfChange == other.selfChange && userId == other.userId
+                    && Objects.equals(uri, other.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(uri, selfChange, userId);
+        }
+    }
+}
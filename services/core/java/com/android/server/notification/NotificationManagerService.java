@@ -144,7 +144,9 @@ import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.AtomicFile;
+import android.util.IntArray;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.util.Slog;
 import android.util.SparseArray;
 import android.util.Xml;
@@ -265,6 +267,12 @@ public class NotificationManagerService extends SystemService {
 
     private static final long DELAY_FOR_ASSISTANT_TIME = 100;
 
+    // Updates of a package enqueuing notifications faster than this fraction of the maximum
+    // enqueue rate are coalesced: an update still waiting to be posted is replaced by a newer
+    // update of the same notification, and updates are posted at most once per window.
+    private static final float UPDATE_COALESCE_RATE_FRACTION = 0.5f;
+    private static final long UPDATE_COALESCE_WINDOW_MS = 200;
+
     private static final String ACTION_NOTIFICATION_TIMEOUT =
             NotificationManagerService.class.getSimpleName() + ".TIMEOUT";
     private static final int REQUEST_CODE_TIMEOUT = 1;
@@ -329,6 +337,12 @@ public class NotificationManagerService extends SystemService {
     final ArrayList<NotificationRecord> mEnqueuedNotifications = new ArrayList<>();
     @GuardedBy("mNotificationLock")
     final ArrayMap<Integer, ArrayMap<String, String>> mAutobundledSummaries = new ArrayMap<>();
+    // Ranking updates sent to the listeners that were built for them, or shared with another
+    // listener seeing the same notifications.
+    @GuardedBy("mNotificationLock")
+    private int mRankingUpdatesBuilt;
+    @GuardedBy("mNotificationLock")
+    private int mRankingUpdatesShared;
     final ArrayList<ToastRecord> mToastQueue = new ArrayList<>();
     final ArrayMap<String, NotificationRecord> mSummaryByGroupKey = new ArrayMap<>();
 
@@ -3337,6 +3351,8 @@ public class NotificationManagerService extends SystemService {
                     pw.println("  mCallState=" + callStateToString(mCallState));
                     pw.println("  mSystemReady=" + mSystemReady);
                     pw.println("  mMaxPackageEnqueueRate=" + mMaxPackageEnqueueRate);
+                    pw.println("  mRankingUpdatesBuilt=" + mRankingUpdatesBuilt
+                            + " mRankingUpdatesShared=" + mRankingUpdatesShared);
                 }
                 pw.println("  mArchive=" + mArchive.toString());
                 Iterator<StatusBarNotification> iter = mArchive.descendingIterator();
@@ -3875,11 +3891,26 @@ public class NotificationManagerService extends SystemService {
 
                 mRankingHelper.extractSignals(r);
 
+                final boolean coalesce = old != null && shouldCoalesceUpdatesLocked(pkg);
+                long delay = 0;
+
                 // tell the assistant service about the notification
                 if (mAssistants.isEnabled()) {
                     mAssistants.onNotificationEnqueued(r);
-                    mHandler.postDelayed(new PostNotificationRunnable(r.getKey()),
-                            DELAY_FOR_ASSISTANT_TIME);
+                    delay = DELAY_FOR_ASSISTANT_TIME;
+                }
+
+                if (coalesce) {
+                    // The post already scheduled for the pending update will post this one.
+                    if (replacePendingUpdateLocked(r)) {
+                        return;
+                    }
+                    delay = Math.max(delay, old.getPostedElapsedMs() + UPDATE_COALESCE_WINDOW_MS
+                            - SystemClock.elapsedRealtime());
+                }
+
+                if (delay > 0) {
+                    mHandler.postDelayed(new PostNotificationRunnable(r.getKey()), delay);
                 } else {
                     mHandler.post(new PostNotificationRunnable(r.getKey()));
                 }
@@ -3929,6 +3960,7 @@ public class NotificationManagerService extends SystemService {
                     }
 
                     mNotificationsByKey.put(n.getKey(), r);
+                    r.setPostedElapsedMs(SystemClock.elapsedRealtime());
 
                     // Ensure if this is a foreground service that the proper additional
                     // flags are set.
@@ -3986,6 +4018,33 @@ public class NotificationManagerService extends SystemService {
         }
     }
 
+    @GuardedBy("mNotificationLock")
+    private boolean shouldCoalesceUpdatesLocked(String pkg) {
+        return mUsageStats.getAppEnqueueRate(pkg)
+                > mMaxPackageEnqueueRate * UPDATE_COALESCE_RATE_FRACTION;
+    }
+
+    /**
+     * Removes the update of the same notification enqueued before {@code r} and not posted yet,
+     * if any, so that the post scheduled for it posts {@code r} instead.
+     *
+     * @return whether an update was replaced.
+     */
+    @GuardedBy("mNotificationLock")
+    private boolean replacePendingUpdateLocked(NotificationRecord r) {
+        final String key = r.getKey();
+        for (int i = mEnqueuedNotifications.size() - 1; i >= 0; i--) {
+            final NotificationRecord enqueued = mEnqueuedNotifications.get(i);
+            if (enqueued != r && Objects.equals(key, enqueued.getKey())) {
+                mEnqueuedNotifications.remove(i);
+                mUsageStats.registerCoalescedUpdate(enqueued);
+                if (DBG) Slog.d(TAG, "Coalesced pending update of " + key);
+                return true;
+            }
+        }
+        return false;
+    }
+
     @GuardedBy("mNotificationLock")
     private boolean notificationIsAnnoying(String key, String pkg) {
         if (key == null
@@ -5396,6 +5455,7 @@ public class NotificationManagerService extends SystemService {
     }
 
     private boolean isVisibleToListener(StatusBarNotification sbn, ManagedServiceInfo listener) {
+        // Only depends on the user of the notification, which RankingUpdateCache relies on.
         if (!listener.enabledAndUserMatches(sbn.getUserId())) {
             return false;
         }
@@ -5415,6 +5475,54 @@ public class NotificationManagerService extends SystemService {
         }
     }
 
+    /**
+     * Ranking updates of the listeners notified about the same change. The update only depends
+     * on which users' notifications the listener can see, so listeners seeing the same users
+     * share one update instead of each getting the whole ranking rebuilt.
+     */
+    @VisibleForTesting
+    class RankingUpdateCache {
+        // The users of the notifications, the visibility of which tells the updates apart.
+        private final IntArray mUserIds = new IntArray();
+        private final LongSparseArray<NotificationRankingUpdate> mUpdates =
+                new LongSparseArray<>();
+
+        @GuardedBy("mNotificationLock")
+        RankingUpdateCache() {
+            final int N = mNotificationList.size();
+            for (int i = 0; i < N; i++) {
+                final int userId = mNotificationList.get(i).sbn.getUserId();
+                if (mUserIds.indexOf(userId) < 0) {
+                    mUserIds.add(userId);
+                }
+            }
+        }
+
+        @GuardedBy("mNotificationLock")
+        NotificationRankingUpdate forListener(ManagedServiceInfo info) {
+            final int userCount = mUserIds.size();
+            if (userCount > Long.SIZE) {
+                mRankingUpdatesBuilt++;
+                return makeRankingUpdateLocked(info);
+            }
+            long visibleUsers = 0;
+            for (int i = 0; i < userCount; i++) {
+                if (info.enabledAndUserMatches(mUserIds.get(i))) {
+                    visibleUsers |= 1L << i;
+                }
+            }
+            NotificationRankingUpdate update = mUpdates.get(visibleUsers);
+            if (update == null) {
+                mRankingUpdatesBuilt++;
+                update = makeRankingUpdateLocked(info);
+                mUpdates.put(visibleUsers, update);
+            } else {
+                mRankingUpdatesShared++;
+            }
+            return update;
+        }
+    }
+
     private class TrimCache {
         StatusBarNotification heavy;
         StatusBarNotification sbnClone;
@@ -5629,6 +5737,7 @@ public class NotificationManagerService extends SystemService {
         public void notifyPostedLocked(StatusBarNotification sbn, StatusBarNotification oldSbn) {
             // Lazily initialized snapshots of the notification.
             TrimCache trimCache = new TrimCache(sbn);
+            RankingUpdateCache rankingUpdates = new RankingUpdateCache();
 
             for (final ManagedServiceInfo info : getServices()) {
                 boolean sbnVisible = isVisibleToListener(sbn, info);
@@ -5637,7 +5746,7 @@ public class NotificationManagerService extends SystemService {
                 if (!oldSbnVisible && !sbnVisible) {
                     continue;
                 }
-                final NotificationRankingUpdate update = makeRankingUpdateLocked(info);
+                final NotificationRankingUpdate update = rankingUpdates.forListener(info);
 
                 // This notification became invisible -> remove the old one.
                 if (oldSbnVisible && !sbnVisible) {
@@ -5670,11 +5779,12 @@ public class NotificationManagerService extends SystemService {
             // NOTE: this copy is lightweight: it doesn't include heavyweight parts of the
             // notification
             final StatusBarNotification sbnLight = sbn.cloneLight();
+            final RankingUpdateCache rankingUpdates = new RankingUpdateCache();
             for (final ManagedServiceInfo info : getServices()) {
                 if (!isVisibleToListener(sbn, info)) {
                     continue;
                 }
-                final NotificationRankingUpdate update = makeRankingUpdateLocked(info);
+                final NotificationRankingUpdate update = rankingUpdates.forListener(info);
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
@@ -5689,11 +5799,12 @@ public class NotificationManagerService extends SystemService {
          */
         @GuardedBy("mNotificationLock")
         public void notifyRankingUpdateLocked() {
+            final RankingUpdateCache rankingUpdates = new RankingUpdateCache();
             for (final ManagedServiceInfo serviceInfo : getServices()) {
                 if (!serviceInfo.isEnabledForCurrentProfiles()) {
                     continue;
                 }
-                final NotificationRankingUpdate update = makeRankingUpdateLocked(serviceInfo);
+                final NotificationRankingUpdate update = rankingUpdates.forListener(serviceInfo);
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
@@ -86,6 +86,8 @@ public final class NotificationRecord {
     boolean isCanceled;
     /** Whether the notification was seen by the user via one of the notification listeners. */
     boolean mIsSeen;
+    /** Scratch mark of {@link RankingHelper#sort}, to find the records it already placed. */
+    int mSortMark;
 
     // These members are used by NotificationSignalExtractors
     // to communicate with the ranking module.
@@ -108,6 +110,9 @@ public final class NotificationRecord {
     // The most recent update time, or the creation time if no updates.
     private long mUpdateTimeMs;
 
+    // The elapsed realtime at which this record was handed to the listeners, or 0 if never.
+    private long mPostedElapsedMs;
+
     // Is this record an update of an old record?
     public boolean isUpdate;
     private int mPackagePriority;
@@ -501,6 +506,7 @@ public final class NotificationRecord {
         pw.println(prefix + "mCreationTimeMs=" + mCreationTimeMs);
         pw.println(prefix + "mVisibleSinceMs=" + mVisibleSinceMs);
         pw.println(prefix + "mUpdateTimeMs=" + mUpdateTimeMs);
+        pw.println(prefix + "mPostedElapsedMs=" + mPostedElapsedMs);
         pw.println(prefix + "mSuppressedVisualEffects= " + mSuppressedVisualEffects);
         if (mPreChannelsNotification) {
             pw.println(prefix + String.format("defaults=0x%08x flags=0x%08x",
@@ -727,6 +733,21 @@ public final class NotificationRecord {
         return (int) (now - mUpdateTimeMs);
     }
 
+    /**
+     * Records the elapsed realtime at which this record was handed to the listeners.
+     */
+    public void setPostedElapsedMs(long postedElapsedMs) {
+        mPostedElapsedMs = postedElapsedMs;
+    }
+
+    /**
+     * @returns the elapsed realtime at which this record was handed to the listeners, or 0 if
+     * it was not posted yet.
+     */
+    public long getPostedElapsedMs() {
+        return mPostedElapsedMs;
+    }
+
     /**
      * @param now this current time in milliseconds.
      * @returns the number of milliseconds since the the first post, ignoring updates.
@@ -174,6 +174,18 @@ public class NotificationUsageStats {
         }
     }
 
+    /**
+     * Called when an update of a notification was replaced by a newer update before being
+     * posted.
+     */
+    public synchronized void registerCoalescedUpdate(NotificationRecord notification) {
+        AggregatedStats[] aggregatedStatsArray = getAggregatedStatsLocked(notification);
+        for (AggregatedStats stats : aggregatedStatsArray) {
+            stats.numCoalescedUpdates++;
+        }
+        releaseAggregatedStatsLocked(aggregatedStatsArray);
+    }
+
     /**
      * Called when the originating app removed the notification programmatically.
      */
@@ -372,6 +384,7 @@ public class NotificationUsageStats {
         public int numEnqueuedByApp;
         public int numPostedByApp;
         public int numUpdatedByApp;
+        public int numCoalescedUpdates;
         public int numRemovedByApp;
         public int numPeopleCacheHit;
         public int numPeopleCacheMiss;;
@@ -502,6 +515,8 @@ public class NotificationUsageStats {
             maybeCount("note_enqueued", (numEnqueuedByApp - previous.numEnqueuedByApp));
             maybeCount("note_post", (numPostedByApp - previous.numPostedByApp));
             maybeCount("note_update", (numUpdatedByApp - previous.numUpdatedByApp));
+            maybeCount("note_update_coalesced",
+                    (numCoalescedUpdates - previous.numCoalescedUpdates));
             maybeCount("note_remove", (numRemovedByApp - previous.numRemovedByApp));
             maybeCount("note_with_people", (numWithValidPeople - previous.numWithValidPeople));
             maybeCount("note_with_stars", (numWithStaredPeople - previous.numWithStaredPeople));
@@ -535,6 +550,7 @@ public class NotificationUsageStats {
             previous.numEnqueuedByApp = numEnqueuedByApp;
             previous.numPostedByApp = numPostedByApp;
             previous.numUpdatedByApp = numUpdatedByApp;
+            previous.numCoalescedUpdates = numCoalescedUpdates;
             previous.numRemovedByApp = numRemovedByApp;
             previous.numPeopleCacheHit = numPeopleCacheHit;
             previous.numPeopleCacheMiss = numPeopleCacheMiss;
@@ -615,6 +631,8 @@ public class NotificationUsageStats {
             output.append(indentPlusTwo);
             output.append("numUpdatedByApp=").append(numUpdatedByApp).append(",\n");
             output.append(indentPlusTwo);
+            output.append("numCoalescedUpdates=").append(numCoalescedUpdates).append(",\n");
+            output.append(indentPlusTwo);
             output.append("numRemovedByApp=").append(numRemovedByApp).append(",\n");
             output.append(indentPlusTwo);
             output.append("numPeopleCacheHit=").append(numPeopleCacheHit).append(",\n");
@@ -681,6 +699,7 @@ public class NotificationUsageStats {
             maybePut(dump, "numEnqueuedByApp", numEnqueuedByApp);
             maybePut(dump, "numPostedByApp", numPostedByApp);
             maybePut(dump, "numUpdatedByApp", numUpdatedByApp);
+            maybePut(dump, "numCoalescedUpdates", numCoalescedUpdates);
             maybePut(dump, "numRemovedByApp", numRemovedByApp);
             maybePut(dump, "numPeopleCacheHit", numPeopleCacheHit);
             maybePut(dump, "numPeopleCacheMiss", numPeopleCacheMiss);
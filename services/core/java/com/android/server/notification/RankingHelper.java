@@ -33,6 +33,7 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.ParceledListSlice;
 import android.metrics.LogMaker;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings.Secure;
 import android.service.notification.NotificationListenerService.Ranking;
@@ -90,6 +91,16 @@ public class RankingHelper implements RankingConfig {
 
     private final ArrayMap<String, Record> mRecords = new ArrayMap<>(); // pkg|uid => Record
     private final ArrayMap<String, NotificationRecord> mProxyByGroupTmp = new ArrayMap<>();
+    // The records in the order of the preliminary comparator as of the last sort. Sorting from
+    // that order only moves the records that were added or changed since.
+    private final ArrayList<NotificationRecord> mPreliminaryOrder = new ArrayList<>();
+    // Marks of the current sort, see sortPreliminaryLocked().
+    private int mSortMark;
+    private final StringBuilder mGlobalSortKeyBuilder = new StringBuilder();
+    // Statistics of the sort passes, for dumpsys.
+    private int mSortCount;
+    private long mSortTotalNanos;
+    private long mSortMaxNanos;
     private final ArrayMap<String, Record> mRestoredWithoutUids = new ArrayMap<>(); // pkg => Record
 
     private final Context mContext;
@@ -419,16 +430,17 @@ public class RankingHelper implements RankingConfig {
     }
 
     public void sort(ArrayList<NotificationRecord> notificationList) {
+        final long startTime = SystemClock.elapsedRealtimeNanos();
         final int N = notificationList.size();
         // clear global sort keys
         for (int i = N - 1; i >= 0; i--) {
             notificationList.get(i).setGlobalSortKey(null);
         }
 
-        // rank each record individually
-        Collections.sort(notificationList, mPreliminaryComparator);
-
         synchronized (mProxyByGroupTmp) {
+            // rank each record individually
+            sortPreliminaryLocked(notificationList);
+
             // record individual ranking result and nominate proxies for each group
             for (int i = N - 1; i >= 0; i--) {
                 final NotificationRecord record = notificationList.get(i);
@@ -461,21 +473,87 @@ public class RankingHelper implements RankingConfig {
                 }
 
                 boolean isGroupSummary = record.getNotification().isGroupSummary();
-                record.setGlobalSortKey(
-                        String.format("intrsv=%c:grnk=0x%04x:gsmry=%c:%s:rnk=0x%04x",
-                        record.isRecentlyIntrusive()
-                                && record.getImportance() > NotificationManager.IMPORTANCE_MIN
-                                ? '0' : '1',
-                        groupProxy.getAuthoritativeRank(),
-                        isGroupSummary ? '0' : '1',
-                        groupSortKeyPortion,
-                        record.getAuthoritativeRank()));
+                // Same as String.format("intrsv=%c:grnk=0x%04x:gsmry=%c:%s:rnk=0x%04x", ...),
+                // which is too slow to run for every record on every update.
+                final StringBuilder key = mGlobalSortKeyBuilder;
+                key.setLength(0);
+                key.append("intrsv=").append(record.isRecentlyIntrusive()
+                        && record.getImportance() > NotificationManager.IMPORTANCE_MIN
+                        ? '0' : '1');
+                key.append(":grnk=0x");
+                appendHex4(key, groupProxy.getAuthoritativeRank());
+                key.append(":gsmry=").append(isGroupSummary ? '0' : '1');
+                key.append(':').append(groupSortKeyPortion);
+                key.append(":rnk=0x");
+                appendHex4(key, record.getAuthoritativeRank());
+                record.setGlobalSortKey(key.toString());
             }
             mProxyByGroupTmp.clear();
         }
 
         // Do a second ranking pass, using group proxies
         Collections.sort(notificationList, mFinalComparator);
+
+        final long duration = SystemClock.elapsedRealtimeNanos() - startTime;
+        synchronized (mProxyByGroupTmp) {
+            mSortCount++;
+            mSortTotalNanos += duration;
+            mSortMaxNanos = Math.max(mSortMaxNanos, duration);
+        }
+    }
+
+    /**
+     * Sorts the list with the preliminary comparator. The sort starts from the order of the
+     * previous sort, in which only added and changed records are out of place, and which the
+     * merge sort of {@link Collections#sort} goes through in close to linear time.
+     */
+    private void sortPreliminaryLocked(ArrayList<NotificationRecord> notificationList) {
+        final ArrayList<NotificationRecord> order = mPreliminaryOrder;
+        final int N = notificationList.size();
+        // Records of the list are marked as listed, then as placed once they are in the order.
+        mSortMark += 2;
+        final int listed = mSortMark;
+        final int placed = listed + 1;
+        for (int i = 0; i < N; i++) {
+            notificationList.get(i).mSortMark = listed;
+        }
+
+        // Keep the records that are still there in their previous order, then add the others.
+        int kept = 0;
+        final int orderSize = order.size();
+        for (int i = 0; i < orderSize; i++) {
+            final NotificationRecord record = order.get(i);
+            if (record.mSortMark == listed) {
+                record.mSortMark = placed;
+                order.set(kept++, record);
+            }
+        }
+        order.subList(kept, orderSize).clear();
+        for (int i = 0; i < N; i++) {
+            final NotificationRecord record = notificationList.get(i);
+            if (record.mSortMark == listed) {
+                record.mSortMark = placed;
+                order.add(record);
+            }
+        }
+        if (order.size() != N) {
+            // The list holds a record more than once.
+            order.clear();
+            order.addAll(notificationList);
+        }
+
+        Collections.sort(order, mPreliminaryComparator);
+        for (int i = 0; i < N; i++) {
+            notificationList.set(i, order.get(i));
+        }
+    }
+
+    private static void appendHex4(StringBuilder sb, int value) {
+        final String hex = Integer.toHexString(value);
+        for (int i = hex.length(); i < 4; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
     }
 
     public int indexOf(ArrayList<NotificationRecord> notificationList, NotificationRecord target) {
@@ -867,6 +945,16 @@ public class RankingHelper implements RankingConfig {
                 pw.print("  ");
                 pw.println(mSignalExtractors[i]);
             }
+            synchronized (mProxyByGroupTmp) {
+                pw.print(prefix);
+                pw.print("sort passes: count=");
+                pw.print(mSortCount);
+                pw.print(" avg=");
+                pw.print(mSortCount > 0 ? mSortTotalNanos / mSortCount / 1000 : 0);
+                pw.print("us max=");
+                pw.print(mSortMaxNanos / 1000);
+                pw.println("us");
+            }
         }
         if (filter == null) {
             pw.print(prefix);
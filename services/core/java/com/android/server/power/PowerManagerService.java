@@ -168,14 +168,25 @@ public final class PowerManagerService extends SystemService
     private static final int DIRTY_VR_MODE_CHANGED = 1 << 13;
 
     // Summarizes the state of all active wakelocks.
-    private static final int WAKE_LOCK_CPU = 1 << 0;
-    private static final int WAKE_LOCK_SCREEN_BRIGHT = 1 << 1;
-    private static final int WAKE_LOCK_SCREEN_DIM = 1 << 2;
-    private static final int WAKE_LOCK_BUTTON_BRIGHT = 1 << 3;
-    private static final int WAKE_LOCK_PROXIMITY_SCREEN_OFF = 1 << 4;
-    private static final int WAKE_LOCK_STAY_AWAKE = 1 << 5; // only set if already awake
-    private static final int WAKE_LOCK_DOZE = 1 << 6;
-    private static final int WAKE_LOCK_DRAW = 1 << 7;
+    static final int WAKE_LOCK_CPU = 1 << 0;
+    static final int WAKE_LOCK_SCREEN_BRIGHT = 1 << 1;
+    static final int WAKE_LOCK_SCREEN_DIM = 1 << 2;
+    static final int WAKE_LOCK_BUTTON_BRIGHT = 1 << 3;
+    static final int WAKE_LOCK_PROXIMITY_SCREEN_OFF = 1 << 4;
+    static final int WAKE_LOCK_STAY_AWAKE = 1 << 5; // only set if already awake
+    static final int WAKE_LOCK_DOZE = 1 << 6;
+    static final int WAKE_LOCK_DRAW = 1 << 7;
+    private static final int WAKE_LOCK_SUMMARY_BIT_COUNT = 8;
+
+    // Phases of updatePowerStateLocked(), for the timing stats.
+    private static final int UPDATE_PHASE_BASIC = 0;
+    private static final int UPDATE_PHASE_WAKEFULNESS = 1;
+    private static final int UPDATE_PHASE_DISPLAY = 2;
+    private static final int UPDATE_PHASE_DREAM = 3;
+    private static final int UPDATE_PHASE_NOTIFY = 4;
+    private static final int UPDATE_PHASE_SUSPEND_BLOCKER = 5;
+    private static final String[] UPDATE_PHASE_NAMES = {
+            "basic", "wakefulness", "display", "dream", "notify", "suspendBlocker" };
 
     // Summarizes the user activity state.
     private static final int USER_ACTIVITY_SCREEN_BRIGHT = 1 << 0;
@@ -288,6 +299,16 @@ public final class PowerManagerService extends SystemService
     // A bitfield that summarizes the state of all active wakelocks.
     private int mWakeLockSummary;
 
+    // Number of wake locks contributing each WAKE_LOCK_* bit before the current wakefulness is
+    // taken into account, maintained as wake locks come and go so that the summary can be
+    // updated without going over all of them.
+    private final int[] mWakeLockSummaryBitCounts = new int[WAKE_LOCK_SUMMARY_BIT_COUNT];
+
+    // Time spent in each phase of updatePowerStateLocked(), for the dump.
+    private final long[] mUpdatePhaseTotalNanos = new long[UPDATE_PHASE_NAMES.length];
+    private final long[] mUpdatePhaseMaxNanos = new long[UPDATE_PHASE_NAMES.length];
+    private long mUpdatePowerStateCount;
+
     // Have we scheduled a message to check for long wake locks?  This is when we will check.
     private long mNotifyLongScheduled;
 
@@ -727,6 +748,7 @@ public final class PowerManagerService extends SystemService
         mHandler = new PowerManagerHandler(mHandlerThread.getLooper());
         mConstants = new Constants(mHandler);
         mAmbientDisplayConfiguration = new AmbientDisplayConfiguration(mContext);
+        qcNsrmPowExt = new QCNsrmPowerExtension(this);
         mDisplaySuspendBlocker = null;
         mWakeLockSuspendBlocker = null;
     }
@@ -1140,7 +1162,8 @@ public final class PowerManagerService extends SystemService
         updatePowerStateLocked();
     }
 
-    private void acquireWakeLockInternal(IBinder lock, int flags, String tag, String packageName,
+    @VisibleForTesting
+    void acquireWakeLockInternal(IBinder lock, int flags, String tag, String packageName,
             WorkSource ws, String historyTag, int uid, int pid) {
         synchronized (mLock) {
             if (DEBUG_SPEW) {
@@ -1159,6 +1182,7 @@ public final class PowerManagerService extends SystemService
                     notifyWakeLockChangingLocked(wakeLock, flags, tag, packageName,
                             uid, pid, ws, historyTag);
                     wakeLock.updateProperties(flags, tag, packageName, ws, historyTag, uid, pid);
+                    updateWakeLockSummaryBitsLocked(wakeLock);
                 }
                 notifyAcquire = false;
             } else {
@@ -1179,6 +1203,7 @@ public final class PowerManagerService extends SystemService
                 mWakeLocks.add(wakeLock);
                 setWakeLockDisabledStateLocked(wakeLock);
                 qcNsrmPowExt.checkPmsBlockedWakelocks(uid, pid, flags, tag, wakeLock);
+                updateWakeLockSummaryBitsLocked(wakeLock);
                 notifyAcquire = true;
             }
 
@@ -1225,7 +1250,8 @@ public final class PowerManagerService extends SystemService
         }
     }
 
-    private void releaseWakeLockInternal(IBinder lock, int flags) {
+    @VisibleForTesting
+    void releaseWakeLockInternal(IBinder lock, int flags) {
         synchronized (mLock) {
             int index = findWakeLockIndexLocked(lock);
             if (index < 0) {
@@ -1269,6 +1295,7 @@ public final class PowerManagerService extends SystemService
 
     private void removeWakeLockLocked(WakeLock wakeLock, int index) {
         mWakeLocks.remove(index);
+        setWakeLockSummaryBitsLocked(wakeLock, 0);
         UidState state = wakeLock.mUidState;
         state.mNumWakeLocks--;
         if (state.mNumWakeLocks <= 0 &&
@@ -1292,7 +1319,8 @@ public final class PowerManagerService extends SystemService
         }
     }
 
-    private void updateWakeLockWorkSourceInternal(IBinder lock, WorkSource ws, String historyTag,
+    @VisibleForTesting
+    void updateWakeLockWorkSourceInternal(IBinder lock, WorkSource ws, String historyTag,
             int callingUid) {
         synchronized (mLock) {
             int index = findWakeLockIndexLocked(lock);
@@ -1758,11 +1786,15 @@ public final class PowerManagerService extends SystemService
         }
 
         Trace.traceBegin(Trace.TRACE_TAG_POWER, "updatePowerState");
+        long phaseStartNanos = System.nanoTime();
         try {
+            mUpdatePowerStateCount++;
+
             // Phase 0: Basic state updates.
             updateIsPoweredLocked(mDirty);
             updateStayOnLocked(mDirty);
             updateScreenBrightnessBoostLocked(mDirty);
+            phaseStartNanos = recordUpdatePhaseLocked(UPDATE_PHASE_BASIC, phaseStartNanos);
 
             // Phase 1: Update wakefulness.
             // Loop because the wake lock and user activity computations are influenced
@@ -1780,25 +1812,45 @@ public final class PowerManagerService extends SystemService
                     break;
                 }
             }
+            phaseStartNanos = recordUpdatePhaseLocked(UPDATE_PHASE_WAKEFULNESS, phaseStartNanos);
 
             // Phase 2: Update display power state.
             boolean displayBecameReady = updateDisplayPowerStateLocked(dirtyPhase2);
+            phaseStartNanos = recordUpdatePhaseLocked(UPDATE_PHASE_DISPLAY, phaseStartNanos);
 
             // Phase 3: Update dream state (depends on display ready signal).
             updateDreamLocked(dirtyPhase2, displayBecameReady);
+            phaseStartNanos = recordUpdatePhaseLocked(UPDATE_PHASE_DREAM, phaseStartNanos);
 
             // Phase 4: Send notifications, if needed.
             finishWakefulnessChangeIfNeededLocked();
+            phaseStartNanos = recordUpdatePhaseLocked(UPDATE_PHASE_NOTIFY, phaseStartNanos);
 
             // Phase 5: Update suspend blocker.
             // Because we might release the last suspend blocker here, we need to make sure
             // we finished everything else first!
             updateSuspendBlockerLocked();
+            recordUpdatePhaseLocked(UPDATE_PHASE_SUSPEND_BLOCKER, phaseStartNanos);
         } finally {
             Trace.traceEnd(Trace.TRACE_TAG_POWER);
         }
     }
 
+    /**
+     * Adds the time elapsed since the start of a phase of updatePowerStateLocked() to its stats.
+     *
+     * @return The current time, i.e. the start of the next phase.
+     */
+    private long recordUpdatePhaseLocked(int phase, long startNanos) {
+        final long nowNanos = System.nanoTime();
+        final long durationNanos = nowNanos - startNanos;
+        mUpdatePhaseTotalNanos[phase] += durationNanos;
+        if (durationNanos > mUpdatePhaseMaxNanos[phase]) {
+            mUpdatePhaseMaxNanos[phase] = durationNanos;
+        }
+        return nowNanos;
+    }
+
     /**
      * Updates the value of mIsPowered.
      * Sets DIRTY_IS_POWERED if a change occurred.
@@ -1922,45 +1974,73 @@ public final class PowerManagerService extends SystemService
         }
     }
 
+    /**
+     * Returns the WAKE_LOCK_* bits a wake lock contributes to the summary, before the current
+     * wakefulness is taken into account.
+     */
+    @SuppressWarnings("deprecation")
+    private static int getWakeLockSummaryBits(WakeLock wakeLock) {
+        switch (wakeLock.mFlags & PowerManager.WAKE_LOCK_LEVEL_MASK) {
+            case PowerManager.PARTIAL_WAKE_LOCK:
+                // We only respect this if the wake lock is not disabled.
+                return wakeLock.mDisabled ? 0 : WAKE_LOCK_CPU;
+            case PowerManager.FULL_WAKE_LOCK:
+                return WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_BUTTON_BRIGHT;
+            case PowerManager.SCREEN_BRIGHT_WAKE_LOCK:
+                return WAKE_LOCK_SCREEN_BRIGHT;
+            case PowerManager.SCREEN_DIM_WAKE_LOCK:
+                return WAKE_LOCK_SCREEN_DIM;
+            case PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK:
+                return WAKE_LOCK_PROXIMITY_SCREEN_OFF;
+            case PowerManager.DOZE_WAKE_LOCK:
+                return WAKE_LOCK_DOZE;
+            case PowerManager.DRAW_WAKE_LOCK:
+                return WAKE_LOCK_DRAW;
+        }
+        return 0;
+    }
+
+    /**
+     * Updates the contribution of a wake lock to mWakeLockSummaryBitCounts after it was added,
+     * or after its flags or disabled state changed. The caller still has to set
+     * DIRTY_WAKE_LOCKS for the summary to be updated.
+     */
+    void updateWakeLockSummaryBitsLocked(WakeLock wakeLock) {
+        setWakeLockSummaryBitsLocked(wakeLock, getWakeLockSummaryBits(wakeLock));
+    }
+
+    private void setWakeLockSummaryBitsLocked(WakeLock wakeLock, int bits) {
+        final int oldBits = wakeLock.mSummaryBits;
+        if (oldBits == bits) {
+            return;
+        }
+        for (int i = 0; i < WAKE_LOCK_SUMMARY_BIT_COUNT; i++) {
+            final int bit = 1 << i;
+            if ((oldBits & bit) != 0) {
+                mWakeLockSummaryBitCounts[i]--;
+            }
+            if ((bits & bit) != 0) {
+                mWakeLockSummaryBitCounts[i]++;
+            }
+        }
+        wakeLock.mSummaryBits = bits;
+    }
+
     /**
      * Updates the value of mWakeLockSummary to summarize the state of all active wake locks.
      * Note that most wake-locks are ignored when the system is asleep.
      *
      * This function must have no other side-effects.
      */
-    @SuppressWarnings("deprecation")
-    private void updateWakeLockSummaryLocked(int dirty) {
+    @VisibleForTesting
+    void updateWakeLockSummaryLocked(int dirty) {
         if ((dirty & (DIRTY_WAKE_LOCKS | DIRTY_WAKEFULNESS)) != 0) {
             mWakeLockSummary = 0;
 
-            final int numWakeLocks = mWakeLocks.size();
-            for (int i = 0; i < numWakeLocks; i++) {
-                final WakeLock wakeLock = mWakeLocks.get(i);
-                switch (wakeLock.mFlags & PowerManager.WAKE_LOCK_LEVEL_MASK) {
-                    case PowerManager.PARTIAL_WAKE_LOCK:
-                        if (!wakeLock.mDisabled) {
-                            // We only respect this if the wake lock is not disabled.
-                            mWakeLockSummary |= WAKE_LOCK_CPU;
-                        }
-                        break;
-                    case PowerManager.FULL_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_BUTTON_BRIGHT;
-                        break;
-                    case PowerManager.SCREEN_BRIGHT_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_BRIGHT;
-                        break;
-                    case PowerManager.SCREEN_DIM_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_SCREEN_DIM;
-                        break;
-                    case PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_PROXIMITY_SCREEN_OFF;
-                        break;
-                    case PowerManager.DOZE_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_DOZE;
-                        break;
-                    case PowerManager.DRAW_WAKE_LOCK:
-                        mWakeLockSummary |= WAKE_LOCK_DRAW;
-                        break;
+            // The wake locks themselves were accounted for as they changed.
+            for (int i = 0; i < WAKE_LOCK_SUMMARY_BIT_COUNT; i++) {
+                if (mWakeLockSummaryBitCounts[i] > 0) {
+                    mWakeLockSummary |= 1 << i;
                 }
             }
 
@@ -1997,6 +2077,11 @@ public final class PowerManagerService extends SystemService
         }
     }
 
+    @VisibleForTesting
+    int getWakeLockSummaryLocked() {
+        return mWakeLockSummary;
+    }
+
     void checkForLongWakeLocks() {
         synchronized (mLock) {
             final long now = SystemClock.uptimeMillis();
@@ -3140,6 +3225,7 @@ public final class PowerManagerService extends SystemService
             }
             if (wakeLock.mDisabled != disabled) {
                 wakeLock.mDisabled = disabled;
+                updateWakeLockSummaryBitsLocked(wakeLock);
                 return true;
             }
         }
@@ -3377,6 +3463,7 @@ public final class PowerManagerService extends SystemService
             pw.println("  mHalAutoSuspendModeEnabled=" + mHalAutoSuspendModeEnabled);
             pw.println("  mHalInteractiveModeEnabled=" + mHalInteractiveModeEnabled);
             pw.println("  mWakeLockSummary=0x" + Integer.toHexString(mWakeLockSummary));
+            pw.println("  mWakeLockSummaryBitCounts=" + Arrays.toString(mWakeLockSummaryBitCounts));
             pw.print("  mNotifyLongScheduled=");
             if (mNotifyLongScheduled == 0) {
                 pw.print("(none)");
@@ -3520,6 +3607,19 @@ public final class PowerManagerService extends SystemService
                 pw.println(state.mProcState);
             }
 
+            pw.println();
+            pw.println("Update power state phases: count=" + mUpdatePowerStateCount);
+            for (int i = 0; i < UPDATE_PHASE_NAMES.length; i++) {
+                pw.print("  ");
+                pw.print(UPDATE_PHASE_NAMES[i]);
+                pw.print(": avg=");
+                pw.print(mUpdatePowerStateCount != 0
+                        ? mUpdatePhaseTotalNanos[i] / mUpdatePowerStateCount / 1000 : 0);
+                pw.print("us max=");
+                pw.print(mUpdatePhaseMaxNanos[i] / 1000);
+                pw.println("us");
+            }
+
             pw.println();
             pw.println("Looper state:");
             mHandler.getLooper().dump(new PrintWriterPrinter(pw), "  ");
@@ -4039,6 +4139,8 @@ public final class PowerManagerService extends SystemService
         public boolean mNotifiedAcquired;
         public boolean mNotifiedLong;
         public boolean mDisabled;
+        // The WAKE_LOCK_* bits counted for this wake lock in mWakeLockSummaryBitCounts.
+        int mSummaryBits;
 
         public WakeLock(IBinder lock, int flags, String tag, String packageName,
                 WorkSource workSource, String historyTag, int ownerUid, int ownerPid,
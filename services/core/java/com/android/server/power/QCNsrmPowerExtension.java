@@ -141,6 +141,7 @@ public final class QCNsrmPowerExtension {
                                   ) == PowerManager.PARTIAL_WAKE_LOCK )) {
             if (wakeLock.mDisabled != update && pmHandle != null) {
                 wakeLock.mDisabled = update;
+                pmHandle.updateWakeLockSummaryBitsLocked(wakeLock);
                   if (localLOGV) Slog.v(TAG, "updatePmsBlockWakelock pmHandle "+pmHandle);
                 if (wakeLock.mDisabled) {
                     // This wake lock is no longer being respected.
@@ -590,13 +590,15 @@ class AppWindowToken extends WindowToken implements WindowManagerService.AppFree
                 stack.mExitingAppTokens.add(this);
             }
             mIsExiting = true;
+            // Exiting app tokens are visited before the others, see forAllWindows().
+            onDescendantHierarchyChanged();
         } else {
             // Make sure there is no animation running on this token, so any windows associated
             // with it will be removed as soon as their animations are complete
             mAppAnimator.clearAnimation();
             mAppAnimator.animating = false;
             if (stack != null) {
-                stack.mExitingAppTokens.remove(this);
+                stack.removeExitingAppToken(this);
             }
             removeIfPossible();
         }
@@ -814,7 +816,7 @@ class AppWindowToken extends WindowToken implements WindowManagerService.AppFree
                 // from this list so we do not participate in any future animations.
                 mService.mClosingApps.remove(this);
             } else if (mLastParent != null && mLastParent.mStack != null) {
-                task.mStack.mExitingAppTokens.remove(this);
+                task.mStack.removeExitingAppToken(this);
             }
         }
         mLastParent = task;
@@ -179,6 +179,17 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
     private boolean mTmpInitial;
     private int mMaxUiWidth;
 
+    // Windows of the display from bottom to top, in the order of forAllWindows. Rebuilt on use
+    // after the window hierarchy of the display or the IME target changed.
+    private final ArrayList<WindowState> mWindowsInZOrder = new ArrayList<>();
+    private final ToBooleanFunction<WindowState> mAddWindowInZOrder = w -> {
+        mWindowsInZOrder.add(w);
+        return false;
+    };
+    private boolean mWindowsInZOrderValid;
+    private WindowState mWindowsInZOrderImeTarget;
+    private int mWindowsInZOrderRebuildCount;
+
     // Mapping from a token IBinder to a WindowToken object on this display.
     private final HashMap<IBinder, WindowToken> mTokenMap = new HashMap();
 
@@ -1560,6 +1571,71 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
         return mImeWindowsContainers.forAllWindows(callback, traverseTopToBottom);
     }
 
+    @Override
+    void onDescendantHierarchyChanged() {
+        mWindowsInZOrderValid = false;
+        super.onDescendantHierarchyChanged();
+    }
+
+    /**
+     * Returns the windows of this display from bottom to top, in the order
+     * {@link #forAllWindows} visits them. The list is cached until a window container is added,
+     * removed or moved on the display, an app token starts or stops exiting, a window of an
+     * exiting app token starts or stops waiting for its replacement, or the IME target changes.
+     * The list must not be modified.
+     */
+    ArrayList<WindowState> getWindowsInZOrder() {
+        final WindowState imeTarget = mService.mInputMethodTarget;
+        if (!mWindowsInZOrderValid || mWindowsInZOrderImeTarget != imeTarget) {
+            mWindowsInZOrder.clear();
+            forAllWindows(mAddWindowInZOrder, false /* traverseTopToBottom */);
+            mWindowsInZOrderValid = true;
+            mWindowsInZOrderImeTarget = imeTarget;
+            mWindowsInZOrderRebuildCount++;
+        }
+        return mWindowsInZOrder;
+    }
+
+    /**
+     * Same as {@link #forAllWindows(ToBooleanFunction, boolean)}, but walks the cached windows
+     * of {@link #getWindowsInZOrder} instead of the window hierarchy. The callback must not
+     * add, remove or move window containers.
+     */
+    boolean forAllWindowsInZOrder(ToBooleanFunction<WindowState> callback,
+            boolean traverseTopToBottom) {
+        final ArrayList<WindowState> windows = getWindowsInZOrder();
+        if (traverseTopToBottom) {
+            for (int i = windows.size() - 1; i >= 0; --i) {
+                if (callback.apply(windows.get(i))) {
+                    return true;
+                }
+            }
+        } else {
+            final int count = windows.size();
+            for (int i = 0; i < count; i++) {
+                if (callback.apply(windows.get(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** @see #forAllWindowsInZOrder(ToBooleanFunction, boolean) */
+    void forAllWindowsInZOrder(Consumer<WindowState> callback, boolean traverseTopToBottom) {
+        final ArrayList<WindowState> windows = getWindowsInZOrder();
+        if (traverseTopToBottom) {
+            for (int i = windows.size() - 1; i >= 0; --i) {
+                callback.accept(windows.get(i));
+            }
+        } else {
+            final int count = windows.size();
+            for (int i = 0; i < count; i++) {
+                callback.accept(windows.get(i));
+            }
+        }
+    }
+
     @Override
     int getOrientation() {
         final WindowManagerPolicy policy = mService.mPolicy;
@@ -2147,6 +2223,9 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
             pw.print(subPrefix + "deferred=" + mDeferredRemoval
                     + " mLayoutNeeded=" + mLayoutNeeded);
             pw.println(" mTouchExcludeRegion=" + mTouchExcludeRegion);
+            pw.print(subPrefix + "windowsInZOrder=");
+            pw.print(mWindowsInZOrderValid ? mWindowsInZOrder.size() : -1);
+            pw.print(" rebuilds="); pw.println(mWindowsInZOrderRebuildCount);
 
         pw.println();
         pw.println(prefix + "Application tokens in top down Z order:");
@@ -2267,7 +2346,7 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
     WindowState findFocusedWindow() {
         mTmpWindow = null;
 
-        forAllWindows(mFindFocusedWindow, true /* traverseTopToBottom */);
+        forAllWindowsInZOrder(mFindFocusedWindow, true /* traverseTopToBottom */);
 
         if (mTmpWindow == null) {
             if (DEBUG_FOCUS_LIGHT) Slog.v(TAG_WM, "findFocusedWindow: No focusable windows.");
@@ -2846,7 +2925,7 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
         mTmpInitial = initial;
 
         // First perform layout of any root windows (not attached to another window).
-        forAllWindows(mPerformLayout, true /* traverseTopToBottom */);
+        forAllWindowsInZOrder(mPerformLayout, true /* traverseTopToBottom */);
 
         // Used to indicate that we have processed the dream window and all additional attached
         // windows are behind it.
@@ -2856,7 +2935,7 @@ class DisplayContent extends WindowContainer<DisplayContent.DisplayChildWindowCo
         // Now perform layout of attached windows, which usually depend on the position of the
         // window they are attached to. XXX does not deal with windows that are attached to windows
         // that are themselves attached.
-        forAllWindows(mPerformLayoutAttached, true /* traverseTopToBottom */);
+        forAllWindowsInZOrder(mPerformLayoutAttached, true /* traverseTopToBottom */);
 
         // Window frames may have changed. Tell the input dispatcher about it.
         mService.mInputMonitor.layoutInputConsumers(dw, dh);
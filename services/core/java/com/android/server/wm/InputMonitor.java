@@ -34,6 +34,7 @@ import static com.android.server.wm.WindowManagerDebugConfig.TAG_WM;
 
 import android.app.ActivityManager;
 import android.graphics.Rect;
+import android.graphics.Region;
 import android.os.Debug;
 import android.os.Looper;
 import android.os.RemoteException;
@@ -47,12 +48,14 @@ import android.view.WindowManager;
 
 import android.view.WindowManagerPolicy;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.input.InputApplicationHandle;
 import com.android.server.input.InputManagerService;
 import com.android.server.input.InputWindowHandle;
 
 import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -81,6 +84,17 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
     private int mInputWindowHandleCount;
     private InputWindowHandle mFocusedInputWindowHandle;
 
+    // The window handles as last sent to the input dispatcher, so that updates that would not
+    // change anything are not sent.
+    private SentInputWindowHandle[] mSentInputWindowHandles = new SentInputWindowHandle[0];
+    private int mSentInputWindowHandleCount;
+    private InputWindowHandle mSentFocusedInputWindowHandle;
+
+    // Updates of the input windows computed and sent, and window handles sent, for dumpsys.
+    private int mInputWindowsUpdateCount;
+    private int mInputWindowsSentCount;
+    private long mInputWindowHandlesSentCount;
+
     private boolean mAddInputConsumerHandle;
     private boolean mAddPipInputConsumerHandle;
     private boolean mAddWallpaperInputConsumerHandle;
@@ -341,6 +355,52 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         }
     }
 
+    /**
+     * Records the window handles about to be sent to the input dispatcher.
+     *
+     * @return Whether they differ from the window handles sent last time.
+     */
+    private boolean updateSentInputWindowHandlesLw() {
+        boolean changed = mSentInputWindowHandleCount != mInputWindowHandleCount
+                || mSentFocusedInputWindowHandle != mFocusedInputWindowHandle;
+        if (mSentInputWindowHandles.length < mInputWindowHandleCount) {
+            final int oldLength = mSentInputWindowHandles.length;
+            mSentInputWindowHandles = Arrays.copyOf(mSentInputWindowHandles,
+                    mInputWindowHandles.length);
+            for (int i = oldLength; i < mSentInputWindowHandles.length; i++) {
+                mSentInputWindowHandles[i] = new SentInputWindowHandle();
+            }
+        }
+        for (int i = 0; i < mInputWindowHandleCount; i++) {
+            if (mSentInputWindowHandles[i].set(mInputWindowHandles[i])) {
+                changed = true;
+            }
+        }
+        for (int i = mInputWindowHandleCount; i < mSentInputWindowHandleCount; i++) {
+            mSentInputWindowHandles[i].clear();
+        }
+        mSentInputWindowHandleCount = mInputWindowHandleCount;
+        mSentFocusedInputWindowHandle = mFocusedInputWindowHandle;
+        return changed;
+    }
+
+    /**
+     * Sends the window handles added since the last update to the input dispatcher, if they
+     * changed or if forced, then clears them. The native code copies all the windows from their
+     * handles each time, which shows during window animations.
+     */
+    @VisibleForTesting
+    void sendInputWindowHandlesLw(boolean force) {
+        mInputWindowsUpdateCount++;
+        if (updateSentInputWindowHandlesLw() || force) {
+            mService.mInputManager.setInputWindows(mInputWindowHandles,
+                    mFocusedInputWindowHandle);
+            mInputWindowsSentCount++;
+            mInputWindowHandlesSentCount += mInputWindowHandleCount;
+        }
+        clearInputWindowHandlesLw();
+    }
+
     private void clearInputWindowHandlesLw() {
         while (mInputWindowHandleCount != 0) {
             mInputWindowHandles[--mInputWindowHandleCount] = null;
@@ -352,7 +412,10 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         mUpdateInputWindowsNeeded = true;
     }
 
-    /* Updates the cached window information provided to the input dispatcher. */
+    /**
+     * Updates the cached window information provided to the input dispatcher. The windows are
+     * only sent to the input dispatcher if they changed since the last update, or if forced.
+     */
     void updateInputWindowsLw(boolean force) {
         if (!force && !mUpdateInputWindowsNeeded) {
             return;
@@ -397,7 +460,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         }
 
         // Add all windows on the default display.
-        mUpdateInputForAllWindowsConsumer.updateInputWindows(inDrag);
+        mUpdateInputForAllWindowsConsumer.updateInputWindows(inDrag, force);
 
         if (false) Slog.d(TAG_WM, "<<<<<<< EXITED updateInputWindowsLw");
     }
@@ -596,6 +659,106 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
                 pw.println(prefix + "  name=" + key);
             }
         }
+        pw.println(prefix + "Input windows: updates=" + mInputWindowsUpdateCount
+                + " sent=" + mInputWindowsSentCount
+                + " handlesSent=" + mInputWindowHandlesSentCount
+                + " lastHandles=" + mSentInputWindowHandleCount);
+    }
+
+    /**
+     * Values of an {@link InputWindowHandle} as last sent to the input dispatcher.
+     */
+    private static final class SentInputWindowHandle {
+        private InputWindowHandle mHandle;
+        private InputChannel mInputChannel;
+        private String mName;
+        private String mApplicationName;
+        private long mApplicationDispatchingTimeoutNanos;
+        private int mLayoutParamsFlags;
+        private int mLayoutParamsType;
+        private long mDispatchingTimeoutNanos;
+        private int mFrameLeft;
+        private int mFrameTop;
+        private int mFrameRight;
+        private int mFrameBottom;
+        private float mScaleFactor;
+        private final Region mTouchableRegion = new Region();
+        private boolean mVisible;
+        private boolean mCanReceiveKeys;
+        private boolean mHasFocus;
+        private boolean mHasWallpaper;
+        private boolean mPaused;
+        private int mLayer;
+        private int mOwnerPid;
+        private int mOwnerUid;
+        private int mInputFeatures;
+
+        /**
+         * Takes the values of the given handle.
+         *
+         * @return Whether they differ from the previous ones.
+         */
+        boolean set(InputWindowHandle handle) {
+            final InputApplicationHandle application = handle.inputApplicationHandle;
+            final String applicationName = application != null ? application.name : null;
+            final long applicationTimeout =
+                    application != null ? application.dispatchingTimeoutNanos : 0;
+            if (mHandle == handle
+                    && mInputChannel == handle.inputChannel
+                    && Objects.equals(mName, handle.name)
+                    && Objects.equals(mApplicationName, applicationName)
+                    && mApplicationDispatchingTimeoutNanos == applicationTimeout
+                    && mLayoutParamsFlags == handle.layoutParamsFlags
+                    && mLayoutParamsType == handle.layoutParamsType
+                    && mDispatchingTimeoutNanos == handle.dispatchingTimeoutNanos
+                    && mFrameLeft == handle.frameLeft
+                    && mFrameTop == handle.frameTop
+                    && mFrameRight == handle.frameRight
+                    && mFrameBottom == handle.frameBottom
+                    && mScaleFactor == handle.scaleFactor
+                    && mTouchableRegion.equals(handle.touchableRegion)
+                    && mVisible == handle.visible
+                    && mCanReceiveKeys == handle.canReceiveKeys
+                    && mHasFocus == handle.hasFocus
+                    && mHasWallpaper == handle.hasWallpaper
+                    && mPaused == handle.paused
+                    && mLayer == handle.layer
+                    && mOwnerPid == handle.ownerPid
+                    && mOwnerUid == handle.ownerUid
+                    && mInputFeatures == handle.inputFeatures) {
+                return false;
+            }
+            mHandle = handle;
+            mInputChannel = handle.inputChannel;
+            mName = handle.name;
+            mApplicationName = applicationName;
+            mApplicationDispatchingTimeoutNanos = applicationTimeout;
+            mLayoutParamsFlags = handle.layoutParamsFlags;
+            mLayoutParamsType = handle.layoutParamsType;
+            mDispatchingTimeoutNanos = handle.dispatchingTimeoutNanos;
+            mFrameLeft = handle.frameLeft;
+            mFrameTop = handle.frameTop;
+            mFrameRight = handle.frameRight;
+            mFrameBottom = handle.frameBottom;
+            mScaleFactor = handle.scaleFactor;
+            mTouchableRegion.set(handle.touchableRegion);
+            mVisible = handle.visible;
+            mCanReceiveKeys = handle.canReceiveKeys;
+            mHasFocus = handle.hasFocus;
+            mHasWallpaper = handle.hasWallpaper;
+            mPaused = handle.paused;
+            mLayer = handle.layer;
+            mOwnerPid = handle.ownerPid;
+            mOwnerUid = handle.ownerUid;
+            mInputFeatures = handle.inputFeatures;
+            return true;
+        }
+
+        /** Drops the references to the last handle and its window. */
+        void clear() {
+            mHandle = null;
+            mInputChannel = null;
+        }
     }
 
     private final class UpdateInputForAllWindowsConsumer implements Consumer<WindowState> {
@@ -607,7 +770,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
         boolean inDrag;
         WallpaperController wallpaperController;
 
-        private void updateInputWindows(boolean inDrag) {
+        private void updateInputWindows(boolean inDrag, boolean force) {
 
             // TODO: multi-display
             navInputConsumer = getInputConsumer(INPUT_CONSUMER_NAVIGATION, DEFAULT_DISPLAY);
@@ -629,9 +792,7 @@ final class InputMonitor implements InputManagerService.WindowManagerCallbacks {
             }
 
             // Send windows to native code.
-            mService.mInputManager.setInputWindows(mInputWindowHandles, mFocusedInputWindowHandle);
-
-            clearInputWindowHandlesLw();
+            sendInputWindowHandlesLw(force);
         }
 
         @Override
@@ -17,9 +17,14 @@
 package com.android.server.wm;
 
 import android.annotation.Nullable;
+import android.app.ActivityManager;
 import android.app.ActivityManager.TaskSnapshot;
+import android.graphics.GraphicBuffer;
 import android.util.ArrayMap;
 import android.util.LruCache;
+import android.util.SparseIntArray;
+
+import com.android.internal.annotations.VisibleForTesting;
 
 import java.io.PrintWriter;
 import java.util.Map;
@@ -28,28 +33,97 @@ import java.util.Map.Entry;
 /**
  * Caches snapshots. See {@link TaskSnapshotController}.
  * <p>
+ * Snapshots of running tasks are kept up to a budget of memory. When it is exceeded, the least
+ * recently used ones move down to a second, smaller cache instead of being dropped, so that the
+ * starting window of a task launched soon after can still use its snapshot. The second cache also
+ * keeps the reduced resolution snapshots restored from disk, e.g. for Recents.
+ * <p>
  * Access to this class should be guarded by the global window manager lock.
  */
 class TaskSnapshotCache {
 
+    private static final boolean IS_LOW_RAM = ActivityManager.isLowRamDeviceStatic();
+
+    /** Memory budget of the snapshots of the running tasks. */
+    static final int MAX_RUNNING_CACHE_BYTES = (IS_LOW_RAM ? 16 : 64) * 1024 * 1024;
+
+    /**
+     * Memory budget of the snapshots evicted from the running cache and of the reduced resolution
+     * snapshots restored from disk.
+     */
+    static final int MAX_REDUCED_CACHE_BYTES = (IS_LOW_RAM ? 8 : 32) * 1024 * 1024;
+
     private final WindowManagerService mService;
     private final TaskSnapshotLoader mLoader;
     private final ArrayMap<AppWindowToken, Integer> mAppTaskMap = new ArrayMap<>();
-    private final ArrayMap<Integer, CacheEntry> mRunningCache = new ArrayMap<>();
+    private final LruCache<Integer, CacheEntry> mRunningCache;
+    private final LruCache<Integer, CacheEntry> mReducedCache;
+
+    // The generation of the snapshot of each task, bumped when a task takes a new snapshot so
+    // that snapshots restored from disk meanwhile are not cached.
+    private final SparseIntArray mSnapshotGenerations = new SparseIntArray();
+    private int mNextSnapshotGeneration = 1;
 
     TaskSnapshotCache(WindowManagerService service, TaskSnapshotLoader loader) {
+        this(service, loader, MAX_RUNNING_CACHE_BYTES, MAX_REDUCED_CACHE_BYTES);
+    }
+
+    @VisibleForTesting
+    TaskSnapshotCache(WindowManagerService service, TaskSnapshotLoader loader,
+            int maxRunningCacheBytes, int maxReducedCacheBytes) {
         mService = service;
         mLoader = loader;
+        mRunningCache = new LruCache<Integer, CacheEntry>(maxRunningCacheBytes) {
+            @Override
+            protected int sizeOf(Integer taskId, CacheEntry entry) {
+                return entry.byteCount;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer taskId, CacheEntry oldEntry,
+                    CacheEntry newEntry) {
+                if (evicted) {
+                    // Keep the snapshot, and its app token mapping, in the second cache.
+                    mReducedCache.put(taskId, oldEntry);
+                } else {
+                    onEntryRemoved(taskId, oldEntry, newEntry);
+                }
+            }
+        };
+        mReducedCache = new LruCache<Integer, CacheEntry>(maxReducedCacheBytes) {
+            @Override
+            protected int sizeOf(Integer taskId, CacheEntry entry) {
+                return entry.byteCount;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer taskId, CacheEntry oldEntry,
+                    CacheEntry newEntry) {
+                onEntryRemoved(taskId, oldEntry, newEntry);
+            }
+        };
     }
 
-    void putSnapshot(Task task, TaskSnapshot snapshot) {
-        final CacheEntry entry = mRunningCache.get(task.mTaskId);
-        if (entry != null) {
-            mAppTaskMap.remove(entry.topApp);
+    /**
+     * Drops the app token mapping of a snapshot that left the cache. The app token may have moved
+     * on to the snapshot of another task.
+     */
+    private void onEntryRemoved(Integer taskId, CacheEntry oldEntry, CacheEntry newEntry) {
+        if (oldEntry.topApp != null && (newEntry == null || newEntry.topApp != oldEntry.topApp)
+                && taskId.equals(mAppTaskMap.get(oldEntry.topApp))) {
+            mAppTaskMap.remove(oldEntry.topApp);
         }
+    }
+
+    void putSnapshot(Task task, TaskSnapshot snapshot) {
+        // A task has its snapshot in one of the caches only.
+        mReducedCache.remove(task.mTaskId);
+        // The running cache drops the previous snapshot of the task, and the top app it was
+        // taken with.
         final AppWindowToken top = task.getTopChild();
+        mRunningCache.put(task.mTaskId, new CacheEntry(snapshot, top));
         mAppTaskMap.put(top, task.mTaskId);
-        mRunningCache.put(task.mTaskId, new CacheEntry(snapshot, task.getTopChild()));
+        mSnapshotGenerations.put(task.mTaskId, mNextSnapshotGeneration++);
     }
 
     /**
@@ -58,29 +132,50 @@ class TaskSnapshotCache {
     @Nullable TaskSnapshot getSnapshot(int taskId, int userId, boolean restoreFromDisk,
             boolean reducedResolution) {
 
+        final int generation;
         synchronized (mService.mWindowMap) {
             // Try the running cache.
             final CacheEntry entry = mRunningCache.get(taskId);
             if (entry != null) {
                 return entry.snapshot;
             }
+
+            // Try the snapshots evicted from the running cache, and the reduced resolution
+            // snapshots restored earlier.
+            final CacheEntry reducedEntry = mReducedCache.get(taskId);
+            if (reducedEntry != null
+                    && (reducedResolution || !reducedEntry.snapshot.isReducedResolution())) {
+                return reducedEntry.snapshot;
+            }
+            generation = mSnapshotGenerations.get(taskId);
         }
 
         // Try to restore from disk if asked.
         if (!restoreFromDisk) {
             return null;
         }
-        return tryRestoreFromDisk(taskId, userId, reducedResolution);
+        return tryRestoreFromDisk(taskId, userId, reducedResolution, generation);
     }
 
     /**
      * DO NOT HOLD THE WINDOW MANAGER LOCK WHEN CALLING THIS METHOD!
+     *
+     * @param generation The generation of the snapshot of the task before loading.
      */
-    private TaskSnapshot tryRestoreFromDisk(int taskId, int userId, boolean reducedResolution) {
+    private TaskSnapshot tryRestoreFromDisk(int taskId, int userId, boolean reducedResolution,
+            int generation) {
         final TaskSnapshot snapshot = mLoader.loadTask(taskId, userId, reducedResolution);
         if (snapshot == null) {
             return null;
         }
+        if (reducedResolution) {
+            synchronized (mService.mWindowMap) {
+                // Don't cache the snapshot if the task took a newer one while loading.
+                if (generation == mSnapshotGenerations.get(taskId)) {
+                    mReducedCache.put(taskId, new CacheEntry(snapshot, null /* topApp */));
+                }
+            }
+        }
         return snapshot;
     }
 
@@ -90,7 +185,7 @@ class TaskSnapshotCache {
     void onAppRemoved(AppWindowToken wtoken) {
         final Integer taskId = mAppTaskMap.get(wtoken);
         if (taskId != null) {
-            removeRunningEntry(taskId);
+            removeAppEntry(taskId);
         }
     }
 
@@ -100,29 +195,47 @@ class TaskSnapshotCache {
     void onAppDied(AppWindowToken wtoken) {
         final Integer taskId = mAppTaskMap.get(wtoken);
         if (taskId != null) {
-            removeRunningEntry(taskId);
+            removeAppEntry(taskId);
         }
     }
 
     void onTaskRemoved(int taskId) {
-        removeRunningEntry(taskId);
+        mRunningCache.remove(taskId);
+        mReducedCache.remove(taskId);
+        mSnapshotGenerations.delete(taskId);
     }
 
-    private void removeRunningEntry(int taskId) {
-        final CacheEntry entry = mRunningCache.get(taskId);
-        if (entry != null) {
-            mAppTaskMap.remove(entry.topApp);
-            mRunningCache.remove(taskId);
+    /**
+     * Removes the snapshot taken with the app token of a task, whether it is still running or
+     * was evicted.
+     */
+    private void removeAppEntry(int taskId) {
+        mRunningCache.remove(taskId);
+        final CacheEntry entry = mReducedCache.get(taskId);
+        if (entry != null && entry.topApp != null) {
+            mReducedCache.remove(taskId);
         }
     }
 
+    private static int getByteCount(TaskSnapshot snapshot) {
+        final GraphicBuffer buffer = snapshot.getSnapshot();
+        // Snapshots are RGBA_8888. Count at least one byte so that the cache can evict them.
+        return buffer != null ? Math.max(1, buffer.getWidth() * buffer.getHeight() * 4) : 1;
+    }
+
     void dump(PrintWriter pw, String prefix) {
         final String doublePrefix = prefix + "  ";
         final String triplePrefix = doublePrefix + "  ";
         pw.println(prefix + "SnapshotCache");
-        for (int i = mRunningCache.size() - 1; i >= 0; i--) {
-            final CacheEntry entry = mRunningCache.valueAt(i);
-            pw.println(doublePrefix + "Entry taskId=" + mRunningCache.keyAt(i));
+        pw.println(doublePrefix + "running: " + mRunningCache.size() + "/"
+                + mRunningCache.maxSize() + " bytes, evictions=" + mRunningCache.evictionCount());
+        pw.println(doublePrefix + "reduced: " + mReducedCache.size() + "/"
+                + mReducedCache.maxSize() + " bytes, hits=" + mReducedCache.hitCount()
+                + " misses=" + mReducedCache.missCount()
+                + " evictions=" + mReducedCache.evictionCount());
+        for (Entry<Integer, CacheEntry> mapEntry : mRunningCache.snapshot().entrySet()) {
+            final CacheEntry entry = mapEntry.getValue();
+            pw.println(doublePrefix + "Entry taskId=" + mapEntry.getKey());
             pw.println(triplePrefix + "topApp=" + entry.topApp);
             pw.println(triplePrefix + "snapshot=" + entry.snapshot);
         }
@@ -133,12 +246,19 @@ class TaskSnapshotCache {
         /** The snapshot. */
         final TaskSnapshot snapshot;
 
-        /** The app token that was on top of the task when the snapshot was taken */
+        /**
+         * The app token that was on top of the task when the snapshot was taken, or null if the
+         * snapshot was restored from disk
+         */
         final AppWindowToken topApp;
 
+        /** The memory used by the snapshot, as accounted by the cache */
+        final int byteCount;
+
         CacheEntry(TaskSnapshot snapshot, AppWindowToken topApp) {
             this.snapshot = snapshot;
             this.topApp = topApp;
+            this.byteCount = getByteCount(snapshot);
         }
     }
 }
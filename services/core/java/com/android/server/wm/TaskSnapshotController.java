@@ -368,5 +368,6 @@ class TaskSnapshotController {
 
     void dump(PrintWriter pw, String prefix) {
         mCache.dump(pw, prefix);
+        mPersister.dump(pw, prefix);
     }
 }
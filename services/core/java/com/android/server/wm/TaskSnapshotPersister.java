@@ -31,6 +31,7 @@ import android.os.Process;
 import android.os.SystemClock;
 import android.util.ArraySet;
 import android.util.Slog;
+import android.view.LatencyHistogram;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
@@ -40,6 +41,7 @@ import com.android.server.wm.nano.WindowManagerProtos.TaskSnapshotProto;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 
@@ -69,6 +71,12 @@ class TaskSnapshotPersister {
     private boolean mQueueIdling;
     @GuardedBy("mLock")
     private boolean mPaused;
+    @GuardedBy("mLock")
+    private int mMaxQueueDepth;
+    @GuardedBy("mLock")
+    private int mSupersededStoreCount;
+    @GuardedBy("mLock")
+    private final LatencyHistogram mStoreLatency = new LatencyHistogram();
     private boolean mStarted;
     private final Object mLock = new Object();
     private final DirectoryResolver mDirectoryResolver;
@@ -104,6 +112,7 @@ class TaskSnapshotPersister {
     void persistSnapshot(int taskId, int userId, TaskSnapshot snapshot) {
         synchronized (mLock) {
             mPersistedTaskIdsSinceLastRemoveObsolete.add(taskId);
+            removeStoreQueueItemsLocked(taskId);
             sendToQueueLocked(new StoreWriteQueueItem(taskId, userId, snapshot));
         }
     }
@@ -117,6 +126,7 @@ class TaskSnapshotPersister {
     void onTaskRemovedFromRecents(int taskId, int userId) {
         synchronized (mLock) {
             mPersistedTaskIdsSinceLastRemoveObsolete.remove(taskId);
+            removeStoreQueueItemsLocked(taskId);
             sendToQueueLocked(new DeleteWriteQueueItem(taskId, userId));
         }
     }
@@ -162,6 +172,7 @@ class TaskSnapshotPersister {
         mWriteQueue.offer(item);
         item.onQueuedLocked();
         ensureStoreQueueDepthLocked();
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, mWriteQueue.size());
         if (!mPaused) {
             mLock.notifyAll();
         }
@@ -176,6 +187,23 @@ class TaskSnapshotPersister {
         }
     }
 
+    /**
+     * Drops the pending writes of the snapshots of a task, which a newer snapshot or the removal
+     * of the task make obsolete.
+     */
+    @GuardedBy("mLock")
+    private void removeStoreQueueItemsLocked(int taskId) {
+        for (int i = mStoreQueueItems.size(); i > 0; i--) {
+            final StoreWriteQueueItem item = mStoreQueueItems.poll();
+            if (item.mTaskId == taskId) {
+                mWriteQueue.remove(item);
+                mSupersededStoreCount++;
+            } else {
+                mStoreQueueItems.offer(item);
+            }
+        }
+    }
+
     private File getDirectory(int userId) {
         return new File(mDirectoryResolver.getSystemDirectoryForUser(userId), SNAPSHOTS_DIRNAME);
     }
@@ -215,6 +243,19 @@ class TaskSnapshotPersister {
         }
     }
 
+    void dump(PrintWriter pw, String prefix) {
+        synchronized (mLock) {
+            pw.println(prefix + "SnapshotPersister");
+            final String doublePrefix = prefix + "  ";
+            pw.println(doublePrefix + "queueDepth=" + mWriteQueue.size()
+                    + " pendingStores=" + mStoreQueueItems.size()
+                    + " maxQueueDepth=" + mMaxQueueDepth
+                    + " supersededStores=" + mSupersededStoreCount
+                    + " paused=" + mPaused);
+            mStoreLatency.dump(pw, doublePrefix, "store");
+        }
+    }
+
     interface DirectoryResolver {
         File getSystemDirectoryForUser(int userId);
     }
@@ -235,7 +276,13 @@ class TaskSnapshotPersister {
                     }
                 }
                 if (next != null) {
+                    final long startTime = SystemClock.elapsedRealtimeNanos();
                     next.write();
+                    if (next instanceof StoreWriteQueueItem) {
+                        synchronized (mLock) {
+                            mStoreLatency.record(SystemClock.elapsedRealtimeNanos() - startTime);
+                        }
+                    }
                     SystemClock.sleep(DELAY_MS);
                 }
                 synchronized (mLock) {
@@ -668,13 +668,28 @@ public class TaskStack extends WindowContainer<Task> implements DimLayer.DimLaye
             }
             mDisplayContent.setLayoutNeeded();
         }
+        boolean exitingAppTokensChanged = false;
         for (int appNdx = mExitingAppTokens.size() - 1; appNdx >= 0; --appNdx) {
             final AppWindowToken wtoken = mExitingAppTokens.get(appNdx);
             if (wtoken.getTask() == task) {
                 wtoken.mIsExiting = false;
                 mExitingAppTokens.remove(appNdx);
+                exitingAppTokensChanged = true;
             }
         }
+        if (exitingAppTokensChanged) {
+            onDescendantHierarchyChanged();
+        }
+    }
+
+    /**
+     * Removes a token from {@link #mExitingAppTokens}, whose windows are visited before the
+     * other windows of the display.
+     */
+    void removeExitingAppToken(AppWindowToken token) {
+        if (mExitingAppTokens.remove(token)) {
+            onDescendantHierarchyChanged();
+        }
     }
 
     void onDisplayChanged(DisplayContent dc) {
@@ -951,6 +966,7 @@ public class TaskStack extends WindowContainer<Task> implements DimLayer.DimLaye
                 --top;
             }
         }
+        onDescendantHierarchyChanged();
     }
 
     /**
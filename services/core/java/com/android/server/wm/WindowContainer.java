@@ -142,6 +142,7 @@ class WindowContainer<E extends WindowContainer> implements Comparable<WindowCon
         }
         // Set the parent after we've actually added a child in case a subclass depends on this.
         child.setParent(this);
+        onDescendantHierarchyChanged();
     }
 
     /** Adds the input window container has a child of this container at the input index. */
@@ -155,6 +156,7 @@ class WindowContainer<E extends WindowContainer> implements Comparable<WindowCon
         mChildren.add(index, child);
         // Set the parent after we've actually added a child in case a subclass depends on this.
         child.setParent(this);
+        onDescendantHierarchyChanged();
     }
 
     /**
@@ -166,6 +168,7 @@ class WindowContainer<E extends WindowContainer> implements Comparable<WindowCon
     void removeChild(E child) {
         if (mChildren.remove(child)) {
             child.setParent(null);
+            onDescendantHierarchyChanged();
         } else {
             throw new IllegalArgumentException("removeChild: container=" + child.getName()
                     + " is not a child of container=" + getName());
@@ -186,7 +189,9 @@ class WindowContainer<E extends WindowContainer> implements Comparable<WindowCon
             // Need to do this after calling remove on the child because the child might try to
             // remove/detach itself from its parent which will cause an exception if we remove
             // it before calling remove on the child.
-            mChildren.remove(child);
+            if (mChildren.remove(child)) {
+                onDescendantHierarchyChanged();
+            }
         }
 
         if (mParent != null) {
@@ -279,6 +284,18 @@ class WindowContainer<E extends WindowContainer> implements Comparable<WindowCon
                 mChildren.remove(child);
                 mChildren.add(position, child);
         }
+        onDescendantHierarchyChanged();
+    }
+
+    /**
+     * Called when a container was added, removed or moved among its siblings at or below this
+     * container, or when the order in which {@link #forAllWindows} visits the windows below this
+     * container otherwise changed, so that the containers caching that order can drop it.
+     */
+    void onDescendantHierarchyChanged() {
+        if (mParent != null) {
+            mParent.onDescendantHierarchyChanged();
+        }
     }
 
     /**
@@ -118,7 +118,7 @@ class WindowLayersController {
                 new RuntimeException("here").fillInStackTrace());
 
         reset();
-        dc.forAllWindows(mAssignWindowLayersConsumer, false /* traverseTopToBottom */);
+        dc.forAllWindowsInZOrder(mAssignWindowLayersConsumer, false /* traverseTopToBottom */);
 
         adjustSpecialWindows();
 
@@ -1763,7 +1763,7 @@ public class WindowManagerService extends IWindowManager.Stub
                 atoken.clearAllDrawn();
                 final TaskStack stack = atoken.getStack();
                 if (stack != null) {
-                    stack.mExitingAppTokens.remove(atoken);
+                    stack.removeExitingAppToken(atoken);
                 }
             }
         }
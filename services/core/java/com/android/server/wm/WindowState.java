@@ -2189,6 +2189,7 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         mAnimateReplacingWindow = false;
         mReplacingRemoveRequested = false;
         mReplacementWindow = null;
+        onWaitingForReplacementChanged();
         if (mAnimatingExit || !mAnimateReplacingWindow) {
             removeImmediately();
         }
@@ -3792,12 +3793,14 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         mWillReplaceWindow = true;
         mReplacementWindow = null;
         mAnimateReplacingWindow = animate;
+        onWaitingForReplacementChanged();
     }
 
     void clearWillReplaceWindow() {
         mWillReplaceWindow = false;
         mReplacementWindow = null;
         mAnimateReplacingWindow = false;
+        onWaitingForReplacementChanged();
 
         for (int i = mChildren.size() - 1; i >= 0; i--) {
             final WindowState c = mChildren.get(i);
@@ -3819,6 +3822,16 @@ class WindowState extends WindowContainer<WindowState> implements WindowManagerP
         return false;
     }
 
+    /**
+     * Called when {@link #mWillReplaceWindow} changed. The windows of an exiting app token are
+     * only visited in place while one of them waits for its replacement.
+     */
+    private void onWaitingForReplacementChanged() {
+        if (mAppToken != null && mAppToken.mIsExiting) {
+            mAppToken.onDescendantHierarchyChanged();
+        }
+    }
+
     void requestUpdateWallpaperIfNeeded() {
         final DisplayContent dc = getDisplayContent();
         if (dc != null && (mAttrs.flags & FLAG_SHOW_WALLPAPER) != 0) {
@@ -50,6 +50,7 @@ import android.util.Slog;
 import android.util.SparseIntArray;
 import android.view.Display;
 import android.view.DisplayInfo;
+import android.view.LatencyHistogram;
 import android.view.Surface;
 import android.view.SurfaceControl;
 import android.view.WindowManager.LayoutParams;
@@ -98,6 +99,9 @@ class WindowSurfacePlacer {
     private final ArrayList<SurfaceControl> mPendingDestroyingSurfaces = new ArrayList<>();
     private final SparseIntArray mTempTransitionReasons = new SparseIntArray();
 
+    // Durations of the passes of RootWindowContainer#performSurfacePlacement.
+    private final LatencyHistogram mPlacementLatency = new LatencyHistogram();
+
     private final Runnable mPerformSurfacePlacement;
 
     public WindowSurfacePlacer(WindowManagerService service) {
@@ -194,7 +198,9 @@ class WindowSurfacePlacer {
         }
 
         try {
+            final long startTime = System.nanoTime();
             mService.mRoot.performSurfacePlacement(recoveringMemory);
+            mPlacementLatency.record(System.nanoTime() - startTime);
 
             mInLayout = false;
 
@@ -786,5 +792,6 @@ class WindowSurfacePlacer {
         pw.println(prefix + "mTraversalScheduled=" + mTraversalScheduled);
         pw.println(prefix + "mHoldScreenWindow=" + mService.mRoot.mHoldScreenWindow);
         pw.println(prefix + "mObscuringWindow=" + mService.mRoot.mObscuringWindow);
+        mPlacementLatency.dump(pw, prefix, "performSurfacePlacement");
     }
 }
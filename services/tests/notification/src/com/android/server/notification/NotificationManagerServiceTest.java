@@ -25,7 +25,9 @@ import static android.content.pm.PackageManager.PERMISSION_DENIED;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -66,6 +68,7 @@ import android.os.Process;
 import android.os.UserHandle;
 import android.provider.Settings.Secure;
 import android.service.notification.NotificationListenerService;
+import android.service.notification.NotificationRankingUpdate;
 import android.service.notification.StatusBarNotification;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.testing.AndroidTestingRunner;
@@ -79,6 +82,7 @@ import com.android.server.lights.Light;
 import com.android.server.lights.LightsManager;
 import com.android.server.notification.NotificationManagerService.NotificationAssistants;
 import com.android.server.notification.NotificationManagerService.NotificationListeners;
+import com.android.server.notification.NotificationManagerService.RankingUpdateCache;
 
 import org.junit.After;
 import org.junit.Before;
@@ -1527,6 +1531,47 @@ public class NotificationManagerServiceTest extends NotificationTestCase {
         verify(mGroupHelper, never()).onNotificationPosted(any(), anyBoolean());
     }
 
+    @Test
+    public void testRapidUpdates_pendingUpdatesCoalesced() throws Exception {
+        // Above half of the default maximum enqueue rate, but below the maximum.
+        when(mUsageStats.getAppEnqueueRate(PKG)).thenReturn(4f);
+        NotificationRecord r = generateNotificationRecord(mTestNotificationChannel, 0, null, false);
+        mNotificationManagerService.addNotification(r);
+
+        final int updateCount = 50;
+        for (int i = 0; i < updateCount; i++) {
+            r = generateNotificationRecord(mTestNotificationChannel, 0, null, false);
+            mNotificationManagerService.new EnqueueNotificationRunnable(r.getUserId(), r).run();
+        }
+        assertEquals(1, mNotificationManagerService.mEnqueuedNotifications.size());
+        verify(mUsageStats, times(updateCount - 1)).registerCoalescedUpdate(any());
+
+        waitForIdle();
+
+        assertEquals(r, mNotificationManagerService.getNotificationRecord(r.getKey()));
+        assertEquals(0, mNotificationManagerService.mEnqueuedNotifications.size());
+        verify(mListeners, times(1)).notifyPostedLocked(any(), any());
+    }
+
+    @Test
+    public void testSlowUpdates_notCoalesced() throws Exception {
+        NotificationRecord r = generateNotificationRecord(mTestNotificationChannel, 0, null, false);
+        mNotificationManagerService.addNotification(r);
+
+        final int updateCount = 3;
+        for (int i = 0; i < updateCount; i++) {
+            r = generateNotificationRecord(mTestNotificationChannel, 0, null, false);
+            mNotificationManagerService.new EnqueueNotificationRunnable(r.getUserId(), r).run();
+        }
+        assertEquals(updateCount, mNotificationManagerService.mEnqueuedNotifications.size());
+
+        waitForIdle();
+
+        assertEquals(r, mNotificationManagerService.getNotificationRecord(r.getKey()));
+        verify(mUsageStats, never()).registerCoalescedUpdate(any());
+        verify(mListeners, times(updateCount)).notifyPostedLocked(any(), any());
+    }
+
     @Test
     public void testNoFakeColorizedPermission() throws Exception {
         when(mPackageManagerClient.checkPermission(any(), any())).thenReturn(PERMISSION_DENIED);
@@ -1764,4 +1809,56 @@ public class NotificationManagerServiceTest extends NotificationTestCase {
                 preOPkg, NotificationChannel.DEFAULT_CHANNEL_ID);
         assertEquals(IMPORTANCE_UNSPECIFIED, defaultChannel.getImportance());
     }
+
+    private NotificationRecord generateNotificationRecordForUser(int id, int userId) {
+        final Notification.Builder nb = new Notification.Builder(mContext, TEST_CHANNEL_ID)
+                .setContentTitle("foo")
+                .setSmallIcon(android.R.drawable.sym_def_app_icon);
+        final StatusBarNotification sbn = new StatusBarNotification(PKG, PKG, id, "tag", mUid, 0,
+                nb.build(), UserHandle.of(userId), null, 0);
+        return new NotificationRecord(mContext, sbn, mTestNotificationChannel);
+    }
+
+    private ManagedServices.ManagedServiceInfo mockListenerForUsers(int... userIds) {
+        final ManagedServices.ManagedServiceInfo info =
+                mock(ManagedServices.ManagedServiceInfo.class);
+        for (int userId : userIds) {
+            when(info.enabledAndUserMatches(userId)).thenReturn(true);
+        }
+        return info;
+    }
+
+    @Test
+    public void testRankingUpdateCache_listenersOfDifferentProfiles() throws Exception {
+        final int ownerUserId = 0;
+        final int profileUserId = 10;
+        final NotificationRecord ownerRecord = generateNotificationRecordForUser(1, ownerUserId);
+        final NotificationRecord profileRecord =
+                generateNotificationRecordForUser(2, profileUserId);
+        mNotificationManagerService.addNotification(ownerRecord);
+        mNotificationManagerService.addNotification(profileRecord);
+
+        final RankingUpdateCache rankingUpdates =
+                mNotificationManagerService.new RankingUpdateCache();
+        final NotificationRankingUpdate ownerUpdate =
+                rankingUpdates.forListener(mockListenerForUsers(ownerUserId));
+        final NotificationRankingUpdate profileUpdate =
+                rankingUpdates.forListener(mockListenerForUsers(profileUserId));
+        final NotificationRankingUpdate allUsersUpdate =
+                rankingUpdates.forListener(mockListenerForUsers(ownerUserId, profileUserId));
+
+        assertEquals(Arrays.asList(ownerRecord.getKey()),
+                Arrays.asList(ownerUpdate.getOrderedKeys()));
+        assertEquals(Arrays.asList(profileRecord.getKey()),
+                Arrays.asList(profileUpdate.getOrderedKeys()));
+        assertEquals(Arrays.asList(ownerRecord.getKey(), profileRecord.getKey()),
+                Arrays.asList(allUsersUpdate.getOrderedKeys()));
+        assertNotSame(ownerUpdate, profileUpdate);
+        assertNotSame(ownerUpdate, allUsersUpdate);
+
+        // Listeners that see the same users share the update.
+        assertSame(ownerUpdate, rankingUpdates.forListener(mockListenerForUsers(ownerUserId)));
+        assertSame(profileUpdate,
+                rankingUpdates.forListener(mockListenerForUsers(profileUserId)));
+    }
 }
@@ -68,6 +68,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -322,6 +323,37 @@ public class RankingHelperTest extends NotificationTestCase {
         mHelper.sort(notificationList);
     }
 
+    @Test
+    public void testSortFromPreviousOrder_matchesFreshSort() throws Exception {
+        ArrayList<NotificationRecord> notificationList = new ArrayList<NotificationRecord>(5);
+        notificationList.add(mRecordGroupGSortA);
+        notificationList.add(mRecordGroupGSortB);
+        notificationList.add(mRecordNoGroup);
+        notificationList.add(mRecordNoGroupSortA);
+        mHelper.sort(notificationList);
+
+        // Replace a record and add another one, as updates and posts do.
+        notificationList.remove(mRecordNoGroup);
+        notificationList.add(mRecordNoGroup2);
+        mHelper.sort(notificationList);
+
+        ArrayList<NotificationRecord> expected = new ArrayList<>(notificationList);
+        Collections.reverse(expected);
+        RankingHelper freshHelper = new RankingHelper(getContext(), mPm, mHandler, mUsageStats,
+                new String[] {ImportanceExtractor.class.getName()});
+        freshHelper.sort(expected);
+        assertEquals(expected, notificationList);
+    }
+
+    @Test
+    public void testSort_globalSortKeyFormat() throws Exception {
+        ArrayList<NotificationRecord> notificationList = new ArrayList<NotificationRecord>(1);
+        notificationList.add(mRecordGroupGSortB);
+        mHelper.sort(notificationList);
+        assertEquals("intrsv=1:grnk=0x0000:gsmry=1:gsk=B:rnk=0x0000",
+                mRecordGroupGSortB.getGlobalSortKey());
+    }
+
     @Test
     public void testChannelXml() throws Exception {
         NotificationChannelGroup ncg = new NotificationChannelGroup("1", "bye");
@@ -21,6 +21,7 @@ import android.os.RemoteException;
 import android.view.MagnificationSpec;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.view.accessibility.AccessibilityNodeInfo.AccessibilityAction;
+import android.view.accessibility.AccessibilityNodeInfoBatch;
 import android.view.accessibility.AccessibilityWindowInfo;
 import android.view.accessibility.IAccessibilityInteractionConnection;
 import android.view.accessibility.IAccessibilityInteractionConnectionCallback;
@@ -116,7 +117,7 @@ public class ActionReplacingCallbackTest {
 
     @Captor private ArgumentCaptor<Integer> mInteractionIdCaptor;
     @Captor private ArgumentCaptor<AccessibilityNodeInfo> mInfoCaptor;
-    @Captor private ArgumentCaptor<List<AccessibilityNodeInfo>> mInfoListCaptor;
+    @Captor private ArgumentCaptor<AccessibilityNodeInfoBatch> mInfoListCaptor;
 
     private ActionReplacingCallback mActionReplacingCallback;
     private int mReplacerInteractionId;
@@ -275,7 +276,7 @@ public class ActionReplacingCallbackTest {
     }
 
 
-    private List<AccessibilityNodeInfo> getReplacerNodes() {
+    private AccessibilityNodeInfoBatch getReplacerNodes() {
         AccessibilityNodeInfo root = AccessibilityNodeInfo.obtain();
         root.setSourceNodeId(AccessibilityNodeInfo.ROOT_NODE_ID,
                 AccessibilityWindowInfo.PICTURE_IN_PICTURE_ACTION_REPLACER_WINDOW_ID);
@@ -289,7 +290,7 @@ public class ActionReplacingCallbackTest {
                 AccessibilityWindowInfo.PICTURE_IN_PICTURE_ACTION_REPLACER_WINDOW_ID);
         other.addAction(ACTION_COLLAPSE);
 
-        return Arrays.asList(root, other);
+        return new AccessibilityNodeInfoBatch(Arrays.asList(root, other));
     }
 
     private AccessibilityNodeInfo getNodeWithIdFromList(
@@ -303,13 +304,13 @@ public class ActionReplacingCallbackTest {
         return null;
     }
 
-    private List<AccessibilityNodeInfo> getAppNodeList() {
+    private AccessibilityNodeInfoBatch getAppNodeList() {
         AccessibilityNodeInfo rootInfoFromApp = AccessibilityNodeInfo.obtain();
         rootInfoFromApp.setSourceNodeId(AccessibilityNodeInfo.ROOT_NODE_ID, APP_WINDOW_ID);
         rootInfoFromApp.addAction(ACTION_CONTEXT_CLICK);
         AccessibilityNodeInfo otherInfoFromApp = AccessibilityNodeInfo.obtain();
         otherInfoFromApp.setSourceNodeId(NON_ROOT_NODE_ID, APP_WINDOW_ID);
         otherInfoFromApp.addAction(ACTION_CLICK);
-        return Arrays.asList(rootInfoFromApp, otherInfoFromApp);
+        return new AccessibilityNodeInfoBatch(Arrays.asList(rootInfoFromApp, otherInfoFromApp));
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.accessibility;
+
+import static android.view.accessibility.AccessibilityEvent.CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION;
+import static android.view.accessibility.AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE;
+import static android.view.accessibility.AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the merging of the content change events queued for an accessibility service.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PendingContentChangedEventsTest {
+    private static final int WINDOW_ID_1 = 0xBEEF;
+    private static final int WINDOW_ID_2 = 0xFACE;
+    private static final long NODE_ID_1 = 0xCAFE;
+    private static final long NODE_ID_2 = 0xCAB2;
+
+    private PendingContentChangedEvents mPendingEvents;
+
+    @Before
+    public void setUp() {
+        mPendingEvents = new PendingContentChangedEvents();
+    }
+
+    private static AccessibilityEvent obtainEvent(int eventType, int windowId, long nodeId,
+            int contentChangeTypes, long eventTime) {
+        final AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+        event.setWindowId(windowId);
+        event.setSourceNodeId(nodeId);
+        event.setContentChangeTypes(contentChangeTypes);
+        event.setEventTime(eventTime);
+        return event;
+    }
+
+    private static AccessibilityEvent obtainContentChangedEvent(int windowId, long nodeId,
+            int contentChangeTypes, long eventTime) {
+        return obtainEvent(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED, windowId, nodeId,
+                contentChangeTypes, eventTime);
+    }
+
+    @Test
+    public void testNothingQueued_eventNotMerged() {
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1), true));
+    }
+
+    @Test
+    public void testSameNode_changeTypesAreMerged() {
+        final AccessibilityEvent queued = obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1);
+        queued.setSealed(true);
+        mPendingEvents.add(queued, true);
+
+        assertTrue(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_SUBTREE, 2), true));
+        assertTrue(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION, 3), true));
+        assertEquals(CONTENT_CHANGE_TYPE_TEXT | CONTENT_CHANGE_TYPE_SUBTREE
+                | CONTENT_CHANGE_TYPE_CONTENT_DESCRIPTION, queued.getContentChangeTypes());
+        assertEquals(3, queued.getEventTime());
+    }
+
+    @Test
+    public void testOtherNodeOrWindow_eventNotMerged() {
+        final AccessibilityEvent queued = obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1);
+        mPendingEvents.add(queued, true);
+
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_2,
+                CONTENT_CHANGE_TYPE_SUBTREE, 2), true));
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_2, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_SUBTREE, 2), true));
+        assertEquals(CONTENT_CHANGE_TYPE_TEXT, queued.getContentChangeTypes());
+        assertEquals(1, queued.getEventTime());
+    }
+
+    @Test
+    public void testOtherEventType_eventNotMerged() {
+        mPendingEvents.add(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1), true);
+
+        // Scroll events are only throttled by the notification timeout of the service.
+        assertFalse(mPendingEvents.merge(obtainEvent(AccessibilityEvent.TYPE_VIEW_SCROLLED,
+                WINDOW_ID_1, NODE_ID_1, 0, 2), true));
+    }
+
+    @Test
+    public void testOtherEventType_notQueued() {
+        mPendingEvents.add(obtainEvent(AccessibilityEvent.TYPE_VIEW_SCROLLED, WINDOW_ID_1,
+                NODE_ID_1, 0, 1), true);
+
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 2), true));
+    }
+
+    @Test
+    public void testServiceAndCacheEvents_notMergedWithEachOther() {
+        final AccessibilityEvent serviceEvent = obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1);
+        mPendingEvents.add(serviceEvent, true);
+
+        // An event only for the cache is not delivered as one for the service, and vice versa.
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_SUBTREE, 2), false));
+        assertEquals(CONTENT_CHANGE_TYPE_TEXT, serviceEvent.getContentChangeTypes());
+
+        final AccessibilityEvent cacheEvent = obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_2,
+                CONTENT_CHANGE_TYPE_TEXT, 3);
+        mPendingEvents.add(cacheEvent, false);
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_2,
+                CONTENT_CHANGE_TYPE_SUBTREE, 4), true));
+        assertTrue(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_2,
+                CONTENT_CHANGE_TYPE_SUBTREE, 5), false));
+        assertEquals(CONTENT_CHANGE_TYPE_TEXT | CONTENT_CHANGE_TYPE_SUBTREE,
+                cacheEvent.getContentChangeTypes());
+    }
+
+    @Test
+    public void testRemovedEvent_noLongerMerged() {
+        final AccessibilityEvent queued = obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_TEXT, 1);
+        mPendingEvents.add(queued, true);
+        mPendingEvents.remove(queued, true);
+
+        assertFalse(mPendingEvents.merge(obtainContentChangedEvent(WINDOW_ID_1, NODE_ID_1,
+                CONTENT_CHANGE_TYPE_SUBTREE, 2), true));
+        assertEquals(CONTENT_CHANGE_TYPE_TEXT, queued.getContentChangeTypes());
+    }
+}
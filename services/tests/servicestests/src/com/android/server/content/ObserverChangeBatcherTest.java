@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.content;
+
+import android.database.IContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * bit FrameworksServicesTests:com.android.server.content.ObserverChangeBatcherTest
+ */
+@SmallTest
+public class ObserverChangeBatcherTest extends AndroidTestCase {
+    // Long enough for the batches to only be flushed by the tests.
+    private static final long WINDOW_MS = 60 * 60 * 1000;
+
+    static class RecordingObserver extends IContentObserver.Stub {
+        final List<Uri> changes = new ArrayList<>();
+        int calls;
+
+        @Override
+        public void onChange(boolean selfUpdate, Uri uri, int userId) {
+            changes.add(uri);
+            calls++;
+        }
+
+        @Override
+        public void onChangeBatch(boolean selfUpdate, Uri[] uris, int userId) {
+            changes.addAll(Arrays.asList(uris));
+            calls++;
+        }
+    }
+
+    private ObserverChangeBatcher mBatcher;
+    private final int mUserId = UserHandle.myUserId();
+
+    @Override
+    public void setUp() {
+        mBatcher = new ObserverChangeBatcher(new Handler(Looper.getMainLooper()), WINDOW_MS,
+                observer -> fail("No observer died"));
+    }
+
+    public void testFirstChangeDeliveredRightAway() throws Exception {
+        RecordingObserver observer = new RecordingObserver();
+        Uri uri = Uri.parse("content://c/a/1");
+        mBatcher.dispatchChange(observer, false, uri, mUserId);
+        assertEquals(Arrays.asList(uri), observer.changes);
+    }
+
+    public void testChangesWithinWindowBatchedAndDeduplicated() throws Exception {
+        RecordingObserver observer = new RecordingObserver();
+        Uri first = Uri.parse("content://c/a");
+        mBatcher.dispatchChange(observer, false, first, mUserId);
+
+        List<Uri> expected = new ArrayList<>();
+        expected.add(first);
+        for (int i = 0; i < 10; i++) {
+            Uri uri = Uri.parse("content://c/a/" + i);
+            expected.add(uri);
+            mBatcher.dispatchChange(observer, false, uri, mUserId);
+            // The provider notifies the same row again.
+            mBatcher.dispatchChange(observer, false, uri, mUserId);
+        }
+        assertEquals(1, observer.calls);
+        assertEquals(10, mBatcher.getSuppressedCount());
+
+        mBatcher.flushBatch(observer.asBinder());
+        assertEquals(2, observer.calls);
+        assertEquals(expected, observer.changes);
+
+        // Nothing changed during the last window, the next change is delivered right away.
+        mBatcher.flushBatch(observer.asBinder());
+        mBatcher.dispatchChange(observer, false, first, mUserId);
+        assertEquals(3, observer.calls);
+    }
+
+    public void testObserversBatchedSeparately() throws Exception {
+        RecordingObserver observer1 = new RecordingObserver();
+        RecordingObserver observer2 = new RecordingObserver();
+        Uri uri1 = Uri.parse("content://c/a/1");
+        Uri uri2 = Uri.parse("content://c/a/2");
+        mBatcher.dispatchChange(observer1, false, uri1, mUserId);
+        mBatcher.dispatchChange(observer1, false, uri2, mUserId);
+        mBatcher.dispatchChange(observer2, false, uri2, mUserId);
+
+        assertEquals(Arrays.asList(uri1), observer1.changes);
+        assertEquals(Arrays.asList(uri2), observer2.changes);
+        mBatcher.flushBatch(observer1.asBinder());
+        assertEquals(Arrays.asList(uri1, uri2), observer1.changes);
+    }
+}
@@ -19,6 +19,7 @@ package com.android.server.content;
 import java.util.ArrayList;
 
 import android.database.ContentObserver;
+import android.database.IContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
@@ -103,4 +104,35 @@ public class ObserverNodeTest extends AndroidTestCase {
             calls.clear();
         }
     }
+
+    public void testManySiblings() {
+        final int myUserHandle = UserHandle.myUserId();
+
+        ObserverNode root = new ObserverNode("");
+        final int rowCount = 100;
+        IContentObserver[] observers = new IContentObserver[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            observers[i] = new TestObserver().getContentObserver();
+            root.addObserverLocked(Uri.parse("content://c/rows/" + i), observers[i], false, root,
+                    0, 0, myUserHandle);
+        }
+
+        ArrayList<ObserverCall> calls = new ArrayList<ObserverCall>();
+        root.collectObserversLocked(Uri.parse("content://c/rows/42"), 0, null, false, 0,
+                myUserHandle, calls);
+        assertEquals(1, calls.size());
+        assertSame(observers[42], calls.get(0).mObserver);
+        calls.clear();
+
+        // Notifying for an ancestor reaches all the rows.
+        root.collectObserversLocked(Uri.parse("content://c/rows"), 0, null, false, 0,
+                myUserHandle, calls);
+        assertEquals(rowCount, calls.size());
+        calls.clear();
+
+        for (int i = 0; i < rowCount; i++) {
+            root.removeObserverLocked(observers[i]);
+        }
+        assertTrue(root.removeObserverLocked(new TestObserver().getContentObserver()));
+    }
 }
@@ -16,10 +16,15 @@
 
 package com.android.server.power;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.hardware.display.DisplayManagerInternal.DisplayPowerRequest;
+import android.os.Binder;
+import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerSaveState;
+import android.os.Process;
+import android.os.WorkSource;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.text.TextUtils;
@@ -36,6 +41,14 @@ import static android.os.PowerManagerInternal.WAKEFULNESS_ASLEEP;
 import static android.os.PowerManagerInternal.WAKEFULNESS_AWAKE;
 import static android.os.PowerManagerInternal.WAKEFULNESS_DOZING;
 import static android.os.PowerManagerInternal.WAKEFULNESS_DREAMING;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_BUTTON_BRIGHT;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_CPU;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_DOZE;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_DRAW;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_PROXIMITY_SCREEN_OFF;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_SCREEN_BRIGHT;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_SCREEN_DIM;
+import static com.android.server.power.PowerManagerService.WAKE_LOCK_STAY_AWAKE;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
@@ -49,6 +62,11 @@ public class PowerManagerServiceTest extends AndroidTestCase {
     private static final float BRIGHTNESS_FACTOR = 0.7f;
     private static final boolean BATTERY_SAVER_ENABLED = true;
     private static final String LAST_REBOOT_REASON = "last_reboot_reason";
+    private static final String PACKAGE_NAME = "com.android.server.power.test";
+    private static final int APP_UID = Process.FIRST_APPLICATION_UID + 1;
+    private static final int APP_PID = 1234;
+    private static final int[] WAKEFULNESS_STATES = { WAKEFULNESS_ASLEEP, WAKEFULNESS_AWAKE,
+            WAKEFULNESS_DREAMING, WAKEFULNESS_DOZING };
 
     private @Mock BatterySaverPolicy mBatterySaverPolicy;
     private PowerManagerService mService;
@@ -125,4 +143,165 @@ public class PowerManagerServiceTest extends AndroidTestCase {
                 DisplayPowerRequest.POLICY_BRIGHT);
 
     }
+
+    private IBinder acquireWakeLock(int flags, String tag) {
+        final IBinder lock = new Binder();
+        mService.acquireWakeLockInternal(lock, flags, tag, PACKAGE_NAME, null /* ws */,
+                null /* historyTag */, APP_UID, APP_PID);
+        return lock;
+    }
+
+    /**
+     * Computes the wake lock summary the way it was done before the WAKE_LOCK_* bits were
+     * counted as wake locks change, by going over all wake locks.
+     */
+    @SuppressWarnings("deprecation")
+    private int getWakeLockSummaryFromFullScan(int wakefulness) {
+        int summary = 0;
+        for (PowerManagerService.WakeLock wakeLock : mService.mWakeLocks) {
+            switch (wakeLock.mFlags & PowerManager.WAKE_LOCK_LEVEL_MASK) {
+                case PowerManager.PARTIAL_WAKE_LOCK:
+                    if (!wakeLock.mDisabled) {
+                        summary |= WAKE_LOCK_CPU;
+                    }
+                    break;
+                case PowerManager.FULL_WAKE_LOCK:
+                    summary |= WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_BUTTON_BRIGHT;
+                    break;
+                case PowerManager.SCREEN_BRIGHT_WAKE_LOCK:
+                    summary |= WAKE_LOCK_SCREEN_BRIGHT;
+                    break;
+                case PowerManager.SCREEN_DIM_WAKE_LOCK:
+                    summary |= WAKE_LOCK_SCREEN_DIM;
+                    break;
+                case PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK:
+                    summary |= WAKE_LOCK_PROXIMITY_SCREEN_OFF;
+                    break;
+                case PowerManager.DOZE_WAKE_LOCK:
+                    summary |= WAKE_LOCK_DOZE;
+                    break;
+                case PowerManager.DRAW_WAKE_LOCK:
+                    summary |= WAKE_LOCK_DRAW;
+                    break;
+            }
+        }
+
+        if (wakefulness != WAKEFULNESS_DOZING) {
+            summary &= ~(WAKE_LOCK_DOZE | WAKE_LOCK_DRAW);
+        }
+        if (wakefulness == WAKEFULNESS_ASLEEP || (summary & WAKE_LOCK_DOZE) != 0) {
+            summary &= ~(WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_SCREEN_DIM | WAKE_LOCK_BUTTON_BRIGHT);
+            if (wakefulness == WAKEFULNESS_ASLEEP) {
+                summary &= ~WAKE_LOCK_PROXIMITY_SCREEN_OFF;
+            }
+        }
+        if ((summary & (WAKE_LOCK_SCREEN_BRIGHT | WAKE_LOCK_SCREEN_DIM)) != 0) {
+            if (wakefulness == WAKEFULNESS_AWAKE) {
+                summary |= WAKE_LOCK_CPU | WAKE_LOCK_STAY_AWAKE;
+            } else if (wakefulness == WAKEFULNESS_DREAMING) {
+                summary |= WAKE_LOCK_CPU;
+            }
+        }
+        if ((summary & WAKE_LOCK_DRAW) != 0) {
+            summary |= WAKE_LOCK_CPU;
+        }
+        return summary;
+    }
+
+    private void assertWakeLockSummaryMatchesFullScan() {
+        for (int wakefulness : WAKEFULNESS_STATES) {
+            mService.setWakefulnessLocked(wakefulness, 0);
+            mService.updateWakeLockSummaryLocked(PowerManagerService.DIRTY_WAKE_LOCKS);
+            assertThat(mService.getWakeLockSummaryLocked())
+                    .isEqualTo(getWakeLockSummaryFromFullScan(wakefulness));
+        }
+    }
+
+    @SmallTest
+    @SuppressWarnings("deprecation")
+    public void testWakeLockSummary_Acquire() {
+        assertWakeLockSummaryMatchesFullScan();
+        acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "partial");
+        assertWakeLockSummaryMatchesFullScan();
+        acquireWakeLock(PowerManager.FULL_WAKE_LOCK, "full");
+        assertWakeLockSummaryMatchesFullScan();
+        acquireWakeLock(PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK, "proximity");
+        assertWakeLockSummaryMatchesFullScan();
+        acquireWakeLock(PowerManager.DRAW_WAKE_LOCK, "draw");
+        assertWakeLockSummaryMatchesFullScan();
+        acquireWakeLock(PowerManager.DOZE_WAKE_LOCK, "doze");
+        assertWakeLockSummaryMatchesFullScan();
+    }
+
+    @SmallTest
+    public void testWakeLockSummary_UpdatePropertiesWithLevelChange() {
+        final IBinder lock = acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "lock");
+        assertWakeLockSummaryMatchesFullScan();
+
+        // Changing the work source leaves the level alone.
+        mService.updateWakeLockWorkSourceInternal(lock, new WorkSource(APP_UID),
+                null /* historyTag */, APP_UID);
+        assertWakeLockSummaryMatchesFullScan();
+
+        // Acquiring the same lock with other flags updates the properties of the wake lock.
+        mService.acquireWakeLockInternal(lock, PowerManager.SCREEN_DIM_WAKE_LOCK, "lock",
+                PACKAGE_NAME, new WorkSource(APP_UID), null /* historyTag */, APP_UID, APP_PID);
+        assertThat(mService.mWakeLocks).hasSize(1);
+        assertWakeLockSummaryMatchesFullScan();
+
+        mService.acquireWakeLockInternal(lock, PowerManager.SCREEN_BRIGHT_WAKE_LOCK, "lock",
+                PACKAGE_NAME, new WorkSource(APP_UID), null /* historyTag */, APP_UID, APP_PID);
+        assertWakeLockSummaryMatchesFullScan();
+
+        mService.acquireWakeLockInternal(lock, PowerManager.PARTIAL_WAKE_LOCK, "lock",
+                PACKAGE_NAME, new WorkSource(APP_UID), null /* historyTag */, APP_UID, APP_PID);
+        assertWakeLockSummaryMatchesFullScan();
+    }
+
+    @SmallTest
+    public void testWakeLockSummary_Release() {
+        final IBinder partial = acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "partial");
+        final IBinder dim1 = acquireWakeLock(PowerManager.SCREEN_DIM_WAKE_LOCK, "dim1");
+        final IBinder dim2 = acquireWakeLock(PowerManager.SCREEN_DIM_WAKE_LOCK, "dim2");
+        assertWakeLockSummaryMatchesFullScan();
+
+        // The dim bit stays set while another wake lock still holds it.
+        mService.releaseWakeLockInternal(dim1, 0 /* flags */);
+        assertWakeLockSummaryMatchesFullScan();
+        mService.releaseWakeLockInternal(dim2, 0 /* flags */);
+        assertWakeLockSummaryMatchesFullScan();
+        mService.releaseWakeLockInternal(partial, 0 /* flags */);
+        assertThat(mService.mWakeLocks).isEmpty();
+        assertWakeLockSummaryMatchesFullScan();
+
+        // Releasing a lock that is not held changes nothing.
+        mService.releaseWakeLockInternal(partial, 0 /* flags */);
+        assertWakeLockSummaryMatchesFullScan();
+    }
+
+    @SmallTest
+    public void testWakeLockSummary_DisableAndEnable() {
+        acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "partial");
+        final PowerManagerService.WakeLock wakeLock = mService.mWakeLocks.get(0);
+        assertThat(wakeLock.mDisabled).isFalse();
+        assertWakeLockSummaryMatchesFullScan();
+
+        // Cached inactive uids may not hold wake locks.
+        mService.updateUidProcStateInternal(APP_UID, ActivityManager.PROCESS_STATE_CACHED_EMPTY);
+        assertThat(wakeLock.mDisabled).isTrue();
+        assertWakeLockSummaryMatchesFullScan();
+
+        mService.uidActiveInternal(APP_UID);
+        assertThat(wakeLock.mDisabled).isFalse();
+        assertWakeLockSummaryMatchesFullScan();
+
+        // Nor may uids that are not whitelisted while the device is idle.
+        mService.setDeviceIdleModeInternal(true);
+        assertThat(wakeLock.mDisabled).isTrue();
+        assertWakeLockSummaryMatchesFullScan();
+
+        mService.setDeviceIdleModeInternal(false);
+        assertThat(wakeLock.mDisabled).isFalse();
+        assertWakeLockSummaryMatchesFullScan();
+    }
 }
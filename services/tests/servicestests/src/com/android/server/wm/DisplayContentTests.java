@@ -153,6 +153,51 @@ public class DisplayContentTests extends WindowTestsBase {
                 mImeDialogWindow));
     }
 
+    @Test
+    public void testGetWindowsInZOrder_InvalidatedByHierarchyChanges() throws Exception {
+        final List<WindowState> initialWindows =
+                new LinkedList<>(mDisplayContent.getWindowsInZOrder());
+
+        final WindowState appWindow = createWindow(null, TYPE_BASE_APPLICATION,
+                mDisplayContent, "appWindow");
+        assertTrue(mDisplayContent.getWindowsInZOrder().contains(appWindow));
+
+        sWm.mInputMethodTarget = appWindow;
+        final List<WindowState> windows = mDisplayContent.getWindowsInZOrder();
+        assertEquals(windows.indexOf(appWindow) + 1, windows.indexOf(mImeWindow));
+
+        sWm.mInputMethodTarget = null;
+        appWindow.removeImmediately();
+        assertEquals(initialWindows, mDisplayContent.getWindowsInZOrder());
+    }
+
+    @Test
+    public void testGetWindowsInZOrder_InvalidatedByExitingAppTokens() throws Exception {
+        final WindowState appWindow = createWindow(null, TYPE_BASE_APPLICATION,
+                mDisplayContent, "appWindow");
+        final AppWindowToken appToken = appWindow.mAppToken;
+        assertWindowsInZOrderUpToDate();
+
+        // Removing the token during a transition sets it aside until its windows exit.
+        sWm.mClosingApps.add(appToken);
+        mDisplayContent.removeAppToken(appToken.token);
+        assertTrue(appToken.mIsExiting);
+        assertWindowsInZOrderUpToDate();
+
+        // The windows of the token are also visited in place while they wait for replacement.
+        appWindow.setWillReplaceWindow(false /* animate */);
+        assertWindowsInZOrderUpToDate();
+        appWindow.clearWillReplaceWindow();
+        assertWindowsInZOrderUpToDate();
+
+        appToken.getTask().mStack.removeExitingAppToken(appToken);
+        assertWindowsInZOrderUpToDate();
+
+        sWm.mClosingApps.remove(appToken);
+        appToken.removeIfPossible();
+        assertWindowsInZOrderUpToDate();
+    }
+
     @Test
     public void testComputeImeTarget() throws Exception {
         // Verify that an app window can be an ime target.
@@ -434,6 +479,16 @@ public class DisplayContentTests extends WindowTestsBase {
             assertEquals(w, actualWindows.pollLast());
         }
         assertTrue(actualWindows.isEmpty());
+
+        // Test the cached order.
+        assertEquals(expectedWindows, mDisplayContent.getWindowsInZOrder());
+    }
+
+    /** Asserts that the cached order is the order of a walk of the window hierarchy. */
+    private void assertWindowsInZOrderUpToDate() {
+        final LinkedList<WindowState> windows = new LinkedList<>();
+        mDisplayContent.forAllWindows(windows::addLast, false /* traverseTopToBottom */);
+        assertEquals(windows, mDisplayContent.getWindowsInZOrder());
     }
 
     private MotionEvent createTapEvent(float x, float y, boolean isDownEvent) {
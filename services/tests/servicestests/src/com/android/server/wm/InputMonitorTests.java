@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.wm;
+
+import static android.view.WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
+import static android.view.WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL;
+import static android.view.WindowManager.LayoutParams.TYPE_BASE_APPLICATION;
+import static android.view.WindowManager.LayoutParams.TYPE_STATUS_BAR;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.platform.test.annotations.Presubmit;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for the window handles that {@link InputMonitor} sends to the input dispatcher.
+ *
+ * Build/Install/Run:
+ *  bit FrameworksServicesTests:com.android.server.wm.InputMonitorTests
+ */
+@SmallTest
+@Presubmit
+@RunWith(AndroidJUnit4.class)
+public class InputMonitorTests extends WindowTestsBase {
+    private InputMonitor mInputMonitor;
+
+    // The state of the windows sent by sendInputWindows().
+    private int mAppFlags;
+    private boolean mAppVisible;
+    private boolean mAppHasFocus;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mInputMonitor = new InputMonitor(sWm);
+        mAppFlags = FLAG_NOT_TOUCH_MODAL;
+        mAppVisible = true;
+        mAppHasFocus = true;
+    }
+
+    /** Adds the handles of the status bar and app windows, then sends them. */
+    private void sendInputWindows(boolean force) {
+        mInputMonitor.addInputWindowHandle(mStatusBarWindow.mInputWindowHandle,
+                mStatusBarWindow, FLAG_NOT_FOCUSABLE, TYPE_STATUS_BAR, true /* isVisible */,
+                false /* hasFocus */, false /* hasWallpaper */);
+        mInputMonitor.addInputWindowHandle(mAppWindow.mInputWindowHandle, mAppWindow, mAppFlags,
+                TYPE_BASE_APPLICATION, mAppVisible, mAppHasFocus, false /* hasWallpaper */);
+        mInputMonitor.sendInputWindowHandlesLw(force);
+    }
+
+    private void assertInputWindowsSent(boolean sent) {
+        if (sent) {
+            verify(sWm.mInputManager).setInputWindows(any(), any());
+        } else {
+            verify(sWm.mInputManager, never()).setInputWindows(any(), any());
+        }
+        clearInvocations(sWm.mInputManager);
+    }
+
+    /** Sends the windows once, so that the next update compares with them. */
+    private void sendInitialInputWindows() {
+        clearInvocations(sWm.mInputManager);
+        sendInputWindows(false /* force */);
+        assertInputWindowsSent(true);
+    }
+
+    @Test
+    public void testUnchangedWindowsNotSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(false);
+        }
+    }
+
+    @Test
+    public void testForcedUpdateAlwaysSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            sendInputWindows(true /* force */);
+            assertInputWindowsSent(true);
+            sendInputWindows(true /* force */);
+            assertInputWindowsSent(true);
+        }
+    }
+
+    @Test
+    public void testFrameChangeSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            mAppWindow.mFrame.set(0, 0, 100, 100);
+            sendInitialInputWindows();
+            mAppWindow.mFrame.offset(0, 10);
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(true);
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(false);
+        }
+    }
+
+    @Test
+    public void testFlagsChangeSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            mAppFlags |= FLAG_NOT_FOCUSABLE;
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(true);
+        }
+    }
+
+    @Test
+    public void testVisibilityChangeSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            mAppVisible = false;
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(true);
+        }
+    }
+
+    @Test
+    public void testFocusChangeSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            mAppHasFocus = false;
+            sendInputWindows(false /* force */);
+            assertInputWindowsSent(true);
+        }
+    }
+
+    @Test
+    public void testRemovedWindowSent() throws Exception {
+        synchronized (sWm.mWindowMap) {
+            sendInitialInputWindows();
+            mInputMonitor.addInputWindowHandle(mStatusBarWindow.mInputWindowHandle,
+                    mStatusBarWindow, FLAG_NOT_FOCUSABLE, TYPE_STATUS_BAR, true /* isVisible */,
+                    false /* hasFocus */, false /* hasWallpaper */);
+            mInputMonitor.sendInputWindowHandlesLw(false /* force */);
+            assertInputWindowsSent(true);
+        }
+    }
+}
@@ -19,7 +19,9 @@ package com.android.server.wm;
 import static android.view.WindowManager.LayoutParams.FIRST_APPLICATION_WINDOW;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 
+import android.app.ActivityManager.TaskSnapshot;
 import android.platform.test.annotations.Presubmit;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
@@ -96,6 +98,115 @@ public class TaskSnapshotCacheTest extends TaskSnapshotPersisterTestBase {
                 false /* restoreFromDisk */, false /* reducedResolution */));
     }
 
+    @Test
+    public void testReduced_cachedOnceRestored() throws Exception {
+        final WindowState window = createWindow(null, FIRST_APPLICATION_WINDOW, "window");
+        final int taskId = window.getTask().mTaskId;
+        mPersister.persistSnapshot(taskId, sWm.mCurrentUserId, createSnapshot());
+        mPersister.waitForQueueEmpty();
+        assertNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                false /* restoreFromDisk */, true /* reducedResolution */));
+
+        // Load it from disk, after which it is served from memory.
+        assertNotNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                true /* restoreFromDisk */, true /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                false /* restoreFromDisk */, true /* reducedResolution */));
+
+        mCache.onTaskRemoved(taskId);
+        assertNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                false /* restoreFromDisk */, true /* reducedResolution */));
+    }
+
+    @Test
+    public void testRunningCache_evictsLeastRecentlyUsed() throws Exception {
+        // Room for two of the 100x100 test snapshots, and one once evicted.
+        mCache = new TaskSnapshotCache(sWm, mLoader, 2 * 100 * 100 * 4 /* maxRunningCacheBytes */,
+                100 * 100 * 4 /* maxReducedCacheBytes */);
+        final WindowState window1 = createWindow(null, FIRST_APPLICATION_WINDOW, "window1");
+        final WindowState window2 = createWindow(null, FIRST_APPLICATION_WINDOW, "window2");
+        final WindowState window3 = createWindow(null, FIRST_APPLICATION_WINDOW, "window3");
+        final WindowState window4 = createWindow(null, FIRST_APPLICATION_WINDOW, "window4");
+        mCache.putSnapshot(window1.getTask(), createSnapshot());
+        mCache.putSnapshot(window2.getTask(), createSnapshot());
+
+        // Use the first snapshot so that the second one is the least recently used.
+        assertNotNull(mCache.getSnapshot(window1.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        mCache.putSnapshot(window3.getTask(), createSnapshot());
+        mCache.putSnapshot(window4.getTask(), createSnapshot());
+
+        // The second and then the first snapshot were evicted, only the last one evicted is kept.
+        assertNull(mCache.getSnapshot(window2.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(window1.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(window3.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(window4.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+
+        // The snapshot dropped from both caches no longer follows its app.
+        mCache.onAppRemoved(window2.mAppToken);
+        assertNotNull(mCache.getSnapshot(window1.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+    }
+
+    @Test
+    public void testRunningCache_launchAfterEvictionGetsSnapshot() throws Exception {
+        // Room for one of the 100x100 test snapshots in each cache.
+        mCache = new TaskSnapshotCache(sWm, mLoader, 100 * 100 * 4 /* maxRunningCacheBytes */,
+                100 * 100 * 4 /* maxReducedCacheBytes */);
+        final WindowState window1 = createWindow(null, FIRST_APPLICATION_WINDOW, "window1");
+        final WindowState window2 = createWindow(null, FIRST_APPLICATION_WINDOW, "window2");
+        mCache.putSnapshot(window1.getTask(), createSnapshot());
+        mCache.putSnapshot(window2.getTask(), createSnapshot());
+
+        // The starting window of the evicted task, which is not restored from disk, still gets
+        // the snapshot.
+        assertNotNull(mCache.getSnapshot(window1.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(window2.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+
+        // The evicted snapshot still follows its app.
+        mCache.onAppDied(window1.mAppToken);
+        assertNull(mCache.getSnapshot(window1.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+        assertNotNull(mCache.getSnapshot(window2.getTask().mTaskId, 0 /* userId */,
+                false /* restoreFromDisk */, false /* reducedResolution */));
+    }
+
+    @Test
+    public void testReduced_notCachedIfSnapshotTakenWhileLoading() throws Exception {
+        final WindowState window = createWindow(null, FIRST_APPLICATION_WINDOW, "window");
+        final int taskId = window.getTask().mTaskId;
+        mPersister.persistSnapshot(taskId, sWm.mCurrentUserId, createSnapshot());
+        mPersister.waitForQueueEmpty();
+        final TaskSnapshot newSnapshot = createSnapshot();
+        mCache = new TaskSnapshotCache(sWm, new TaskSnapshotLoader(mPersister) {
+            @Override
+            TaskSnapshot loadTask(int taskId, int userId, boolean reducedResolution) {
+                final TaskSnapshot snapshot = super.loadTask(taskId, userId, reducedResolution);
+                // The task takes a new snapshot while the old one is loaded.
+                synchronized (sWm.mWindowMap) {
+                    mCache.putSnapshot(window.getTask(), newSnapshot);
+                }
+                return snapshot;
+            }
+        });
+
+        assertNotNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                true /* restoreFromDisk */, true /* reducedResolution */));
+        assertSame(newSnapshot, mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                false /* restoreFromDisk */, true /* reducedResolution */));
+
+        // The snapshot loaded from disk was not cached, so none is left once the new one is gone.
+        mCache.onAppRemoved(window.mAppToken);
+        assertNull(mCache.getSnapshot(taskId, sWm.mCurrentUserId,
+                false /* restoreFromDisk */, true /* reducedResolution */));
+    }
+
     @Test
     public void testRestoreFromDisk() throws Exception {
         final WindowState window = createWindow(null, FIRST_APPLICATION_WINDOW, "window");
@@ -127,6 +127,22 @@ public class TaskSnapshotPersisterLoaderTest extends TaskSnapshotPersisterTestBa
         assertTrueForFiles(nonExistsFiles, file -> !file.exists(), " must not exist");
     }
 
+    /**
+     * Tests that a pending store is dropped when a newer snapshot of the task is persisted.
+     */
+    @Test
+    public void testSupersededStore() {
+        mPersister.setPaused(true);
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot());
+        mPersister.persistSnapshot(1, mTestUserId, createSnapshot(0.5f /* scale */));
+        mPersister.setPaused(false);
+        mPersister.waitForQueueEmpty();
+
+        // Only the reduced resolution snapshot was written.
+        assertTrue(new File(sFilesDir.getPath() + "/snapshots/1_reduced.jpg").exists());
+        assertFalse(new File(sFilesDir.getPath() + "/snapshots/1.jpg").exists());
+    }
+
     @Test
     public void testGetTaskId() {
         RemoveObsoleteFilesQueueItem removeObsoleteFilesQueueItem =
@@ -135,6 +135,7 @@ public class ConnectivityServiceTest extends AndroidTestCase {
 
     private static final int TIMEOUT_MS = 500;
     private static final int TEST_LINGER_DELAY_MS = 120;
+    private static final int TEST_CALLBACK_COALESCE_MS = 1000;
 
     private MockContext mServiceContext;
     private WrappedConnectivityService mService;
@@ -724,6 +725,9 @@ public class ConnectivityServiceTest extends AndroidTestCase {
                 IpConnectivityLog log) {
             super(context, netManager, statsService, policyManager, log);
             mLingerDelayMs = TEST_LINGER_DELAY_MS;
+            // Tests expect each change to be called back right away, unless they enable
+            // coalescing.
+            mCallbackCoalesceMs = 0;
         }
 
         @Override
@@ -1872,6 +1876,38 @@ public class ConnectivityServiceTest extends AndroidTestCase {
         handlerThread.quit();
     }
 
+    @SmallTest
+    public void testCapabilitiesCallbacksCoalesced() throws Exception {
+        mService.mCallbackCoalesceMs = TEST_CALLBACK_COALESCE_MS;
+        final NetworkRequest request = new NetworkRequest.Builder()
+                .addTransportType(TRANSPORT_WIFI).build();
+        final TestNetworkCallback callback = new TestNetworkCallback();
+        mCm.registerNetworkCallback(request, callback);
+
+        // The first callback of each type is sent right away.
+        mWiFiNetworkAgent = new MockNetworkAgent(TRANSPORT_WIFI);
+        mWiFiNetworkAgent.connect(false);
+        callback.expectAvailableCallbacks(mWiFiNetworkAgent);
+
+        // The changes that follow within the window are sent once, with the last state.
+        mWiFiNetworkAgent.addCapability(NET_CAPABILITY_NOT_METERED);
+        mWiFiNetworkAgent.removeCapability(NET_CAPABILITY_NOT_METERED);
+        mWiFiNetworkAgent.addCapability(NET_CAPABILITY_NOT_METERED);
+        callback.assertNoCallback();
+        CallbackInfo cbi = callback.expectCallback(CallbackState.NETWORK_CAPABILITIES,
+                mWiFiNetworkAgent, TEST_CALLBACK_COALESCE_MS * 2);
+        assertTrue(((NetworkCapabilities) cbi.arg).hasCapability(NET_CAPABILITY_NOT_METERED));
+        callback.assertNoCallback();
+
+        // Other callbacks are not held back, and come after the held back changes.
+        mWiFiNetworkAgent.removeCapability(NET_CAPABILITY_NOT_METERED);
+        mWiFiNetworkAgent.disconnect();
+        callback.expectCapabilitiesWithout(NET_CAPABILITY_NOT_METERED, mWiFiNetworkAgent);
+        callback.expectCallback(CallbackState.LOST, mWiFiNetworkAgent);
+
+        mCm.unregisterNetworkCallback(callback);
+    }
+
     @SmallTest
     public void testNetworkFactoryRequests() throws Exception {
         tryNetworkFactoryRequests(NET_CAPABILITY_MMS);
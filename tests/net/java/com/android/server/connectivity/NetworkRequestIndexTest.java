@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.connectivity;
+
+import static android.net.NetworkCapabilities.TRANSPORT_CELLULAR;
+import static android.net.NetworkCapabilities.TRANSPORT_VPN;
+import static android.net.NetworkCapabilities.TRANSPORT_WIFI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.net.NetworkCapabilities;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class NetworkRequestIndexTest {
+
+    private static NetworkCapabilities capsWithTransports(int... transports) {
+        final NetworkCapabilities nc = new NetworkCapabilities();
+        for (int transport : transports) {
+            nc.addTransportType(transport);
+        }
+        return nc;
+    }
+
+    private static void assertCandidates(NetworkRequestIndex<String> index,
+            NetworkCapabilities nc, String... expected) {
+        final ArrayList<String> candidates = index.getCandidates(nc);
+        assertEquals(expected.length, candidates.size());
+        assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(candidates));
+    }
+
+    @Test
+    public void testCandidatesByTransport() {
+        final NetworkRequestIndex<String> index = new NetworkRequestIndex<>();
+        index.add(capsWithTransports(), "any");
+        index.add(capsWithTransports(TRANSPORT_WIFI), "wifi");
+        index.add(capsWithTransports(TRANSPORT_CELLULAR), "cell");
+        index.add(capsWithTransports(TRANSPORT_WIFI, TRANSPORT_CELLULAR), "wifiOrCell");
+
+        assertCandidates(index, capsWithTransports(TRANSPORT_WIFI), "any", "wifi", "wifiOrCell");
+        assertCandidates(index, capsWithTransports(TRANSPORT_CELLULAR), "any", "cell",
+                "wifiOrCell");
+        assertCandidates(index, capsWithTransports(TRANSPORT_VPN), "any");
+        // Each request once, even if it names several transports of the network.
+        assertCandidates(index, capsWithTransports(TRANSPORT_WIFI, TRANSPORT_CELLULAR), "any",
+                "wifi", "cell", "wifiOrCell");
+    }
+
+    @Test
+    public void testRemove() {
+        final NetworkRequestIndex<String> index = new NetworkRequestIndex<>();
+        final NetworkCapabilities any = capsWithTransports();
+        final NetworkCapabilities wifiOrCell = capsWithTransports(TRANSPORT_WIFI,
+                TRANSPORT_CELLULAR);
+        index.add(any, "any");
+        index.add(wifiOrCell, "wifiOrCell");
+
+        index.remove(wifiOrCell, "wifiOrCell");
+        assertCandidates(index, capsWithTransports(TRANSPORT_WIFI), "any");
+        assertCandidates(index, capsWithTransports(TRANSPORT_CELLULAR), "any");
+
+        index.remove(any, "any");
+        assertCandidates(index, capsWithTransports(TRANSPORT_WIFI));
+    }
+
+    @Test
+    public void testIsCandidate() {
+        final NetworkCapabilities wifi = capsWithTransports(TRANSPORT_WIFI);
+        assertTrue(NetworkRequestIndex.isCandidate(capsWithTransports(), wifi));
+        assertTrue(NetworkRequestIndex.isCandidate(
+                capsWithTransports(TRANSPORT_CELLULAR, TRANSPORT_WIFI), wifi));
+        assertFalse(NetworkRequestIndex.isCandidate(
+                capsWithTransports(TRANSPORT_CELLULAR), wifi));
+    }
+}